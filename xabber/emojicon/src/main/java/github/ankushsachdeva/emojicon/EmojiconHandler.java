@@ -20,8 +20,11 @@ import android.graphics.drawable.Drawable;
 import android.text.Spannable;
 import android.text.style.DynamicDrawableSpan;
 import android.text.style.ImageSpan;
+import android.util.LruCache;
 import android.util.SparseIntArray;
 
+import java.util.Arrays;
+
 /**
  * @author Hieu Rocker (rockerhieu@gmail.com)
  */
@@ -32,6 +35,35 @@ public final class EmojiconHandler {
     private static final SparseIntArray sEmojisMap = new SparseIntArray(846);
     private static final SparseIntArray sSoftbanksMap = new SparseIntArray(471);
 
+    /**
+     * Max number of cached emoji drawables of all sizes.
+     */
+    private static final int DRAWABLE_CACHE_SIZE = 256;
+
+    /**
+     * Max number of cached scan results.
+     */
+    private static final int SCAN_CACHE_SIZE = 512;
+
+    /**
+     * Scan results of longer texts are not cached.
+     */
+    private static final int MAX_CACHED_TEXT_LENGTH = 1024;
+
+    /**
+     * Drawables with bounds set by emoji size and resource id.
+     * Drawables with the same bounds can be shared by several spans.
+     */
+    private static final LruCache<Long, Drawable> sDrawableCache =
+            new LruCache<>(DRAWABLE_CACHE_SIZE);
+
+    /**
+     * Emoji positions found in text, see {@link #findEmojis}.
+     */
+    private static final LruCache<String, int[]> sScanCache = new LruCache<>(SCAN_CACHE_SIZE);
+
+    private static final int[] NO_EMOJIS = new int[0];
+
     static {
         // People
         sEmojisMap.put(0x1f604, R.drawable.emoji_1f604);
@@ -1366,7 +1398,7 @@ public final class EmojiconHandler {
         return ((c >> 12) == 0xe);
     }
 
-    private static int getEmojiResource(Context context, int codePoint) {
+    private static int getEmojiResource(int codePoint) {
         return sEmojisMap.get(codePoint);
     }
 
@@ -1399,14 +1431,48 @@ public final class EmojiconHandler {
         int textLengthToProcessMax = textLength - index;
         int textLengthToProcess = length < 0 || length >= textLengthToProcessMax ? textLength : (length+index);
 
-        // remove spans throughout all text
-        EmojiconSpan[] oldSpans = text.getSpans(0, textLength, EmojiconSpan.class);
-        for (int i = 0; i < oldSpans.length; i++) {
-            text.removeSpan(oldSpans[i]);
+        // remove spans added by previous call
+        EmojiImageSpan[] oldSpans = text.getSpans(index, textLengthToProcess, EmojiImageSpan.class);
+        for (EmojiImageSpan oldSpan : oldSpans) {
+            text.removeSpan(oldSpan);
         }
 
+        String key = text.subSequence(index, textLengthToProcess).toString();
+        int[] emojis = sScanCache.get(key);
+        if (emojis == null) {
+            emojis = findEmojis(key);
+            if (key.length() <= MAX_CACHED_TEXT_LENGTH) {
+                sScanCache.put(key, emojis);
+            }
+        }
+
+        for (int i = 0; i < emojis.length; i += 3) {
+            text.setSpan(new EmojiImageSpan(getDrawable(context, emojis[i + 2], emojiSize)),
+                    index + emojis[i], index + emojis[i + 1], Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+
+    private static Drawable getDrawable(Context context, int icon, int emojiSize) {
+        long key = ((long) emojiSize << 32) | icon;
+        Drawable drawable = sDrawableCache.get(key);
+        if (drawable == null) {
+            drawable = context.getResources().getDrawable(icon);
+            drawable.setBounds(0, 0, emojiSize, emojiSize);
+            sDrawableCache.put(key, drawable);
+        }
+        return drawable;
+    }
+
+    /**
+     * @return start, end and drawable resource id of each emoji in the text.
+     */
+    private static int[] findEmojis(CharSequence text) {
+        int textLengthToProcess = text.length();
+        int[] emojis = NO_EMOJIS;
+        int count = 0;
+
         int skip;
-        for (int i = index; i < textLengthToProcess; i += skip) {
+        for (int i = 0; i < textLengthToProcess; i += skip) {
             skip = 0;
             int icon = 0;
             char c = text.charAt(i);
@@ -1420,7 +1486,7 @@ public final class EmojiconHandler {
                 skip = Character.charCount(unicode);
 
                 if (unicode > 0xff) {
-                    icon = getEmojiResource(context, unicode);
+                    icon = getEmojiResource(unicode);
                 }
 
                 if (icon == 0 && i + skip < textLengthToProcess) {
@@ -1509,11 +1575,20 @@ public final class EmojiconHandler {
             }
 
             if (icon > 0) {
-                Drawable myIcon = context.getResources().getDrawable(icon);
-                myIcon.setBounds(0, 0, emojiSize, emojiSize);
-                text.setSpan(new ImageSpan(myIcon, DynamicDrawableSpan.ALIGN_BOTTOM),
-                        i, i + skip, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+                if (count + 3 > emojis.length) {
+                    emojis = Arrays.copyOf(emojis, Math.max(12, emojis.length * 2));
+                }
+                emojis[count++] = i;
+                emojis[count++] = i + skip;
+                emojis[count++] = icon;
             }
         }
+        return count == emojis.length ? emojis : Arrays.copyOf(emojis, count);
+    }
+
+    private static class EmojiImageSpan extends ImageSpan {
+        EmojiImageSpan(Drawable drawable) {
+            super(drawable, DynamicDrawableSpan.ALIGN_BOTTOM);
+        }
     }
 }
@@ -51,6 +51,7 @@ import com.xabber.android.data.extension.vcard.VCardManager;
 import com.xabber.android.data.http.PatreonManager;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.MessageManager;
+import com.xabber.android.data.message.search.MessageSearchManager;
 import com.xabber.android.data.message.ReceiptManager;
 import com.xabber.android.data.message.chat.ChatManager;
 import com.xabber.android.data.message.phrase.PhraseManager;
@@ -69,8 +70,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -143,6 +146,10 @@ public class Application extends android.app.Application {
      * Future for loading process.
      */
     private Future<Void> loadFuture;
+    /**
+     * Managers loading trace.
+     */
+    private volatile List<String> startupTrace = Collections.emptyList();
 
     public Application() {
         instance = this;
@@ -152,7 +159,7 @@ public class Application extends android.app.Application {
         closing = false;
         closed = false;
         uiListeners = new HashMap<>();
-        managerInterfaces = new HashMap<>();
+        managerInterfaces = new ConcurrentHashMap<>();
         registeredManagers = new ArrayList<>();
 
         handler = new Handler();
@@ -203,12 +210,21 @@ public class Application extends android.app.Application {
         return initialized;
     }
 
-    private void onLoad() {
+    /**
+     * @return start time and duration of each manager's loading.
+     */
+    public List<String> getStartupTrace() {
+        return startupTrace;
+    }
+
+    private void onLoad() throws InterruptedException {
         ProviderManager.addLoader(new ProviderFileLoader(getResources().openRawResource(R.raw.smack)));
 
-        for (OnLoadListener listener : getManagers(OnLoadListener.class)) {
-            LogManager.i(listener, "onLoad");
-            listener.onLoad();
+        ManagerLoader loader = new ManagerLoader(getManagers(OnLoadListener.class));
+        try {
+            loader.load();
+        } finally {
+            startupTrace = loader.getTrace();
         }
     }
 
@@ -365,6 +381,7 @@ public class Application extends android.app.Application {
         addManager(PatreonManager.getInstance());
         addManager(MUCManager.getInstance());
         addManager(MessageManager.getInstance());
+        addManager(MessageSearchManager.getInstance());
         addManager(ChatManager.getInstance());
         addManager(VCardManager.getInstance());
         addManager(AvatarManager.getInstance());
@@ -403,6 +420,14 @@ public class Application extends android.app.Application {
         super.onLowMemory();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        for (OnTrimMemoryListener listener : getManagers(OnTrimMemoryListener.class)) {
+            listener.onTrimMemory(level);
+        }
+        super.onTrimMemory(level);
+    }
+
     /**
      * Service have been destroyed.
      */
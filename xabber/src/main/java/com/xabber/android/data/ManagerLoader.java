@@ -0,0 +1,216 @@
+package com.xabber.android.data;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.xabber.android.data.log.LogManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calls {@link OnLoadListener#onLoad()} of managers on the thread pool.
+ * <p/>
+ * Manager is loaded after all managers it depends on by
+ * {@link OnLoadDependentListener#getLoadDependencies()}, independent managers are loaded in parallel.
+ * Start time and duration of each load are stored as startup trace.
+ */
+class ManagerLoader {
+
+    private static final String LOG_TAG = ManagerLoader.class.getSimpleName();
+
+    private static final int MAX_THREADS = 4;
+
+    private final Collection<OnLoadListener> listeners;
+
+    /**
+     * Number of not loaded dependencies by manager.
+     */
+    private final Map<OnLoadListener, Integer> waitingDependencies;
+
+    /**
+     * Managers depending on manager.
+     */
+    private final Map<OnLoadListener, List<OnLoadListener>> dependents;
+
+    private final CountDownLatch latch;
+
+    private final List<String> trace;
+
+    private ExecutorService executor;
+
+    private long startTime;
+
+    /**
+     * First exception thrown by manager.
+     */
+    private RuntimeException exception;
+
+    ManagerLoader(Collection<OnLoadListener> listeners) {
+        this.listeners = listeners;
+        waitingDependencies = new HashMap<>();
+        dependents = new HashMap<>();
+        latch = new CountDownLatch(listeners.size());
+        trace = new ArrayList<>();
+
+        for (OnLoadListener listener : listeners) {
+            waitingDependencies.put(listener, 0);
+            dependents.put(listener, new ArrayList<OnLoadListener>());
+        }
+        for (OnLoadListener listener : listeners) {
+            if (!(listener instanceof OnLoadDependentListener)) {
+                continue;
+            }
+            for (OnLoadListener dependency
+                    : ((OnLoadDependentListener) listener).getLoadDependencies()) {
+                if (dependency == listener || !dependents.containsKey(dependency)) {
+                    LogManager.w(LOG_TAG, "Ignored dependency " + getName(dependency)
+                            + " of " + getName(listener));
+                    continue;
+                }
+                dependents.get(dependency).add(listener);
+                waitingDependencies.put(listener, waitingDependencies.get(listener) + 1);
+            }
+        }
+        checkCycles();
+    }
+
+    private void checkCycles() {
+        Map<OnLoadListener, Integer> waiting = new HashMap<>(waitingDependencies);
+        List<OnLoadListener> ready = new ArrayList<>();
+        for (Map.Entry<OnLoadListener, Integer> entry : waiting.entrySet()) {
+            if (entry.getValue() == 0) {
+                ready.add(entry.getKey());
+            }
+        }
+        int loaded = 0;
+        while (!ready.isEmpty()) {
+            OnLoadListener listener = ready.remove(ready.size() - 1);
+            loaded++;
+            for (OnLoadListener dependent : dependents.get(listener)) {
+                int count = waiting.get(dependent) - 1;
+                waiting.put(dependent, count);
+                if (count == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (loaded != listeners.size()) {
+            throw new IllegalStateException("Cyclic load dependencies between managers");
+        }
+    }
+
+    /**
+     * Loads all managers and waits for completion.
+     *
+     * @throws RuntimeException thrown by manager's {@link OnLoadListener#onLoad()}.
+     */
+    void load() throws InterruptedException {
+        startTime = SystemClock.elapsedRealtime();
+        executor = Executors.newFixedThreadPool(
+                Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Manager loader " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        List<OnLoadListener> ready = new ArrayList<>();
+        synchronized (this) {
+            for (OnLoadListener listener : listeners) {
+                if (waitingDependencies.get(listener) == 0) {
+                    ready.add(listener);
+                }
+            }
+        }
+        for (OnLoadListener listener : ready) {
+            submit(listener);
+        }
+
+        try {
+            latch.await();
+        } finally {
+            executor.shutdown();
+        }
+
+        synchronized (this) {
+            trace.add(String.format(Locale.US, "total %d ms",
+                    SystemClock.elapsedRealtime() - startTime));
+            if (exception != null) {
+                throw exception;
+            }
+        }
+    }
+
+    /**
+     * @return start time from the beginning of loading, duration, name and thread
+     * of each loaded manager in order of completion.
+     */
+    synchronized List<String> getTrace() {
+        return Collections.unmodifiableList(new ArrayList<>(trace));
+    }
+
+    private void submit(final OnLoadListener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load(listener);
+            }
+        });
+    }
+
+    private void load(OnLoadListener listener) {
+        long start = SystemClock.elapsedRealtime();
+        List<OnLoadListener> ready = new ArrayList<>();
+        try {
+            LogManager.i(listener, "onLoad");
+            listener.onLoad();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        } finally {
+            long end = SystemClock.elapsedRealtime();
+            synchronized (this) {
+                String line = String.format(Locale.US, "%6d ms +%5d ms %s [%s]",
+                        start - startTime, end - start, getName(listener),
+                        Thread.currentThread().getName());
+                trace.add(line);
+                LogManager.i(LOG_TAG, line);
+
+                for (OnLoadListener dependent : dependents.get(listener)) {
+                    int count = waitingDependencies.get(dependent) - 1;
+                    waitingDependencies.put(dependent, count);
+                    if (count == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+            for (OnLoadListener dependent : ready) {
+                submit(dependent);
+            }
+            latch.countDown();
+        }
+    }
+
+    private static String getName(Object manager) {
+        return manager.getClass().getSimpleName();
+    }
+}
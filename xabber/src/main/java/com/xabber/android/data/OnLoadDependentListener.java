@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) 2013, Redsolution LTD. All rights reserved.
+ *
+ * This file is part of Xabber project; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License, Version 3.
+ *
+ * Xabber is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * along with this program. If not, see http://www.gnu.org/licenses/.
+ */
+package com.xabber.android.data;
+
+import java.util.Collection;
+
+/**
+ * Listener for application to be ready to load data, that needs data loaded by other managers.
+ */
+public interface OnLoadDependentListener extends OnLoadListener {
+
+    /**
+     * @return managers whose {@link #onLoad()} must be completed before {@link #onLoad()}
+     * of this one. Their requests posted to UI thread will be executed first too.
+     */
+    Collection<? extends OnLoadListener> getLoadDependencies();
+
+}
@@ -34,6 +34,7 @@ import com.xabber.android.data.extension.attention.AttentionManager;
 import com.xabber.android.data.extension.carbons.CarbonManager;
 import com.xabber.android.data.extension.otr.OTRManager;
 import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.log.TrafficInspector;
 import com.xabber.android.data.message.MessageManager;
 import com.xabber.android.data.notification.NotificationManager;
 import com.xabber.android.data.roster.AbstractContact;
@@ -51,14 +52,130 @@ import java.util.regex.Pattern;
 
 /**
  * Manage operations with common settings.
+ * <p/>
+ * Values are read from the {@link Snapshot} which is rebuilt on each preference change,
+ * so getters can be used in hot paths.
  *
  * @author alexander.ivanov
  */
 public class SettingsManager implements OnInitializedListener,
         OnMigrationListener, OnSharedPreferenceChangeListener {
 
+    private static final String LOG_TAG = SettingsManager.class.getSimpleName();
+
+    private static final int[] CONTACTS_ORDER_VALUES = new int[] {
+            R.string.contacts_order_alphabet_value,
+            R.string.contacts_order_status_value,
+    };
+
+    private static final int[] VIBRO_MODE_VALUES = new int[] {
+            R.string.events_vibro_disable,
+            R.string.events_vibro_bydefault,
+            R.string.events_vibro_short,
+            R.string.events_vibro_long,
+            R.string.events_vibro_if_silent,
+    };
+    private static final VibroMode[] VIBRO_MODES = new VibroMode[] {
+            VibroMode.disabled,
+            VibroMode.defaultvibro,
+            VibroMode.shortvibro,
+            VibroMode.longvibro,
+            VibroMode.onlyifsilent,
+    };
+
+    private static final int[] CHATS_SHOW_STATUS_CHANGE_VALUES = new int[] {
+            R.string.chats_show_status_change_always_value,
+            R.string.chats_show_status_change_muc_value,
+            R.string.chats_show_status_change_never_value,
+    };
+    private static final ChatsShowStatusChange[] CHATS_SHOW_STATUS_CHANGES = new ChatsShowStatusChange[] {
+            ChatsShowStatusChange.always,
+            ChatsShowStatusChange.muc,
+            ChatsShowStatusChange.never,
+    };
+
+    private static final int[] CHATS_HIDE_KEYBOARD_VALUES = new int[] {
+            R.string.chats_hide_keyboard_always_value,
+            R.string.chats_hide_keyboard_landscape_value,
+            R.string.chats_hide_keyboard_never_value,
+    };
+    private static final ChatsHideKeyboard[] CHATS_HIDE_KEYBOARDS = new ChatsHideKeyboard[] {
+            ChatsHideKeyboard.always,
+            ChatsHideKeyboard.landscape,
+            ChatsHideKeyboard.never,
+    };
+
+    private static final int[] CHATS_FONT_SIZE_VALUES = new int[] {
+            R.string.chats_font_size_small_value,
+            R.string.chats_font_size_normal_value,
+            R.string.chats_font_size_large_value,
+            R.string.chats_font_size_xlarge_value,
+    };
+    private static final int[] CHATS_APPEARANCE_STYLES = new int[] {
+            R.style.ChatText_Small,
+            R.style.ChatText_Normal,
+            R.style.ChatText_Large,
+            R.style.ChatText_XLarge,
+    };
+
+    private static final int[] DNS_RESOLVER_TYPE_VALUES = new int[] {
+            R.string.connection_dns_resolver_type_dns_java_resolver_value,
+            R.string.connection_dns_resolver_type_mini_dns_resolver_value,
+    };
+    private static final DnsResolverType[] DNS_RESOLVER_TYPES = new DnsResolverType[] {
+            DnsResolverType.dnsJavaResolver,
+            DnsResolverType.miniDnsResolver,
+    };
+
+    private static final int[] INTERFACE_THEME_VALUES = new int[] {
+            R.string.interface_theme_dark_value,
+            R.string.interface_theme_light_value,
+            R.string.interface_theme_normal_value,
+    };
+    private static final InterfaceTheme[] INTERFACE_THEMES = new InterfaceTheme[] {
+            InterfaceTheme.dark,
+            InterfaceTheme.light,
+            InterfaceTheme.light,
+    };
+
+    private static final int[] INTERFACE_SMILES_VALUES = new int[] {
+            R.string.interface_smiles_none_value,
+            R.string.interface_smiles_android_value,
+    };
+
+    private static final int[] SECURITY_OTR_MODE_VALUES = new int[] {
+            R.string.security_otr_mode_disabled_value,
+            R.string.security_otr_mode_manual_value,
+            R.string.security_otr_mode_auto_value,
+            R.string.security_otr_mode_required_value,
+    };
+    private static final SecurityOtrMode[] SECURITY_OTR_MODES = new SecurityOtrMode[] {
+            SecurityOtrMode.disabled,
+            SecurityOtrMode.manual,
+            SecurityOtrMode.auto,
+            SecurityOtrMode.required,
+    };
+
+    private static final int[] SPAM_FILTER_VALUES = new int[] {
+            R.string.spam_filter_1_value,
+            R.string.spam_filter_2_value,
+            R.string.spam_filter_3_value,
+            R.string.spam_filter_4_value,
+    };
+    private static final SpamFilterMode[] SPAM_FILTER_MODES = new SpamFilterMode[] {
+            SpamFilterMode.disabled,
+            SpamFilterMode.onlyRoster,
+            SpamFilterMode.authCaptcha,
+            SpamFilterMode.noAuth,
+    };
+
     private static SettingsManager instance;
 
+    /**
+     * Typed values of current settings.
+     */
+    private volatile Snapshot snapshot;
+
     private SettingsManager() {
         getSharedPreferences().registerOnSharedPreferenceChangeListener(this);
     }
@@ -75,13 +192,28 @@ public class SettingsManager implements OnInitializedListener,
                 .getInstance());
     }
 
-    private static int getInt(int key, int def) {
-        String value = getString(key, def);
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return Integer.parseInt(Application.getInstance().getString(def));
+    private static Snapshot getSnapshot() {
+        SettingsManager settingsManager = getInstance();
+        Snapshot snapshot = settingsManager.snapshot;
+        if (snapshot == null) {
+            snapshot = settingsManager.updateSnapshot();
         }
+        return snapshot;
+    }
+
+    /**
+     * Rereads all settings.
+     * <p/>
+     * Must be called after each change of preferences.
+     */
+    private synchronized Snapshot updateSnapshot() {
+        snapshot = new Snapshot(getSharedPreferences());
+        return snapshot;
+    }
+
+    private static void apply(Editor editor) {
+        editor.apply();
+        getInstance().updateSnapshot();
     }
 
     private static int getInteger(int key, int def) {
@@ -91,7 +223,7 @@ public class SettingsManager implements OnInitializedListener,
     private static void setInt(int key, int value) {
         Editor editor = getSharedPreferences().edit();
         editor.putInt(Application.getInstance().getString(key), value);
-        editor.commit();
+        apply(editor);
     }
 
     private static boolean getBoolean(int key, boolean def) {
@@ -99,15 +231,10 @@ public class SettingsManager implements OnInitializedListener,
                 Application.getInstance().getString(key), def);
     }
 
-    private static boolean getBoolean(int key, int def) {
-        return getBoolean(key, Application.getInstance().getResources()
-                .getBoolean(def));
-    }
-
     private static void setBoolean(int key, boolean value) {
         Editor editor = getSharedPreferences().edit();
         editor.putBoolean(Application.getInstance().getString(key), value);
-        editor.commit();
+        apply(editor);
     }
 
     private static String getString(int key, String def) {
@@ -115,14 +242,10 @@ public class SettingsManager implements OnInitializedListener,
                 Application.getInstance().getString(key), def);
     }
 
-    private static String getString(int key, int def) {
-        return getString(key, Application.getInstance().getString(def));
-    }
-
     private static void setString(int key, String value) {
         Editor editor = getSharedPreferences().edit();
         editor.putString(Application.getInstance().getString(key), value);
-        editor.commit();
+        apply(editor);
     }
 
     /**
@@ -144,18 +267,15 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean contactsShowAvatars() {
-        return getBoolean(R.string.contacts_show_avatars_key,
-                R.bool.contacts_show_avatars_default);
+        return getSnapshot().contactsShowAvatars;
     }
 
     public static boolean contactsShowMessages() {
-        return getBoolean(R.string.contacts_show_messages_key,
-                R.bool.contacts_show_messages_default);
+        return getSnapshot().contactsShowMessages;
     }
 
     public static boolean contactsShowOffline() {
-        return getBoolean(R.string.contacts_show_offline_key,
-                R.bool.contacts_show_offline_default);
+        return getSnapshot().contactsShowOffline;
     }
 
     public static void setContactsShowOffline(boolean show) {
@@ -163,37 +283,23 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean contactsShowGroups() {
-        return getBoolean(R.string.contacts_show_groups_key,
-                R.bool.contacts_show_groups_default);
+        return getSnapshot().contactsShowGroups;
     }
 
     public static boolean contactsShowEmptyGroups() {
-        return getBoolean(R.string.contacts_show_empty_groups_key,
-                R.bool.contacts_show_empty_groups_default);
+        return getSnapshot().contactsShowEmptyGroups;
     }
 
     public static boolean contactsShowAccounts() {
-        return getBoolean(R.string.contacts_show_accounts_key,
-                R.bool.contacts_show_accounts_default);
+        return getSnapshot().contactsShowAccounts;
     }
 
     public static Comparator<AbstractContact> contactsOrder() {
-        String value = getString(R.string.contacts_order_key,
-                R.string.contacts_order_default);
-        if (Application.getInstance()
-                .getString(R.string.contacts_order_alphabet_value)
-                .equals(value))
-            return ComparatorByName.COMPARATOR_BY_NAME;
-        else if (Application.getInstance()
-                .getString(R.string.contacts_order_status_value).equals(value))
-            return ComparatorByStatus.COMPARATOR_BY_STATUS;
-        else
-            throw new IllegalStateException();
+        return getSnapshot().contactsOrder;
     }
 
     public static boolean contactsEnableShowAccounts() {
-        return getBoolean(R.string.contacts_enable_show_accounts_key,
-                R.bool.contacts_enable_show_accounts_default);
+        return getSnapshot().contactsEnableShowAccounts;
     }
 
     /**
@@ -204,7 +310,7 @@ public class SettingsManager implements OnInitializedListener,
      * @return
      */
     public static String contactsSelectedAccount() {
-        return getString(R.string.contacts_selected_account_key, "");
+        return getSnapshot().contactsSelectedAccount;
     }
 
     public static void setContactsSelectedAccount(AccountJid account) {
@@ -218,8 +324,12 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static void enableContactsShowAccount() {
-        setBoolean(R.string.contacts_enable_show_accounts_key, false);
-        setBoolean(R.string.contacts_show_accounts_key, true);
+        Editor editor = getSharedPreferences().edit();
+        editor.putBoolean(Application.getInstance().getString(
+                R.string.contacts_enable_show_accounts_key), false);
+        editor.putBoolean(Application.getInstance().getString(
+                R.string.contacts_show_accounts_key), true);
+        apply(editor);
     }
 
     /**
@@ -241,42 +351,15 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static VibroMode eventsVibroChat() {
-        String value = getString(R.string.events_vibro_chat_key, R.string.events_vibro_bydefault);
-        if (Application.getInstance().getString(R.string.events_vibro_disable).equals(value)) {
-            return VibroMode.disabled;
-        } else if (Application.getInstance().getString(R.string.events_vibro_bydefault).equals(value)) {
-            return VibroMode.defaultvibro;
-        } else if (Application.getInstance().getString(R.string.events_vibro_short).equals(value)) {
-            return VibroMode.shortvibro;
-        } else if (Application.getInstance().getString(R.string.events_vibro_long).equals(value)) {
-            return VibroMode.longvibro;
-        } else if (Application.getInstance().getString(R.string.events_vibro_if_silent).equals(value)) {
-            return VibroMode.onlyifsilent;
-        } else {
-            throw new IllegalStateException();
-        }
+        return getSnapshot().eventsVibroChat;
     }
 
     public static VibroMode eventsVibroMuc() {
-        String value = getString(R.string.events_vibro_muc_key, R.string.events_vibro_bydefault);
-        if (Application.getInstance().getString(R.string.events_vibro_disable).equals(value)) {
-            return VibroMode.disabled;
-        } else if (Application.getInstance().getString(R.string.events_vibro_bydefault).equals(value)) {
-            return VibroMode.defaultvibro;
-        } else if (Application.getInstance().getString(R.string.events_vibro_short).equals(value)) {
-            return VibroMode.shortvibro;
-        } else if (Application.getInstance().getString(R.string.events_vibro_long).equals(value)) {
-            return VibroMode.longvibro;
-        } else if (Application.getInstance().getString(R.string.events_vibro_if_silent).equals(value)) {
-            return VibroMode.onlyifsilent;
-        } else {
-            throw new IllegalStateException();
-        }
+        return getSnapshot().eventsVibroMuc;
     }
 
     public static boolean eventsSuppress100() {
-        return getBoolean(R.string.chat_events_suppress_100_key,
-                R.bool.chat_events_suppress_100_default);
+        return getSnapshot().eventsSuppress100;
     }
 
 //    public static boolean eventsIgnoreSystemVibro() {
@@ -285,155 +368,91 @@ public class SettingsManager implements OnInitializedListener,
 //    }
 
     public static boolean eventsLightning() {
-        return getBoolean(R.string.events_lightning_key,
-                R.bool.events_lightning_default);
+        return getSnapshot().eventsLightning;
     }
 
     public static boolean eventsLightningForMuc() {
-        return getBoolean(R.string.events_lightning_muc_key,
-                R.bool.events_lightning_default);
+        return getSnapshot().eventsLightningForMuc;
     }
 
     public static boolean eventsPersistent() {
-        return getBoolean(R.string.events_persistent_key,
-                R.bool.events_persistent_default);
+        return getSnapshot().eventsPersistent;
     }
 
     public static boolean eventsShowText() {
-        return getBoolean(R.string.events_show_text_key,
-                R.bool.events_show_text_default);
+        return getSnapshot().eventsShowText;
     }
 
     public static boolean eventsShowTextOnMuc() {
-        return getBoolean(R.string.events_show_text_muc_key,
-                R.bool.events_show_text_default);
+        return getSnapshot().eventsShowTextOnMuc;
     }
 
     public static boolean eventsOnChat() {
-        return getBoolean(R.string.events_on_chat_key,
-                R.bool.events_on_chat_default);
+        return getSnapshot().eventsOnChat;
     }
 
     public static boolean eventsOnMuc() {
-        return getBoolean(R.string.events_on_muc_key,
-                R.bool.events_on_muc_default);
+        return getSnapshot().eventsOnMuc;
     }
 
     public static boolean eventsInAppSounds() {
-        return getBoolean(R.string.events_in_app_sounds_key,
-                R.bool.events_in_app_sounds_default);
+        return getSnapshot().eventsInAppSounds;
     }
 
     public static boolean eventsInAppVibrate() {
-        return getBoolean(R.string.events_in_app_vibrate_key,
-                R.bool.events_in_app_vibrate_default);
+        return getSnapshot().eventsInAppVibrate;
     }
 
     public static boolean eventsInAppPreview() {
-        return getBoolean(R.string.events_in_app_preview_key,
-                R.bool.events_in_app_preview_default);
+        return getSnapshot().eventsInAppPreview;
     }
 
     public static boolean eventsInChatSounds() {
-        return getBoolean(R.string.events_in_chat_sounds_key,
-                R.bool.events_in_chat_sounds_default);
+        return getSnapshot().eventsInChatSounds;
     }
 
     public static boolean eventsVisibleChat() {
-        return getBoolean(R.string.events_visible_chat_key,
-                R.bool.events_visible_chat_default);
+        return getSnapshot().eventsVisibleChat;
     }
 
     public static boolean eventsFirstOnly() {
-        return getBoolean(R.string.events_first_only_key,
-                R.bool.events_first_only_default);
+        return getSnapshot().eventsFirstOnly;
     }
 
     public static boolean chatsShowAvatars() {
-        return getBoolean(R.string.chats_show_avatars_key,
-                R.bool.chats_show_avatars_default);
+        return getSnapshot().chatsShowAvatars;
     }
 
     public static boolean chatsShowAvatarsMUC() {
-        return getBoolean(R.string.chats_show_avatars_muc_key,
-                R.bool.chats_show_avatars_muc_default);
+        return getSnapshot().chatsShowAvatarsMUC;
     }
 
     public static boolean chatsSendByEnter() {
-        return getBoolean(R.string.chats_send_by_enter_key,
-                R.bool.chats_send_by_enter_default);
+        return getSnapshot().chatsSendByEnter;
     }
 
     public static ChatsShowStatusChange chatsShowStatusChange() {
-        String value = getString(R.string.chats_show_status_change_key,
-                R.string.chats_show_status_change_default);
-        if (Application.getInstance()
-                .getString(R.string.chats_show_status_change_always_value)
-                .equals(value))
-            return ChatsShowStatusChange.always;
-        else if (Application.getInstance()
-                .getString(R.string.chats_show_status_change_muc_value)
-                .equals(value))
-            return ChatsShowStatusChange.muc;
-        else if (Application.getInstance()
-                .getString(R.string.chats_show_status_change_never_value)
-                .equals(value))
-            return ChatsShowStatusChange.never;
-        else
-            throw new IllegalStateException();
-
+        return getSnapshot().chatsShowStatusChange;
     }
 
     public static ChatsHideKeyboard chatsHideKeyboard() {
-        String value = getString(R.string.chats_hide_keyboard_key,
-                R.string.chats_hide_keyboard_default);
-        if (Application.getInstance()
-                .getString(R.string.chats_hide_keyboard_always_value)
-                .equals(value))
-            return ChatsHideKeyboard.always;
-        else if (Application.getInstance()
-                .getString(R.string.chats_hide_keyboard_landscape_value)
-                .equals(value))
-            return ChatsHideKeyboard.landscape;
-        else if (Application.getInstance()
-                .getString(R.string.chats_hide_keyboard_never_value)
-                .equals(value))
-            return ChatsHideKeyboard.never;
-        else
-            throw new IllegalStateException();
+        return getSnapshot().chatsHideKeyboard;
     }
 
     public static boolean chatsShowBackground() {
-        return getBoolean(R.string.chats_show_background_key, R.bool.chats_show_background_default);
+        return getSnapshot().chatsShowBackground;
     }
 
     public static int chatsAppearanceStyle() {
-        String value = getString(R.string.chats_font_size_key,
-                R.string.chats_font_size_default);
-        if (Application.getInstance()
-                .getString(R.string.chats_font_size_small_value).equals(value))
-            return R.style.ChatText_Small;
-        else if (Application.getInstance()
-                .getString(R.string.chats_font_size_normal_value).equals(value))
-            return R.style.ChatText_Normal;
-        else if (Application.getInstance()
-                .getString(R.string.chats_font_size_large_value).equals(value))
-            return R.style.ChatText_Large;
-        else if (Application.getInstance()
-                .getString(R.string.chats_font_size_xlarge_value).equals(value))
-            return R.style.ChatText_XLarge;
-        else
-            throw new IllegalStateException();
+        return getSnapshot().chatsAppearanceStyle;
     }
 
     public static boolean chatsStateNotification() {
-        return getBoolean(R.string.chats_state_notification_key,
-                R.bool.chats_state_notification_default);
+        return getSnapshot().chatsStateNotification;
     }
 
     public static boolean chatsAttention() {
-        return getBoolean(R.string.chats_attention_key,
-                R.bool.chats_attention_default);
+        return getSnapshot().chatsAttention;
     }
 
     /**
@@ -449,28 +468,23 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static int connectionGoAway() {
-        return getInt(R.string.connection_go_away_key,
-                R.string.connection_go_away_default);
+        return getSnapshot().connectionGoAway;
     }
 
     public static int connectionGoXa() {
-        return getInt(R.string.connection_go_xa_key,
-                R.string.connection_go_xa_default);
+        return getSnapshot().connectionGoXa;
     }
 
     public static boolean connectionWifiLock() {
-        return getBoolean(R.string.connection_wifi_lock_key,
-                R.bool.connection_wifi_lock_default);
+        return getSnapshot().connectionWifiLock;
     }
 
     public static boolean connectionWakeLock() {
-        return getBoolean(R.string.connection_wake_lock_key,
-                R.bool.connection_wake_lock_default);
+        return getSnapshot().connectionWakeLock;
     }
 
     public static boolean connectionStartAtBoot() {
-        return getBoolean(R.string.connection_start_at_boot_key,
-                R.bool.connection_start_at_boot_default);
+        return getSnapshot().connectionStartAtBoot;
     }
 
     public static void setConnectionStartAtBoot(boolean value) {
@@ -478,86 +492,83 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean connectionLoadVCard() {
-        return getBoolean(R.string.connection_load_vcard_key,
-                R.bool.connection_load_vcard_default);
+        return getSnapshot().connectionLoadVCard;
     }
 
     public static boolean connectionLoadImages() {
-        return getBoolean(R.string.connection_load_images_key,
-                R.bool.connection_load_images_default);
+        return getSnapshot().connectionLoadImages;
     }
 
     public static boolean connectionUseCarbons() {
-        return getBoolean(R.string.connection_use_carbons_key,
-                R.bool.connection_use_carbons_default);
+        return getSnapshot().connectionUseCarbons;
     }
 
     public static DnsResolverType connectionDnsResolver() {
-        String value = getString(R.string.connection_dns_resolver_type_key,
-                R.string.connection_dns_resolver_type_default);
-        return getDnsResolverType(value);
+        return getSnapshot().connectionDnsResolver;
     }
 
     @NonNull
     public static DnsResolverType getDnsResolverType(String value) {
-        if (Application.getInstance().getString(R.string.connection_dns_resolver_type_dns_java_resolver_value).equals(value)) {
-            return DnsResolverType.dnsJavaResolver;
-        } else if (Application.getInstance().getString(R.string.connection_dns_resolver_type_mini_dns_resolver_value).equals(value)) {
-            return DnsResolverType.miniDnsResolver;
-        } else {
+        int index = indexOf(value, DNS_RESOLVER_TYPE_VALUES);
+        if (index < 0) {
             throw new IllegalStateException("Unknown preference value for DNS resolver type");
         }
+        return DNS_RESOLVER_TYPES[index];
     }
 
     public static boolean connectionUsePlainTextAuth() {
-        return getBoolean(R.string.connection_use_plain_text_auth_key,
-                R.bool.connection_use_plain_text_auth_default);
+        return getSnapshot().connectionUsePlainTextAuth;
     }
 
     public static boolean connectionAdjustPriority() {
-        return getBoolean(R.string.connection_adjust_priority_key,
-                R.bool.connection_adjust_priority_default);
+        return getSnapshot().connectionAdjustPriority;
     }
 
     public static int connectionPriorityAvailable() {
-        return getInt(R.string.connection_priority_available_key,
-                R.string.connection_priority_available_default);
+        return getSnapshot().connectionPriorityAvailable;
     }
 
     public static int connectionPriorityAway() {
-        return getInt(R.string.connection_priority_away_key,
-                R.string.connection_priority_away_default);
+        return getSnapshot().connectionPriorityAway;
     }
 
     public static int connectionPriorityChat() {
-        return getInt(R.string.connection_priority_chat_key,
-                R.string.connection_priority_chat_default);
+        return getSnapshot().connectionPriorityChat;
     }
 
     public static int connectionPriorityDnd() {
-        return getInt(R.string.connection_priority_dnd_key,
-                R.string.connection_priority_dnd_default);
+        return getSnapshot().connectionPriorityDnd;
     }
 
     public static int connectionPriorityXa() {
-        return getInt(R.string.connection_priority_xa_key,
-                R.string.connection_priority_xa_default);
+        return getSnapshot().connectionPriorityXa;
     }
 
     public static boolean debugLog() {
-        return getBoolean(R.string.debug_log_key, R.bool.debug_log_default);
+        return getSnapshot().debugLog;
     }
 
     public static boolean fileLog() {
-        return getBoolean(R.string.debug_file_log_key, R.bool.debug_file_log_default);
+        return getSnapshot().fileLog;
+    }
+
+    public static boolean debugTrafficInspector() {
+        return getSnapshot().debugTrafficInspector;
+    }
+
+    /**
+     * @return only each n-th entry of the traffic is kept by inspector.
+     */
+    public static int debugTrafficSampling() {
+        return getSnapshot().debugTrafficSampling;
     }
 
     public static boolean showConnectionErrors() {
-        return getBoolean(R.string.debug_connection_errors_key, R.bool.debug_connection_errors_default);
+        return getSnapshot().showConnectionErrors;
     }
 
     public static boolean sendCrashReports() {
-        return getBoolean(R.string.debug_crash_reports_key, R.bool.debug_crash_reports_default);
+        return getSnapshot().sendCrashReports;
     }
 
     public static boolean isCrashReportsSupported() {
@@ -568,7 +579,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean isCrashReportsDialogShown() {
-        return getBoolean(R.string.debug_crash_reports_dialog_key, false);
+        return getSnapshot().crashReportsDialogShown;
     }
 
     public static void setCrashReportsDialogShown() {
@@ -576,95 +587,39 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static InterfaceTheme interfaceTheme() {
-        String value = getString(R.string.interface_theme_key, R.string.interface_theme_default);
-        if (Application.getInstance().getString(R.string.interface_theme_dark_value).equals(value)) {
-            return InterfaceTheme.dark;
-        } else if (Application.getInstance().getString(R.string.interface_theme_light_value).equals(value)) {
-            return InterfaceTheme.light;
-        } else if (Application.getInstance().getString(R.string.interface_theme_normal_value).equals(value)) {
-            return InterfaceTheme.light;
-        } else {
-            throw new IllegalStateException();
-        }
+        return getSnapshot().interfaceTheme;
     }
 
     public static Map<Pattern, Integer> interfaceSmiles() {
-        String value = getString(R.string.interface_smiles_key, R.string.interface_smiles_default);
-        if (Application.getInstance().getString(R.string.interface_smiles_none_value).equals(value)) {
-            return Collections.unmodifiableMap(Emoticons.NONE_EMOTICONS);
-        } else if (Application.getInstance().getString(R.string.interface_smiles_android_value).equals(value)) {
-            return Collections.unmodifiableMap(Emoticons.ANDROID_EMOTICONS);
-        } else {
-            throw new IllegalStateException();
-        }
+        return getSnapshot().interfaceSmiles;
     }
 
     public static boolean securityCheckCertificate() {
-        return getBoolean(R.string.security_check_certificate_key,
-                R.bool.security_check_certificate_default);
+        return getSnapshot().securityCheckCertificate;
     }
 
     public static SecurityOtrMode securityOtrMode() {
-        String value = getString(R.string.security_otr_mode_key,
-                R.string.security_otr_mode_default);
-        if (Application.getInstance()
-                .getString(R.string.security_otr_mode_disabled_value)
-                .equals(value))
-            return SecurityOtrMode.disabled;
-        else if (Application.getInstance()
-                .getString(R.string.security_otr_mode_manual_value)
-                .equals(value))
-            return SecurityOtrMode.manual;
-        else if (Application.getInstance()
-                .getString(R.string.security_otr_mode_auto_value).equals(value))
-            return SecurityOtrMode.auto;
-        else if (Application.getInstance()
-                .getString(R.string.security_otr_mode_required_value)
-                .equals(value))
-            return SecurityOtrMode.required;
-        else
-            throw new IllegalStateException();
+        return getSnapshot().securityOtrMode;
     }
 
     public static SpamFilterMode spamFilterMode() {
-        String value = getString(R.string.spam_filter_key, R.string.spam_filter_default);
-
-        if (Application.getInstance().getString(R.string.spam_filter_1_value).equals(value))
-            return SpamFilterMode.disabled;
-
-        else if (Application.getInstance().getString(R.string.spam_filter_2_value).equals(value))
-            return SpamFilterMode.onlyRoster;
-
-        else if (Application.getInstance().getString(R.string.spam_filter_3_value).equals(value))
-            return SpamFilterMode.authCaptcha;
-
-        else if (Application.getInstance().getString(R.string.spam_filter_4_value).equals(value))
-            return SpamFilterMode.noAuth;
-
-        else throw new IllegalStateException();
+        return getSnapshot().spamFilterMode;
     }
 
     public static boolean securityOtrHistory() {
-        return getBoolean(R.string.security_otr_history_key,
-                R.bool.security_otr_history_default);
+        return getSnapshot().securityOtrHistory;
     }
 
     public static int bootCount() {
-        return getSharedPreferences()
-                .getInt(Application.getInstance().getString(
-                        R.string.boot_count_key), 0);
+        return getSnapshot().bootCount;
     }
 
     public static void incrementBootCount() {
-        Editor editor = getSharedPreferences().edit();
-        editor.putInt(
-                Application.getInstance().getString(R.string.boot_count_key),
-                bootCount() + 1);
-        editor.commit();
+        setInt(R.string.boot_count_key, getInteger(R.string.boot_count_key, 0) + 1);
     }
 
     public static boolean startAtBootSuggested() {
-        return getBoolean(R.string.start_at_boot_suggested_key, false);
+        return getSnapshot().startAtBootSuggested;
     }
 
     public static void setStartAtBootSuggested() {
@@ -672,7 +627,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean chatShowcaseSuggested() {
-        return getBoolean(R.string.chat_showcase_suggested_key, false);
+        return getSnapshot().chatShowcaseSuggested;
     }
 
     public static void setChatShowcaseSuggested() {
@@ -680,7 +635,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean contactShowcaseSuggested() {
-        return getBoolean(R.string.contact_showcase_suggested_key, false);
+        return getSnapshot().contactShowcaseSuggested;
     }
 
     public static void setContactShowcaseSuggested() {
@@ -688,7 +643,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean contactIntegrationSuggested() {
-        return getBoolean(R.string.contact_integration_suggested_key, false);
+        return getSnapshot().contactIntegrationSuggested;
     }
 
     public static void setContactIntegrationSuggested() {
@@ -696,7 +651,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean isTranslationSuggested() {
-        return getBoolean(R.string.translation_suggested_key, false);
+        return getSnapshot().translationSuggested;
     }
 
     public static void setTranslationSuggested() {
@@ -704,7 +659,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean isDarkThemeSuggested() {
-        return getBoolean(R.string.dark_theme_suggested_key, false);
+        return getSnapshot().darkThemeSuggested;
     }
 
     public static void setDarkThemeSuggested() {
@@ -717,7 +672,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static boolean isBatteryOptimizationDisableSuggested() {
-        return getBoolean(R.string.battery_optimization_disable_suggested_key, false);
+        return getSnapshot().batteryOptimizationDisableSuggested;
     }
 
     public static void setBatteryOptimizationDisableSuggested() {
@@ -729,8 +684,7 @@ public class SettingsManager implements OnInitializedListener,
      * {@link StatusMode#available} if mode was not set.
      */
     public static StatusMode statusMode() {
-        return StatusMode.valueOf(getString(R.string.status_mode_key,
-                StatusMode.available.name()));
+        return getSnapshot().statusMode;
     }
 
     public static void setStatusMode(StatusMode statusMode) {
@@ -741,7 +695,7 @@ public class SettingsManager implements OnInitializedListener,
      * @return Common status text for all accounts.
      */
     public static String statusText() {
-        return getString(R.string.status_text_key, "");
+        return getSnapshot().statusText;
     }
 
     public static void setStatusText(String statusText) {
@@ -753,7 +707,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static String getLastSyncDate() {
-        return getString(R.string.last_sync_date_key, R.string.last_sync_date_default);
+        return getSnapshot().lastSyncDate;
     }
 
     public static void setSyncAllAccounts(boolean syncAll) {
@@ -763,7 +717,7 @@ public class SettingsManager implements OnInitializedListener,
 
     public static boolean isSyncAllAccounts() {
         if (AccountManager.getInstance().haveNotAllowedSyncAccounts()) return false;
-        return getBoolean(R.string.sync_all_key, true);
+        return getSnapshot().syncAllAccounts;
     }
 
     public static void setLastOrderChangeTimestamp(int lastOrderChange) {
@@ -771,7 +725,7 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static int getLastOrderChangeTimestamp() {
-        return getInteger(R.string.order_last_timestamp_key, 1);
+        return getSnapshot().lastOrderChangeTimestamp;
     }
 
     public static void setLastPatreonLoadTimestamp(int timestamp) {
@@ -779,7 +733,19 @@ public class SettingsManager implements OnInitializedListener,
     }
 
     public static int getLastPatreonLoadTimestamp() {
-        return getInteger(R.string.patreon_last_load_timestamp_key, 1);
+        return getSnapshot().lastPatreonLoadTimestamp;
+    }
+
+    /**
+     * @return index of resource string equal to the value or -1.
+     */
+    private static int indexOf(String value, int[] values) {
+        for (int index = 0; index < values.length; index++) {
+            if (Application.getInstance().getString(values[index]).equals(value)) {
+                return index;
+            }
+        }
+        return -1;
     }
 
     @Override
@@ -831,6 +797,8 @@ public class SettingsManager implements OnInitializedListener,
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
                                           String key) {
+        updateSnapshot();
+
         if (key.equals(Application.getInstance().getString(
                 R.string.chats_show_status_change_key))) {
             MessageManager.getInstance().onSettingsChanged();
@@ -865,7 +833,344 @@ public class SettingsManager implements OnInitializedListener,
         } else if(key.equals(Application.getInstance().getString(
                 R.string.debug_file_log_key))) {
             LogManager.getInstance().onSettingsChanged();
+        } else if (key.equals(Application.getInstance().getString(R.string.debug_traffic_inspector_key))
+                || key.equals(Application.getInstance().getString(R.string.debug_traffic_sampling_key))) {
+            TrafficInspector.getInstance().onSettingsChanged();
+        }
+    }
+
+    /**
+     * Immutable typed values of the settings.
+     */
+    private static final class Snapshot {
+
+        final boolean contactsShowAvatars;
+        final boolean contactsShowMessages;
+        final boolean contactsShowOffline;
+        final boolean contactsShowGroups;
+        final boolean contactsShowEmptyGroups;
+        final boolean contactsShowAccounts;
+        final Comparator<AbstractContact> contactsOrder;
+        final boolean contactsEnableShowAccounts;
+        final String contactsSelectedAccount;
+
+        final VibroMode eventsVibroChat;
+        final VibroMode eventsVibroMuc;
+        final boolean eventsSuppress100;
+        final boolean eventsLightning;
+        final boolean eventsLightningForMuc;
+        final boolean eventsPersistent;
+        final boolean eventsShowText;
+        final boolean eventsShowTextOnMuc;
+        final boolean eventsOnChat;
+        final boolean eventsOnMuc;
+        final boolean eventsInAppSounds;
+        final boolean eventsInAppVibrate;
+        final boolean eventsInAppPreview;
+        final boolean eventsInChatSounds;
+        final boolean eventsVisibleChat;
+        final boolean eventsFirstOnly;
+
+        final boolean chatsShowAvatars;
+        final boolean chatsShowAvatarsMUC;
+        final boolean chatsSendByEnter;
+        final ChatsShowStatusChange chatsShowStatusChange;
+        final ChatsHideKeyboard chatsHideKeyboard;
+        final boolean chatsShowBackground;
+        final int chatsAppearanceStyle;
+        final boolean chatsStateNotification;
+        final boolean chatsAttention;
+
+        final int connectionGoAway;
+        final int connectionGoXa;
+        final boolean connectionWifiLock;
+        final boolean connectionWakeLock;
+        final boolean connectionStartAtBoot;
+        final boolean connectionLoadVCard;
+        final boolean connectionLoadImages;
+        final boolean connectionUseCarbons;
+        final DnsResolverType connectionDnsResolver;
+        final boolean connectionUsePlainTextAuth;
+        final boolean connectionAdjustPriority;
+        final int connectionPriorityAvailable;
+        final int connectionPriorityAway;
+        final int connectionPriorityChat;
+        final int connectionPriorityDnd;
+        final int connectionPriorityXa;
+
+        final boolean debugLog;
+        final boolean fileLog;
+        final boolean debugTrafficInspector;
+        final int debugTrafficSampling;
+        final boolean showConnectionErrors;
+        final boolean sendCrashReports;
+        final boolean crashReportsDialogShown;
+
+        final InterfaceTheme interfaceTheme;
+        final Map<Pattern, Integer> interfaceSmiles;
+
+        final boolean securityCheckCertificate;
+        final SecurityOtrMode securityOtrMode;
+        final SpamFilterMode spamFilterMode;
+        final boolean securityOtrHistory;
+
+        final int bootCount;
+        final boolean startAtBootSuggested;
+        final boolean chatShowcaseSuggested;
+        final boolean contactShowcaseSuggested;
+        final boolean contactIntegrationSuggested;
+        final boolean translationSuggested;
+        final boolean darkThemeSuggested;
+        final boolean batteryOptimizationDisableSuggested;
+
+        final StatusMode statusMode;
+        final String statusText;
+        final String lastSyncDate;
+        final boolean syncAllAccounts;
+        final int lastOrderChangeTimestamp;
+        final int lastPatreonLoadTimestamp;
+
+        private final SharedPreferences preferences;
+
+        Snapshot(SharedPreferences preferences) {
+            this.preferences = preferences;
+
+            contactsShowAvatars = readBoolean(R.string.contacts_show_avatars_key,
+                    R.bool.contacts_show_avatars_default);
+            contactsShowMessages = readBoolean(R.string.contacts_show_messages_key,
+                    R.bool.contacts_show_messages_default);
+            contactsShowOffline = readBoolean(R.string.contacts_show_offline_key,
+                    R.bool.contacts_show_offline_default);
+            contactsShowGroups = readBoolean(R.string.contacts_show_groups_key,
+                    R.bool.contacts_show_groups_default);
+            contactsShowEmptyGroups = readBoolean(R.string.contacts_show_empty_groups_key,
+                    R.bool.contacts_show_empty_groups_default);
+            contactsShowAccounts = readBoolean(R.string.contacts_show_accounts_key,
+                    R.bool.contacts_show_accounts_default);
+            if (readIndex(R.string.contacts_order_key, R.string.contacts_order_default,
+                    CONTACTS_ORDER_VALUES) == 0) {
+                contactsOrder = ComparatorByName.COMPARATOR_BY_NAME;
+            } else {
+                contactsOrder = ComparatorByStatus.COMPARATOR_BY_STATUS;
+            }
+            contactsEnableShowAccounts = readBoolean(R.string.contacts_enable_show_accounts_key,
+                    R.bool.contacts_enable_show_accounts_default);
+            contactsSelectedAccount = readString(R.string.contacts_selected_account_key, "");
+
+            eventsVibroChat = VIBRO_MODES[readIndex(R.string.events_vibro_chat_key,
+                    R.string.events_vibro_bydefault, VIBRO_MODE_VALUES)];
+            eventsVibroMuc = VIBRO_MODES[readIndex(R.string.events_vibro_muc_key,
+                    R.string.events_vibro_bydefault, VIBRO_MODE_VALUES)];
+            eventsSuppress100 = readBoolean(R.string.chat_events_suppress_100_key,
+                    R.bool.chat_events_suppress_100_default);
+            eventsLightning = readBoolean(R.string.events_lightning_key,
+                    R.bool.events_lightning_default);
+            eventsLightningForMuc = readBoolean(R.string.events_lightning_muc_key,
+                    R.bool.events_lightning_default);
+            eventsPersistent = readBoolean(R.string.events_persistent_key,
+                    R.bool.events_persistent_default);
+            eventsShowText = readBoolean(R.string.events_show_text_key,
+                    R.bool.events_show_text_default);
+            eventsShowTextOnMuc = readBoolean(R.string.events_show_text_muc_key,
+                    R.bool.events_show_text_default);
+            eventsOnChat = readBoolean(R.string.events_on_chat_key,
+                    R.bool.events_on_chat_default);
+            eventsOnMuc = readBoolean(R.string.events_on_muc_key,
+                    R.bool.events_on_muc_default);
+            eventsInAppSounds = readBoolean(R.string.events_in_app_sounds_key,
+                    R.bool.events_in_app_sounds_default);
+            eventsInAppVibrate = readBoolean(R.string.events_in_app_vibrate_key,
+                    R.bool.events_in_app_vibrate_default);
+            eventsInAppPreview = readBoolean(R.string.events_in_app_preview_key,
+                    R.bool.events_in_app_preview_default);
+            eventsInChatSounds = readBoolean(R.string.events_in_chat_sounds_key,
+                    R.bool.events_in_chat_sounds_default);
+            eventsVisibleChat = readBoolean(R.string.events_visible_chat_key,
+                    R.bool.events_visible_chat_default);
+            eventsFirstOnly = readBoolean(R.string.events_first_only_key,
+                    R.bool.events_first_only_default);
+
+            chatsShowAvatars = readBoolean(R.string.chats_show_avatars_key,
+                    R.bool.chats_show_avatars_default);
+            chatsShowAvatarsMUC = readBoolean(R.string.chats_show_avatars_muc_key,
+                    R.bool.chats_show_avatars_muc_default);
+            chatsSendByEnter = readBoolean(R.string.chats_send_by_enter_key,
+                    R.bool.chats_send_by_enter_default);
+            chatsShowStatusChange = CHATS_SHOW_STATUS_CHANGES[readIndex(
+                    R.string.chats_show_status_change_key,
+                    R.string.chats_show_status_change_default, CHATS_SHOW_STATUS_CHANGE_VALUES)];
+            chatsHideKeyboard = CHATS_HIDE_KEYBOARDS[readIndex(R.string.chats_hide_keyboard_key,
+                    R.string.chats_hide_keyboard_default, CHATS_HIDE_KEYBOARD_VALUES)];
+            chatsShowBackground = readBoolean(R.string.chats_show_background_key,
+                    R.bool.chats_show_background_default);
+            chatsAppearanceStyle = CHATS_APPEARANCE_STYLES[readIndex(R.string.chats_font_size_key,
+                    R.string.chats_font_size_default, CHATS_FONT_SIZE_VALUES)];
+            chatsStateNotification = readBoolean(R.string.chats_state_notification_key,
+                    R.bool.chats_state_notification_default);
+            chatsAttention = readBoolean(R.string.chats_attention_key,
+                    R.bool.chats_attention_default);
+
+            connectionGoAway = readInt(R.string.connection_go_away_key,
+                    R.string.connection_go_away_default);
+            connectionGoXa = readInt(R.string.connection_go_xa_key,
+                    R.string.connection_go_xa_default);
+            connectionWifiLock = readBoolean(R.string.connection_wifi_lock_key,
+                    R.bool.connection_wifi_lock_default);
+            connectionWakeLock = readBoolean(R.string.connection_wake_lock_key,
+                    R.bool.connection_wake_lock_default);
+            connectionStartAtBoot = readBoolean(R.string.connection_start_at_boot_key,
+                    R.bool.connection_start_at_boot_default);
+            connectionLoadVCard = readBoolean(R.string.connection_load_vcard_key,
+                    R.bool.connection_load_vcard_default);
+            connectionLoadImages = readBoolean(R.string.connection_load_images_key,
+                    R.bool.connection_load_images_default);
+            connectionUseCarbons = readBoolean(R.string.connection_use_carbons_key,
+                    R.bool.connection_use_carbons_default);
+            connectionDnsResolver = DNS_RESOLVER_TYPES[readIndex(
+                    R.string.connection_dns_resolver_type_key,
+                    R.string.connection_dns_resolver_type_default, DNS_RESOLVER_TYPE_VALUES)];
+            connectionUsePlainTextAuth = readBoolean(R.string.connection_use_plain_text_auth_key,
+                    R.bool.connection_use_plain_text_auth_default);
+            connectionAdjustPriority = readBoolean(R.string.connection_adjust_priority_key,
+                    R.bool.connection_adjust_priority_default);
+            connectionPriorityAvailable = readInt(R.string.connection_priority_available_key,
+                    R.string.connection_priority_available_default);
+            connectionPriorityAway = readInt(R.string.connection_priority_away_key,
+                    R.string.connection_priority_away_default);
+            connectionPriorityChat = readInt(R.string.connection_priority_chat_key,
+                    R.string.connection_priority_chat_default);
+            connectionPriorityDnd = readInt(R.string.connection_priority_dnd_key,
+                    R.string.connection_priority_dnd_default);
+            connectionPriorityXa = readInt(R.string.connection_priority_xa_key,
+                    R.string.connection_priority_xa_default);
+
+            debugLog = readBoolean(R.string.debug_log_key, R.bool.debug_log_default);
+            fileLog = readBoolean(R.string.debug_file_log_key, R.bool.debug_file_log_default);
+            debugTrafficInspector = readBoolean(R.string.debug_traffic_inspector_key,
+                    R.bool.debug_traffic_inspector_default);
+            debugTrafficSampling = readInt(R.string.debug_traffic_sampling_key,
+                    R.string.debug_traffic_sampling_default);
+            showConnectionErrors = readBoolean(R.string.debug_connection_errors_key,
+                    R.bool.debug_connection_errors_default);
+            sendCrashReports = readBoolean(R.string.debug_crash_reports_key,
+                    R.bool.debug_crash_reports_default);
+            crashReportsDialogShown = readBoolean(R.string.debug_crash_reports_dialog_key, false);
+
+            interfaceTheme = INTERFACE_THEMES[readIndex(R.string.interface_theme_key,
+                    R.string.interface_theme_default, INTERFACE_THEME_VALUES)];
+            if (readIndex(R.string.interface_smiles_key, R.string.interface_smiles_default,
+                    INTERFACE_SMILES_VALUES) == 0) {
+                interfaceSmiles = Collections.unmodifiableMap(Emoticons.NONE_EMOTICONS);
+            } else {
+                interfaceSmiles = Collections.unmodifiableMap(Emoticons.ANDROID_EMOTICONS);
+            }
+
+            securityCheckCertificate = readBoolean(R.string.security_check_certificate_key,
+                    R.bool.security_check_certificate_default);
+            securityOtrMode = SECURITY_OTR_MODES[readIndex(R.string.security_otr_mode_key,
+                    R.string.security_otr_mode_default, SECURITY_OTR_MODE_VALUES)];
+            spamFilterMode = SPAM_FILTER_MODES[readIndex(R.string.spam_filter_key,
+                    R.string.spam_filter_default, SPAM_FILTER_VALUES)];
+            securityOtrHistory = readBoolean(R.string.security_otr_history_key,
+                    R.bool.security_otr_history_default);
+
+            bootCount = readInteger(R.string.boot_count_key, 0);
+            startAtBootSuggested = readBoolean(R.string.start_at_boot_suggested_key, false);
+            chatShowcaseSuggested = readBoolean(R.string.chat_showcase_suggested_key, false);
+            contactShowcaseSuggested = readBoolean(R.string.contact_showcase_suggested_key, false);
+            contactIntegrationSuggested = readBoolean(R.string.contact_integration_suggested_key,
+                    false);
+            translationSuggested = readBoolean(R.string.translation_suggested_key, false);
+            darkThemeSuggested = readBoolean(R.string.dark_theme_suggested_key, false);
+            batteryOptimizationDisableSuggested = readBoolean(
+                    R.string.battery_optimization_disable_suggested_key, false);
+
+            statusMode = readStatusMode();
+            statusText = readString(R.string.status_text_key, "");
+            lastSyncDate = readString(R.string.last_sync_date_key,
+                    Application.getInstance().getString(R.string.last_sync_date_default));
+            syncAllAccounts = readBoolean(R.string.sync_all_key, true);
+            lastOrderChangeTimestamp = readInteger(R.string.order_last_timestamp_key, 1);
+            lastPatreonLoadTimestamp = readInteger(R.string.patreon_last_load_timestamp_key, 1);
         }
+
+        private String getKey(int key) {
+            return Application.getInstance().getString(key);
+        }
+
+        /**
+         * Values of old types are replaced by defaults until migration.
+         */
+        private boolean readBoolean(int key, boolean def) {
+            try {
+                return preferences.getBoolean(getKey(key), def);
+            } catch (ClassCastException e) {
+                LogManager.w(LOG_TAG, "Unexpected type of " + getKey(key));
+                return def;
+            }
+        }
+
+        private boolean readBoolean(int key, int def) {
+            return readBoolean(key, Application.getInstance().getResources().getBoolean(def));
+        }
+
+        private int readInteger(int key, int def) {
+            try {
+                return preferences.getInt(getKey(key), def);
+            } catch (ClassCastException e) {
+                LogManager.w(LOG_TAG, "Unexpected type of " + getKey(key));
+                return def;
+            }
+        }
+
+        private String readString(int key, String def) {
+            try {
+                return preferences.getString(getKey(key), def);
+            } catch (ClassCastException e) {
+                LogManager.w(LOG_TAG, "Unexpected type of " + getKey(key));
+                return def;
+            }
+        }
+
+        /**
+         * @return integer stored as string.
+         */
+        private int readInt(int key, int def) {
+            String defaultValue = Application.getInstance().getString(def);
+            try {
+                return Integer.parseInt(readString(key, defaultValue));
+            } catch (NumberFormatException e) {
+                return Integer.parseInt(defaultValue);
+            }
+        }
+
+        /**
+         * @return index of the stored value in values or index of default value if stored
+         * value is unknown.
+         */
+        private int readIndex(int key, int def, int[] values) {
+            String value = readString(key, Application.getInstance().getString(def));
+            int index = indexOf(value, values);
+            if (index < 0) {
+                LogManager.w(LOG_TAG, "Unknown value " + value + " of " + getKey(key));
+                index = indexOf(Application.getInstance().getString(def), values);
+                if (index < 0) {
+                    throw new IllegalStateException();
+                }
+            }
+            return index;
+        }
+
+        private StatusMode readStatusMode() {
+            String value = readString(R.string.status_mode_key, StatusMode.available.name());
+            try {
+                return StatusMode.valueOf(value);
+            } catch (IllegalArgumentException e) {
+                LogManager.w(LOG_TAG, "Unknown status mode " + value);
+                return StatusMode.available;
+            }
+        }
+
     }
 
     public enum ChatsHistory {
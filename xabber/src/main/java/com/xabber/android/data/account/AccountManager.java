@@ -21,8 +21,10 @@ import android.text.TextUtils;
 
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnUnloadListener;
 import com.xabber.android.data.connection.ConnectionSettings;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.MessageDatabaseManager;
 import com.xabber.android.data.database.RealmManager;
 import com.xabber.android.data.database.realm.AccountRealm;
@@ -67,6 +69,7 @@ import org.jxmpp.util.XmppStringUtils;
 
 import java.security.KeyPair;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -88,7 +91,7 @@ import io.realm.RealmResults;
  *
  * @author alexander.ivanov
  */
-public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeListener {
+public class AccountManager implements OnLoadDependentListener, OnUnloadListener, OnWipeListener {
 
     private static final String LOG_TAG = AccountManager.class.getSimpleName();
 
@@ -138,6 +141,11 @@ public class AccountManager implements OnLoadListener, OnUnloadListener, OnWipeL
         xa = false;
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         final Collection<SavedStatus> savedStatuses = loadSavedStatuses();
@@ -7,6 +7,7 @@ import android.util.Patterns;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.log.TrafficInspector;
 
 import org.apache.http.conn.ssl.AllowAllHostnameVerifier;
 import org.jivesoftware.smack.proxy.ProxyInfo;
@@ -41,7 +42,7 @@ class ConnectionBuilder {
             builder.setPort(connectionSettings.getPort());
         }
 
-        builder.setDebuggerEnabled(true);
+        builder.setDebuggerEnabled(TrafficInspector.getInstance().isEnabled());
         builder.setSecurityMode(connectionSettings.getTlsMode().getSecurityMode());
         builder.setCompressionEnabled(connectionSettings.useCompression());
         builder.setSendPresence(false);
@@ -21,9 +21,9 @@ import com.xabber.android.data.Application;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.account.AccountManager;
-import com.xabber.android.data.connection.listeners.OnPacketListener;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.roster.AccountRosterListener;
+import com.xabber.android.data.roster.RealmRosterStore;
 
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.packet.Stanza;
@@ -76,6 +76,18 @@ public abstract class ConnectionItem {
 
     private ConnectionThread connectionThread;
 
+    /**
+     * Whether connection was lost while stream could be resumed.
+     * Chats are not notified about disconnection until resumption fails.
+     */
+    private volatile boolean streamSuspended;
+
+    /**
+     * Processes incoming stanzas of the account.
+     */
+    @NonNull
+    private final StanzaDispatcher stanzaDispatcher;
+
     public ConnectionItem(boolean custom,
                           String host, int port, DomainBareJid serverName, Localpart userName,
                           Resourcepart resource, boolean storePassword, String password, String token,
@@ -86,6 +98,7 @@ public abstract class ConnectionItem {
         this.logTag = getClass().getSimpleName() + ": " + account;
         rosterListener = new AccountRosterListener(getAccount());
         connectionListener = new com.xabber.android.data.connection.ConnectionListener(this);
+        stanzaDispatcher = new StanzaDispatcher(this, "Stanza dispatcher for " + account);
 
         connectionSettings = new ConnectionSettings(userName,
                 serverName, resource, custom, host, port, password, token,
@@ -155,7 +168,10 @@ public abstract class ConnectionItem {
         // enable Stream Management support. SMACK will only enable SM if supported by the server,
         // so no additional checks are required.
         connection.setUseStreamManagement(true);
-        connection.setUseStreamManagementResumption(false);
+        // Resumption state (stream id, handled stanzas counters and unacknowledged stanzas) is kept
+        // by connection object, which is reused by each new connection thread.
+        // If server refuses to resume stream, SMACK binds new resource and resends unacknowledged stanzas.
+        connection.setUseStreamManagementResumption(true);
 
         // by default Smack disconnects in case of parsing errors
         connection.setParsingExceptionCallback(new ExceptionLoggingCallback());
@@ -168,8 +184,10 @@ public abstract class ConnectionItem {
         roster.addRosterLoadedListener(rosterListener);
         roster.setSubscriptionMode(Roster.SubscriptionMode.manual);
         roster.setRosterLoadedAtLogin(true);
+        roster.setRosterStore(new RealmRosterStore(getAccount()));
 
-        connection.addAsyncStanzaListener(everyStanzaListener, ForEveryStanza.INSTANCE);
+        // sync listener keeps order of stanzas, it only passes them to dispatcher
+        connection.addSyncStanzaListener(everyStanzaListener, ForEveryStanza.INSTANCE);
         connection.addConnectionListener(connectionListener);
 
         PingManager.getInstanceFor(connection).registerPingFailedListener(pingFailedListener);
@@ -203,6 +221,34 @@ public abstract class ConnectionItem {
         thread.start();
     }
 
+    /**
+     * Closes socket without closing the stream, so it can be resumed by the next connection thread.
+     */
+    private void suspendStream() {
+        Thread thread = new Thread("Suspension thread for " + connection) {
+            @Override
+            public void run() {
+                LogManager.i(logTag, "suspend stream");
+
+                streamSuspended = true;
+                connection.instantShutdown();
+                updateState(ConnectionState.waiting);
+            }
+
+        };
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    boolean isStreamSuspended() {
+        return streamSuspended;
+    }
+
+    void setStreamSuspended(boolean streamSuspended) {
+        this.streamSuspended = streamSuspended;
+    }
+
     public void recreateConnection() {
         LogManager.i(logTag, "recreateConnection");
 
@@ -259,7 +305,7 @@ public abstract class ConnectionItem {
         PingManager.getInstanceFor(connection).unregisterPingFailedListener(pingFailedListener);
 
         connection.removeConnectionListener(connectionListener);
-        connection.removeAsyncStanzaListener(everyStanzaListener);
+        connection.removeSyncStanzaListener(everyStanzaListener);
         final Roster roster = Roster.getInstanceFor(connection);
         roster.removeRosterLoadedListener(rosterListener);
         roster.removeRosterListener(rosterListener);
@@ -294,14 +340,7 @@ public abstract class ConnectionItem {
     private StanzaListener everyStanzaListener = new StanzaListener() {
         @Override
         public void processStanza(final Stanza stanza) throws SmackException.NotConnectedException {
-            Application.getInstance().runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    for (OnPacketListener listener : Application.getInstance().getManagers(OnPacketListener.class)) {
-                        listener.onStanza(ConnectionItem.this, stanza);
-                    }
-                }
-            });
+            stanzaDispatcher.dispatch(stanza);
         }
     };
 
@@ -309,8 +348,12 @@ public abstract class ConnectionItem {
         @Override
         public void pingFailed() {
             LogManager.i(this, "pingFailed for " + getAccount());
-            updateState(ConnectionState.offline);
-            disconnect();
+            if (connection.isSmResumptionPossible()) {
+                suspendStream();
+            } else {
+                updateState(ConnectionState.offline);
+                disconnect();
+            }
         }
     };
 
@@ -60,6 +60,35 @@ class ConnectionListener implements org.jivesoftware.smack.ConnectionListener {
 
         connectionItem.updateState(ConnectionState.connected);
 
+        final boolean streamSuspended = connectionItem.isStreamSuspended();
+        connectionItem.setStreamSuspended(false);
+
+        if (resumed) {
+            // server kept roster, carbons and rooms of resumed stream,
+            // only status could be changed while stream was suspended
+            PresenceManager.getInstance().onAuthorized(connectionItem);
+            // uploads interrupted while stream was suspended must be requested again
+            HttpFileUploadManager.getInstance().onResumed(connectionItem);
+
+            Application.getInstance().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    AccountManager.getInstance().removeAccountError(connectionItem.getAccount());
+                }
+            });
+            return;
+        }
+
+        if (streamSuspended) {
+            // stream resumption failed, rooms must be joined again
+            Application.getInstance().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    MessageManager.getInstance().onDisconnect(connectionItem);
+                }
+            });
+        }
+
         // just to see the order of call
 
         CarbonManager.getInstance().onAuthorized(connectionItem);
@@ -100,6 +129,9 @@ class ConnectionListener implements org.jivesoftware.smack.ConnectionListener {
     public void connectionClosedOnError(final Exception e) {
         LogManager.i(getLogTag(), "connectionClosedOnError " + e + " " + e.getMessage());
 
+        final boolean resumable = connectionItem.getConnection().isDisconnectedButSmResumptionPossible();
+        connectionItem.setStreamSuspended(resumable);
+
         Application.getInstance().runOnUiThread(new Runnable() {
             @Override
             public void run() {
@@ -118,8 +150,11 @@ class ConnectionListener implements org.jivesoftware.smack.ConnectionListener {
                 /*
                   Send to chats action of disconnect
                   Then RoomChat set state in "waiting" which need for rejoin to room
+                  Rooms are kept if stream can be resumed
                  */
-                MessageManager.getInstance().onDisconnect(connectionItem);
+                if (!resumable) {
+                    MessageManager.getInstance().onDisconnect(connectionItem);
+                }
             }
         });
     }
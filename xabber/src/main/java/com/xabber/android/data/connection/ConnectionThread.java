@@ -132,6 +132,9 @@ class ConnectionThread {
             }
 
             if (!connection.isAuthenticated()) {
+                if (connection.isSmResumptionPossible()) {
+                    LogManager.i(this, "Trying to resume stream...");
+                }
                 connection.login();
             } else {
                 LogManager.i(this, "Already authenticated");
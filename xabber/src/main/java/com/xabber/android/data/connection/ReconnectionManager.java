@@ -23,6 +23,12 @@ public class ReconnectionManager implements OnConnectedListener,
      * fails. Last value will be used if there is no more values in array.
      */
     private final static int RECONNECT_AFTER[] = new int[]{0, 2, 10, 30, 60};
+
+    /**
+     * Maximum interval in seconds between attempts to resume suspended stream,
+     * because server keeps it only for limited time.
+     */
+    private final static int RESUME_AFTER_MAX = 10;
     private static final String LOG_TAG = ReconnectionManager.class.getSimpleName();
 
     /**
@@ -72,7 +78,10 @@ public class ReconnectionManager implements OnConnectedListener,
             return;
         }
 
-        if (!isTimeToReconnect(reconnectionInfo)) {
+        // Smack tries to resume stream first and falls back to full login
+        boolean resumable = accountItem.getConnection().isDisconnectedButSmResumptionPossible();
+
+        if (!isTimeToReconnect(reconnectionInfo, resumable)) {
             LogManager.i(LOG_TAG, accountItem.getAccount()
                     + " not authenticated. State: " + accountItem.getState()
                     + " waiting... seconds from last reconnection "
@@ -84,8 +93,8 @@ public class ReconnectionManager implements OnConnectedListener,
         if (newThreadStarted) {
             reconnectionInfo.nextAttempt();
             LogManager.i(LOG_TAG, accountItem.getAccount()
-                    + " not authenticated. new thread started. next attempt "
-                    + reconnectionInfo.getReconnectAttempts());
+                    + " not authenticated. new thread started. resumable " + resumable
+                    + ". next attempt " + reconnectionInfo.getReconnectAttempts());
         } else {
             reconnectionInfo.resetReconnectionTime();
             LogManager.i(LOG_TAG, accountItem.getAccount()
@@ -99,13 +108,16 @@ public class ReconnectionManager implements OnConnectedListener,
                 && !accountItem.getConnection().isAuthenticated();
     }
 
-    private boolean isTimeToReconnect(ReconnectionInfo reconnectionInfo) {
+    private boolean isTimeToReconnect(ReconnectionInfo reconnectionInfo, boolean resumable) {
         int reconnectAfter;
         if (reconnectionInfo.getReconnectAttempts() < RECONNECT_AFTER.length) {
             reconnectAfter = RECONNECT_AFTER[reconnectionInfo.getReconnectAttempts()];
         } else {
             reconnectAfter = RECONNECT_AFTER[RECONNECT_AFTER.length - 1];
         }
+        if (resumable) {
+            reconnectAfter = Math.min(reconnectAfter, RESUME_AFTER_MAX);
+        }
 
         return getTimeSinceLastReconnectionSeconds(reconnectionInfo) >= reconnectAfter;
     }
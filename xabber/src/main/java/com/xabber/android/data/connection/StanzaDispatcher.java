@@ -0,0 +1,181 @@
+package com.xabber.android.data.connection;
+
+import android.support.annotation.NonNull;
+
+import com.xabber.android.data.Application;
+import com.xabber.android.data.connection.listeners.OnBackgroundPacketListener;
+import com.xabber.android.data.connection.listeners.OnPacketListener;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.message.MessageManager;
+
+import org.jivesoftware.smack.packet.Presence;
+import org.jivesoftware.smack.packet.Stanza;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serial stanza processing pipeline of the single account.
+ * <p/>
+ * Stanzas are processed by {@link OnBackgroundPacketListener}s on the dedicated thread
+ * and then passed to the other {@link OnPacketListener}s on the UI thread,
+ * both in order of receiving. Presences not related to any opened chat
+ * don't reach the UI thread at all.
+ */
+class StanzaDispatcher {
+
+    /**
+     * Max number of stanzas waiting for processing.
+     * Connection reader will wait when queue is full.
+     */
+    private static final int QUEUE_CAPACITY = 512;
+
+    /**
+     * Max number of stanzas to be processed by single UI thread runnable.
+     */
+    private static final int UI_BATCH_SIZE = 32;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    @NonNull
+    private final ConnectionItem connectionItem;
+
+    @NonNull
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Stanzas waiting for UI thread listeners.
+     */
+    private final Queue<Stanza> uiQueue;
+
+    /**
+     * Whether {@link #uiRunnable} was posted and not finished yet.
+     */
+    private boolean uiRunnablePosted;
+
+    StanzaDispatcher(@NonNull ConnectionItem connectionItem, final String threadName) {
+        this.connectionItem = connectionItem;
+        uiQueue = new ArrayDeque<>();
+
+        executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                        // block connection reader until there is free space in queue
+                        try {
+                            executor.getQueue().put(runnable);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException(e);
+                        }
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Enqueue stanza for processing.
+     * Blocks if there are too many stanzas waiting for processing.
+     */
+    void dispatch(final Stanza stanza) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                processInBackground(stanza);
+            }
+        });
+    }
+
+    private void processInBackground(Stanza stanza) {
+        for (OnBackgroundPacketListener listener
+                : Application.getInstance().getManagers(OnBackgroundPacketListener.class)) {
+            try {
+                listener.onStanza(connectionItem, stanza);
+            } catch (Exception e) {
+                LogManager.exception(listener, e);
+            }
+        }
+
+        if (!isRequiredOnUiThread(stanza)) {
+            return;
+        }
+
+        synchronized (uiQueue) {
+            uiQueue.add(stanza);
+            if (uiRunnablePosted) {
+                return;
+            }
+            uiRunnablePosted = true;
+        }
+        Application.getInstance().runOnUiThread(uiRunnable);
+    }
+
+    /**
+     * Of UI thread listeners only {@link MessageManager} handles presences,
+     * and only for users with registered chat. The rest of them handle messages only.
+     */
+    private boolean isRequiredOnUiThread(Stanza stanza) {
+        if (!(stanza instanceof Presence)) {
+            return true;
+        }
+        if (stanza.getFrom() == null) {
+            return false;
+        }
+        UserJid user;
+        try {
+            user = UserJid.from(stanza.getFrom());
+        } catch (UserJid.UserJidCreateException e) {
+            return false;
+        }
+        return MessageManager.getInstance().getChat(connectionItem.getAccount(), user) != null;
+    }
+
+    private final Runnable uiRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Collection<Stanza> stanzas = new ArrayList<>(UI_BATCH_SIZE);
+            synchronized (uiQueue) {
+                while (stanzas.size() < UI_BATCH_SIZE && !uiQueue.isEmpty()) {
+                    stanzas.add(uiQueue.poll());
+                }
+            }
+
+            for (Stanza stanza : stanzas) {
+                for (OnPacketListener listener
+                        : Application.getInstance().getManagers(OnPacketListener.class)) {
+                    if (!(listener instanceof OnBackgroundPacketListener)) {
+                        listener.onStanza(connectionItem, stanza);
+                    }
+                }
+            }
+
+            synchronized (uiQueue) {
+                if (uiQueue.isEmpty()) {
+                    uiRunnablePosted = false;
+                    return;
+                }
+            }
+            // let UI thread handle other events before next batch
+            Application.getInstance().runOnUiThread(this);
+        }
+    };
+
+}
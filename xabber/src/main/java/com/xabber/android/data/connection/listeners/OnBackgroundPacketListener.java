@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) 2013, Redsolution LTD. All rights reserved.
+ *
+ * This file is part of Xabber project; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License, Version 3.
+ *
+ * Xabber is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * along with this program. If not, see http://www.gnu.org/licenses/.
+ */
+package com.xabber.android.data.connection.listeners;
+
+/**
+ * Listener for incoming packet that does not need the UI thread.
+ * <p/>
+ * {@link #onStanza} is called from the stanza processing thread of the account,
+ * in the same order as stanzas were received. Implementations must not touch
+ * UI thread Realm instances or views, and should post UI notifications
+ * to the UI thread by themselves.
+ */
+public interface OnBackgroundPacketListener extends OnPacketListener {
+
+}
@@ -28,6 +28,8 @@ public interface OnPacketListener extends BaseManagerInterface {
 
     /**
      * Process packet from connection.
+     * <p/>
+     * Called from the UI thread unless listener implements {@link OnBackgroundPacketListener}.
      */
     void onStanza(ConnectionItem connection, Stanza packet);
 
@@ -5,6 +5,7 @@ import android.database.Cursor;
 import android.os.Looper;
 
 import com.xabber.android.data.Application;
+import com.xabber.android.data.database.messagerealm.AccountSyncInfo;
 import com.xabber.android.data.database.messagerealm.MessageItem;
 import com.xabber.android.data.database.messagerealm.SyncInfo;
 import com.xabber.android.data.database.sqlite.MessageTable;
@@ -29,7 +30,7 @@ import io.realm.annotations.RealmModule;
 
 public class MessageDatabaseManager {
     private static final String REALM_MESSAGE_DATABASE_NAME = "xabber.realm";
-    static final int REALM_MESSAGE_DATABASE_VERSION = 15;
+    static final int REALM_MESSAGE_DATABASE_VERSION = 17;
     private final RealmConfiguration realmConfiguration;
 
     private static MessageDatabaseManager instance;
@@ -126,13 +127,18 @@ public class MessageDatabaseManager {
                         .equalTo(SyncInfo.FIELD_ACCOUNT, account.toString())
                         .findAll()
                         .deleteAllFromRealm();
+
+                realm.where(AccountSyncInfo.class)
+                        .equalTo(AccountSyncInfo.FIELD_ACCOUNT, account.toString())
+                        .findAll()
+                        .deleteAllFromRealm();
             }
         });
         realm.close();
     }
 
 
-    @RealmModule(classes = {MessageItem.class, SyncInfo.class})
+    @RealmModule(classes = {MessageItem.class, SyncInfo.class, AccountSyncInfo.class})
     static class MessageRealmDatabaseModule {
     }
 
@@ -260,6 +266,20 @@ public class MessageDatabaseManager {
                             oldVersion++;
                         }
 
+                        if (oldVersion == 15) {
+                            schema.get(MessageItem.class.getSimpleName())
+                                    .addIndex(MessageItem.Fields.STANZA_ID);
+                            oldVersion++;
+                        }
+
+                        if (oldVersion == 16) {
+                            schema.create(AccountSyncInfo.class.getSimpleName())
+                                    .addField(AccountSyncInfo.FIELD_ACCOUNT, String.class,
+                                            FieldAttribute.PRIMARY_KEY, FieldAttribute.REQUIRED)
+                                    .addField(AccountSyncInfo.FIELD_LAST_MESSAGE_MAM_ID, String.class);
+                            oldVersion++;
+                        }
+
                     }
                 })
                 .build();
@@ -11,6 +11,8 @@ import com.xabber.android.data.database.realm.EmailRealm;
 import com.xabber.android.data.database.realm.NotificationStateRealm;
 import com.xabber.android.data.database.realm.PatreonGoalRealm;
 import com.xabber.android.data.database.realm.PatreonRealm;
+import com.xabber.android.data.database.realm.RosterItemRealm;
+import com.xabber.android.data.database.realm.RosterVersionRealm;
 import com.xabber.android.data.database.realm.SocialBindingRealm;
 import com.xabber.android.data.database.realm.SyncStateRealm;
 import com.xabber.android.data.database.realm.XMPPUserRealm;
@@ -29,7 +31,7 @@ import io.realm.annotations.RealmModule;
 
 public class RealmManager {
     private static final String REALM_DATABASE_NAME = "realm_database.realm";
-    private static final int REALM_DATABASE_VERSION = 14;
+    private static final int REALM_DATABASE_VERSION = 15;
     private static final String LOG_TAG = RealmManager.class.getSimpleName();
     private final RealmConfiguration realmConfiguration;
 
@@ -62,7 +64,8 @@ public class RealmManager {
 
     @RealmModule(classes = {DiscoveryInfoCache.class, AccountRealm.class, XabberAccountRealm.class,
             XMPPUserRealm.class, EmailRealm.class, SocialBindingRealm.class, SyncStateRealm.class,
-            PatreonGoalRealm.class, PatreonRealm.class, ChatDataRealm.class, NotificationStateRealm.class})
+            PatreonGoalRealm.class, PatreonRealm.class, ChatDataRealm.class, NotificationStateRealm.class,
+            RosterItemRealm.class, RosterVersionRealm.class})
     static class RealmDatabaseModule {
     }
 
@@ -213,6 +216,24 @@ public class RealmManager {
 
                             oldVersion++;
                         }
+
+                        if (oldVersion == 14) {
+                            schema.create(RosterItemRealm.class.getSimpleName())
+                                    .addField("id", String.class, FieldAttribute.PRIMARY_KEY, FieldAttribute.REQUIRED)
+                                    .addField("account", String.class, FieldAttribute.INDEXED, FieldAttribute.REQUIRED)
+                                    .addField("jid", String.class, FieldAttribute.REQUIRED)
+                                    .addField("name", String.class)
+                                    .addField("itemType", String.class)
+                                    .addField("subscriptionPending", boolean.class)
+                                    .addField("approved", boolean.class)
+                                    .addField("groups", String.class);
+
+                            schema.create(RosterVersionRealm.class.getSimpleName())
+                                    .addField("account", String.class, FieldAttribute.PRIMARY_KEY, FieldAttribute.REQUIRED)
+                                    .addField("version", String.class);
+
+                            oldVersion++;
+                        }
                     }
                 })
                 .modules(new RealmDatabaseModule())
@@ -0,0 +1,38 @@
+package com.xabber.android.data.database.messagerealm;
+
+import com.xabber.android.data.entity.AccountJid;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+import io.realm.annotations.Required;
+
+/**
+ * Position of the account-wide message archive synchronization.
+ */
+public class AccountSyncInfo extends RealmObject {
+
+    public static final String FIELD_ACCOUNT = "account";
+    public static final String FIELD_LAST_MESSAGE_MAM_ID = "lastMessageMamId";
+
+    @PrimaryKey
+    @Required
+    private String account;
+
+    private String lastMessageMamId;
+
+    public String getAccount() {
+        return account;
+    }
+
+    public void setAccount(AccountJid account) {
+        this.account = account.toString();
+    }
+
+    public String getLastMessageMamId() {
+        return lastMessageMamId;
+    }
+
+    public void setLastMessageMamId(String lastMessageMamId) {
+        this.lastMessageMamId = lastMessageMamId;
+    }
+}
@@ -136,6 +136,7 @@ public class MessageItem extends RealmObject {
     /**
      * Outgoing packet id - usual message stanza (packet) id
      */
+    @Index
     private String stanzaId;
 
     /**
@@ -31,6 +31,10 @@ public class DiscoveryInfoCache extends RealmObject {
         this.discoveryInfoXml = discoveryInfo.toXML().toString();
     }
 
+    public String getNodeVer() {
+        return nodeVer;
+    }
+
     public DiscoverInfo getDiscoveryInfo() {
         try {
             return PacketParserUtils.parseStanza(discoveryInfoXml);
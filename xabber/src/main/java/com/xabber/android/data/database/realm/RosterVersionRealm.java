@@ -0,0 +1,40 @@
+package com.xabber.android.data.database.realm;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+import io.realm.annotations.Required;
+
+/**
+ * Roster version (XEP-0237) of the persisted roster of the account.
+ */
+public class RosterVersionRealm extends RealmObject {
+
+    public static class Fields {
+        public static final String ACCOUNT = "account";
+    }
+
+    @PrimaryKey
+    @Required
+    private String account;
+
+    private String version;
+
+    public RosterVersionRealm() {
+    }
+
+    public RosterVersionRealm(String account) {
+        this.account = account;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+}
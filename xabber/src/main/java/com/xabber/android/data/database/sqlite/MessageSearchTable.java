@@ -0,0 +1,261 @@
+package com.xabber.android.data.database.sqlite;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.xabber.android.data.database.DatabaseManager;
+import com.xabber.android.data.entity.AccountJid;
+
+import java.util.Collection;
+
+/**
+ * Full text index of message texts.
+ * <p/>
+ * Messages are stored in realm, this table keeps only normalized text in FTS4 table
+ * and message identity in regular table joined by docid.
+ */
+public class MessageSearchTable extends AbstractAccountTable {
+
+    private static final class Fields implements AbstractAccountTable.Fields {
+
+        private Fields() {
+        }
+
+        public static final String UNIQUE_ID = "unique_id";
+        public static final String USER = "user";
+        public static final String TIMESTAMP = "timestamp";
+
+        /**
+         * Normalized text in {@link #CONTENT_NAME} table.
+         */
+        public static final String CONTENT = "content";
+
+    }
+
+    private static final String NAME = "message_search_items";
+    private static final String CONTENT_NAME = "message_search";
+    private static final String[] PROJECTION = new String[]{Fields.UNIQUE_ID,
+            Fields.ACCOUNT, Fields.USER, Fields.TIMESTAMP};
+
+    /**
+     * Indexed message.
+     */
+    public static class Entry {
+        final String uniqueId;
+        final String account;
+        final String user;
+        final long timestamp;
+        final String content;
+
+        /**
+         * @param content normalized text.
+         */
+        public Entry(String uniqueId, String account, String user, long timestamp, String content) {
+            this.uniqueId = uniqueId;
+            this.account = account;
+            this.user = user;
+            this.timestamp = timestamp;
+            this.content = content;
+        }
+    }
+
+    private final DatabaseManager databaseManager;
+    private final Object writeLock;
+    private SQLiteStatement removeContentStatement;
+    private SQLiteStatement removeItemStatement;
+    private SQLiteStatement writeItemStatement;
+    private SQLiteStatement writeContentStatement;
+
+    private static MessageSearchTable instance;
+
+    public static MessageSearchTable getInstance() {
+        if (instance == null) {
+            instance = new MessageSearchTable(DatabaseManager.getInstance());
+        }
+
+        return instance;
+    }
+
+    private MessageSearchTable(DatabaseManager databaseManager) {
+        this.databaseManager = databaseManager;
+        writeLock = new Object();
+    }
+
+    @Override
+    public void create(SQLiteDatabase db) {
+        String sql = "CREATE TABLE " + NAME + " (" + Fields._ID
+                + " INTEGER PRIMARY KEY," + Fields.UNIQUE_ID + " TEXT UNIQUE,"
+                + Fields.ACCOUNT + " TEXT," + Fields.USER + " TEXT,"
+                + Fields.TIMESTAMP + " INTEGER);";
+        DatabaseManager.execSQL(db, sql);
+        sql = "CREATE INDEX " + NAME + "_list ON " + NAME + " ("
+                + Fields.ACCOUNT + ", " + Fields.USER + ");";
+        DatabaseManager.execSQL(db, sql);
+        sql = "CREATE VIRTUAL TABLE " + CONTENT_NAME + " USING fts4(" + Fields.CONTENT + ");";
+        DatabaseManager.execSQL(db, sql);
+    }
+
+    @Override
+    public void migrate(SQLiteDatabase db, int toVersion) {
+        super.migrate(db, toVersion);
+        switch (toVersion) {
+            case 71:
+                create(db);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Adds or replaces entries in single transaction.
+     */
+    public void write(Collection<Entry> entries) {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            if (writeItemStatement == null) {
+                writeItemStatement = db.compileStatement("INSERT INTO " + NAME + " ("
+                        + Fields.UNIQUE_ID + ", " + Fields.ACCOUNT + ", " + Fields.USER + ", "
+                        + Fields.TIMESTAMP + ") VALUES (?, ?, ?, ?);");
+                writeContentStatement = db.compileStatement("INSERT INTO " + CONTENT_NAME
+                        + " (docid, " + Fields.CONTENT + ") VALUES (?, ?);");
+            }
+            db.beginTransaction();
+            try {
+                for (Entry entry : entries) {
+                    bindAndRemove(entry.uniqueId);
+                    writeItemStatement.bindString(1, entry.uniqueId);
+                    writeItemStatement.bindString(2, entry.account);
+                    writeItemStatement.bindString(3, entry.user);
+                    writeItemStatement.bindLong(4, entry.timestamp);
+                    long id = writeItemStatement.executeInsert();
+                    writeContentStatement.bindLong(1, id);
+                    writeContentStatement.bindString(2, entry.content);
+                    writeContentStatement.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Removes entries with specified unique ids in single transaction.
+     */
+    public void remove(Collection<String> uniqueIds) {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (String uniqueId : uniqueIds) {
+                    bindAndRemove(uniqueId);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    private void bindAndRemove(String uniqueId) {
+        if (removeItemStatement == null) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            removeContentStatement = db.compileStatement("DELETE FROM " + CONTENT_NAME
+                    + " WHERE docid = (SELECT " + Fields._ID + " FROM " + NAME
+                    + " WHERE " + Fields.UNIQUE_ID + " = ?);");
+            removeItemStatement = db.compileStatement("DELETE FROM " + NAME
+                    + " WHERE " + Fields.UNIQUE_ID + " = ?;");
+        }
+        removeContentStatement.bindString(1, uniqueId);
+        removeContentStatement.executeUpdateDelete();
+        removeItemStatement.bindString(1, uniqueId);
+        removeItemStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Removes entries of the chat.
+     */
+    public void removeChat(String account, String user) {
+        remove(Fields.ACCOUNT + " = ? AND " + Fields.USER + " = ?", new String[]{account, user});
+    }
+
+    @Override
+    public void removeAccount(AccountJid account) {
+        remove(Fields.ACCOUNT + " = ?", new String[]{account.toString()});
+    }
+
+    private void remove(String where, String[] args) {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(CONTENT_NAME, "docid IN (SELECT " + Fields._ID + " FROM " + NAME
+                        + " WHERE " + where + ")", args);
+                db.delete(NAME, where, args);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(CONTENT_NAME, null, null);
+                db.delete(NAME, null, null);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        SQLiteDatabase db = databaseManager.getReadableDatabase();
+        return DatabaseUtils.queryNumEntries(db, NAME) == 0;
+    }
+
+    /**
+     * @param match FTS query over normalized text.
+     * @return entries matching the query, the most recent first.
+     */
+    public Cursor search(String match, int offset, int limit) {
+        SQLiteDatabase db = databaseManager.getReadableDatabase();
+        return db.rawQuery("SELECT item." + Fields.UNIQUE_ID + ", item." + Fields.ACCOUNT
+                + ", item." + Fields.USER + ", item." + Fields.TIMESTAMP
+                + " FROM " + CONTENT_NAME + " JOIN " + NAME + " item ON item." + Fields._ID
+                + " = " + CONTENT_NAME + ".docid WHERE " + CONTENT_NAME + " MATCH ?"
+                + " ORDER BY item." + Fields.TIMESTAMP + " DESC LIMIT " + limit
+                + " OFFSET " + offset, new String[]{match});
+    }
+
+    @Override
+    protected String getTableName() {
+        return NAME;
+    }
+
+    @Override
+    protected String[] getProjection() {
+        return PROJECTION;
+    }
+
+    public static String getUniqueId(Cursor cursor) {
+        return cursor.getString(cursor.getColumnIndex(Fields.UNIQUE_ID));
+    }
+
+    public static String getUser(Cursor cursor) {
+        return cursor.getString(cursor.getColumnIndex(Fields.USER));
+    }
+
+    public static long getTimestamp(Cursor cursor) {
+        return cursor.getLong(cursor.getColumnIndex(Fields.TIMESTAMP));
+    }
+
+}
@@ -22,6 +22,8 @@ import android.provider.BaseColumns;
 import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.roster.StructuredName;
 
+import java.util.Map;
+
 /**
  * Storage with useful vcard fields.
  *
@@ -109,24 +111,46 @@ public class VCardTable extends AbstractTable {
 
     public void write(String bareAddress, StructuredName name) {
         synchronized (writeLock) {
-            if (writeStatement == null) {
-                SQLiteDatabase db = databaseManager.getWritableDatabase();
-                writeStatement = db.compileStatement("INSERT OR REPLACE INTO "
-                        + NAME + " (" + Fields.USER + ", " + Fields.NICK_NAME
-                        + ", " + Fields.FORMATTED_NAME + ", "
-                        + Fields.FIRST_NAME + ", " + Fields.MIDDLE_NAME + ", "
-                        + Fields.LAST_NAME + ") VALUES (?, ?, ?, ?, ?, ?);");
+            bindAndExecute(bareAddress, name);
+        }
+    }
+
+    /**
+     * Writes names of several users in single transaction.
+     */
+    public void write(Map<String, StructuredName> names) {
+        synchronized (writeLock) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (Map.Entry<String, StructuredName> entry : names.entrySet()) {
+                    bindAndExecute(entry.getKey(), entry.getValue());
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
-            writeStatement.bindString(1, bareAddress);
-            writeStatement.bindString(2, name.getNickName());
-            writeStatement.bindString(3, name.getFormattedName());
-            writeStatement.bindString(4, name.getFirstName());
-            writeStatement.bindString(5, name.getMiddleName());
-            writeStatement.bindString(6, name.getLastName());
-            writeStatement.execute();
         }
     }
 
+    private void bindAndExecute(String bareAddress, StructuredName name) {
+        if (writeStatement == null) {
+            SQLiteDatabase db = databaseManager.getWritableDatabase();
+            writeStatement = db.compileStatement("INSERT OR REPLACE INTO "
+                    + NAME + " (" + Fields.USER + ", " + Fields.NICK_NAME
+                    + ", " + Fields.FORMATTED_NAME + ", "
+                    + Fields.FIRST_NAME + ", " + Fields.MIDDLE_NAME + ", "
+                    + Fields.LAST_NAME + ") VALUES (?, ?, ?, ?, ?, ?);");
+        }
+        writeStatement.bindString(1, bareAddress);
+        writeStatement.bindString(2, name.getNickName());
+        writeStatement.bindString(3, name.getFormattedName());
+        writeStatement.bindString(4, name.getFirstName());
+        writeStatement.bindString(5, name.getMiddleName());
+        writeStatement.bindString(6, name.getLastName());
+        writeStatement.execute();
+    }
+
     @Override
     protected String getTableName() {
         return NAME;
@@ -15,17 +15,18 @@ import org.jxmpp.jid.parts.Resourcepart;
 import org.jxmpp.stringprep.XmppStringprepException;
 
 import java.io.Serializable;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class AccountJid implements Comparable<AccountJid>, Parcelable, Serializable {
     private static final String LOG_TAG = AccountJid.class.getSimpleName();
 
     private final @NonNull FullJid fullJid;
+    private final @NonNull String string;
+    private final int hash;
 
-    private static int counter = 0;
     private int order = 0;
-    private static Map<FullJid, AccountJid> instances = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<FullJid, AccountJid> instances = new ConcurrentHashMap<>();
 
 
     public static AccountJid from(Localpart localpart, DomainBareJid domainBareJid, Resourcepart resource) {
@@ -38,18 +39,18 @@ public class AccountJid implements Comparable<AccountJid>, Parcelable, Serializa
 
     private AccountJid(@NonNull FullJid fullJid) {
         this.fullJid = fullJid;
-        counter++;
+        string = fullJid.toString();
+        hash = fullJid.hashCode();
     }
 
     private static AccountJid getAccountJid(@NonNull FullJid fullJid) {
         AccountJid accountJid = instances.get(fullJid);
         if (accountJid != null) {
             return accountJid;
-        } else {
-            AccountJid newAccountJid = new AccountJid(fullJid);
-            instances.put(fullJid, newAccountJid);
-            return newAccountJid;
         }
+        AccountJid newAccountJid = new AccountJid(fullJid);
+        accountJid = instances.putIfAbsent(fullJid, newAccountJid);
+        return accountJid != null ? accountJid : newAccountJid;
     }
 
     public @NonNull FullJid getFullJid() {
@@ -72,6 +73,9 @@ public class AccountJid implements Comparable<AccountJid>, Parcelable, Serializa
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (o != null && o instanceof AccountJid) {
             return getFullJid().equals(((AccountJid) o).getFullJid());
         } else {
@@ -81,12 +85,12 @@ public class AccountJid implements Comparable<AccountJid>, Parcelable, Serializa
 
     @Override
     public int hashCode() {
-        return getFullJid().hashCode();
+        return hash;
     }
 
     @Override
     public String toString() {
-        return getFullJid().toString();
+        return string;
     }
 
     @Override
@@ -96,7 +100,7 @@ public class AccountJid implements Comparable<AccountJid>, Parcelable, Serializa
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeString(fullJid.toString());
+        dest.writeString(string);
     }
 
     public static final Parcelable.Creator<AccountJid> CREATOR = new Parcelable.Creator<AccountJid>() {
@@ -16,29 +16,41 @@ package com.xabber.android.data.entity;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Map of map with string value as keys for both maps.
+ * <p/>
+ * Reads don't take the lock and can be made from any thread.
+ * Modifications are serialized, so that nested map is never removed
+ * while value is being put into it. Iterators never throw
+ * {@link java.util.ConcurrentModificationException}, each nested map
+ * is iterated as it was at some moment since iterator was created.
+ * <p/>
+ * Keys must not be <code>null</code>, lookup by <code>null</code> key returns nothing.
+ * <code>null</code> values are not stored, putting <code>null</code> removes value.
  *
  * @param <T>
  * @author alexander.ivanov
  */
 public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
 
-    private final Map<String, Map<String, T>> map;
+    private final ConcurrentMap<String, ConcurrentMap<String, T>> map;
 
     public NestedMap() {
-        map = new HashMap<>();
+        map = new ConcurrentHashMap<>();
     }
 
     /**
      * @return <code>null</code> if there is no such first or second level.
      */
     public T get(String first, String second) {
+        if (first == null || second == null)
+            return null;
         Map<String, T> nested = map.get(first);
         if (nested == null)
             return null;
@@ -49,9 +61,13 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
      * Puts value. Nested map will be created if necessary.
      */
     synchronized public void put(String first, String second, T value) {
-        Map<String, T> nested = map.get(first);
+        if (value == null) {
+            remove(first, second);
+            return;
+        }
+        ConcurrentMap<String, T> nested = map.get(first);
         if (nested == null) {
-            nested = new HashMap<>();
+            nested = new ConcurrentHashMap<>();
             map.put(first, nested);
         }
         nested.put(second, value);
@@ -61,6 +77,8 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
      * Removes value. Nested map will be removed if necessary.
      */
     synchronized public T remove(String first, String second) {
+        if (first == null || second == null)
+            return null;
         Map<String, T> nested = map.get(first);
         if (nested == null)
             return null;
@@ -74,7 +92,8 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
      * Removes all information associated with first level.
      */
     synchronized public void clear(String first) {
-        map.remove(first);
+        if (first != null)
+            map.remove(first);
     }
 
     /**
@@ -107,7 +126,7 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
      * @return empty map if there is no such first level.
      */
     public Map<String, T> getNested(String first) {
-        Map<String, T> nested = map.get(first);
+        Map<String, T> nested = first == null ? null : map.get(first);
         if (nested == null)
             return Collections.emptyMap();
         return Collections.unmodifiableMap(nested);
@@ -116,7 +135,8 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
     /**
      * Collection with values.
      * <p/>
-     * ONLY {@link Collection#iterator()} FUNCTION IS SUPPORTED.
+     * ONLY {@link Collection#iterator()}, {@link Collection#isEmpty()} and
+     * {@link Collection#size()} FUNCTIONS ARE SUPPORTED.
      */
     public Collection<T> values() {
         return new Values();
@@ -165,9 +185,9 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
 
     private class EntryIterator implements Iterator<Entry<T>> {
 
-        private final Iterator<java.util.Map.Entry<String, Map<String, T>>> firstIterator;
+        private final Iterator<java.util.Map.Entry<String, ConcurrentMap<String, T>>> firstIterator;
 
-        private java.util.Map.Entry<String, Map<String, T>> nested;
+        private java.util.Map.Entry<String, ConcurrentMap<String, T>> nested;
 
         private Iterator<java.util.Map.Entry<String, T>> secondIterator;
 
@@ -204,9 +224,11 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
         public void remove() throws IllegalStateException {
             if (secondIterator == null)
                 throw new IllegalStateException();
-            secondIterator.remove();
-            if (nested.getValue().isEmpty())
-                firstIterator.remove();
+            synchronized (NestedMap.this) {
+                secondIterator.remove();
+                if (nested.getValue().isEmpty())
+                    map.remove(nested.getKey(), nested.getValue());
+            }
         }
 
     }
@@ -240,7 +262,7 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
 
         @Override
         public boolean isEmpty() {
-            return iterator().hasNext();
+            return !iterator().hasNext();
         }
 
         @Override
@@ -265,7 +287,10 @@ public class NestedMap<T> implements Iterable<NestedMap.Entry<T>> {
 
         @Override
         public int size() {
-            throw new UnsupportedOperationException();
+            int size = 0;
+            for (Map<String, T> nested : map.values())
+                size += nested.size();
+            return size;
         }
 
         @Override
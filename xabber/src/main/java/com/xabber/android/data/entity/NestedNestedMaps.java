@@ -14,13 +14,14 @@
  */
 package com.xabber.android.data.entity;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Three level nested map.
  * <p/>
  * Required inner maps will be created if necessary.
+ * Inner maps are safe for concurrent reads as well as {@link NestedMap} itself.
  *
  * @param <Key>
  * @param <Value>
@@ -30,16 +31,20 @@ public class NestedNestedMaps<Key, Value> extends NestedMap<Map<Key, Value>> {
 
     public Value get(String first, String second, Key third) {
         Map<Key, Value> map = get(first, second);
-        if (map == null)
+        if (map == null || third == null)
             return null;
         return map.get(third);
     }
 
     synchronized public void put(String first, String second, Key third,
                                  Value value) {
+        if (value == null) {
+            remove(first, second, third);
+            return;
+        }
         Map<Key, Value> map = get(first, second);
         if (map == null) {
-            map = new HashMap<Key, Value>();
+            map = new ConcurrentHashMap<Key, Value>();
             put(first, second, map);
         }
         map.put(third, value);
@@ -47,7 +52,7 @@ public class NestedNestedMaps<Key, Value> extends NestedMap<Map<Key, Value>> {
 
     synchronized public Value remove(String first, String second, Key third) {
         Map<Key, Value> map = get(first, second);
-        if (map == null)
+        if (map == null || third == null)
             return null;
         Value value = map.remove(third);
         if (map.isEmpty())
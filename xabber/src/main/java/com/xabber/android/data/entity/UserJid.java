@@ -15,10 +15,18 @@ import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.stringprep.XmppStringprepException;
 
 import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Contact's jid.
+ * <p/>
+ * Instances are interned, so that wrapping the same jid returns the same instance while
+ * it is in use. String form, hash and bare jid instance are computed once per instance.
+ * Pool holds at most {@link #MAX_INSTANCES} jids, new jids are not interned when it is full.
+ */
 public class UserJid implements Comparable<UserJid>, Parcelable {
 
     private static final String LOG_TAG = UserJid.class.getSimpleName();
@@ -27,9 +35,19 @@ public class UserJid implements Comparable<UserJid>, Parcelable {
 
     }
 
+    private static final int MAX_INSTANCES = 10000;
+
+    private static final ConcurrentMap<Jid, InstanceReference> instances = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<UserJid> queue = new ReferenceQueue<>();
+
     private final @NonNull Jid jid;
-    private static int counter = 0;
-    private static Map<Jid, WeakReference<UserJid>> instances = new ConcurrentHashMap<>();
+    private final @NonNull String string;
+    private final int hash;
+
+    /**
+     * Bare form of this jid, created on demand.
+     */
+    private volatile UserJid bareUserJid;
 
 
     public static @NonNull UserJid from(@Nullable String string) throws UserJidCreateException {
@@ -56,20 +74,49 @@ public class UserJid implements Comparable<UserJid>, Parcelable {
     }
 
     private static UserJid getUserJid(@NonNull Jid jid) {
-        WeakReference<UserJid> userJidWeakReference = instances.get(jid);
+        InstanceReference reference = instances.get(jid);
+        if (reference != null) {
+            UserJid userJid = reference.get();
+            if (userJid != null) {
+                return userJid;
+            }
+        }
 
-        if (userJidWeakReference != null && userJidWeakReference.get() != null) {
-            return userJidWeakReference.get();
-        } else {
-            UserJid newUserJid = new UserJid(jid);
-            instances.put(jid, new WeakReference<>(newUserJid));
+        removeCollected();
+        UserJid newUserJid = new UserJid(jid);
+        if (instances.size() >= MAX_INSTANCES) {
             return newUserJid;
         }
+        InstanceReference newReference = new InstanceReference(newUserJid);
+        while (true) {
+            reference = instances.putIfAbsent(jid, newReference);
+            if (reference == null) {
+                return newUserJid;
+            }
+            UserJid userJid = reference.get();
+            if (userJid != null) {
+                return userJid;
+            }
+            if (instances.replace(jid, reference, newReference)) {
+                return newUserJid;
+            }
+        }
+    }
+
+    /**
+     * Removes entries of instances collected by GC.
+     */
+    private static void removeCollected() {
+        InstanceReference reference;
+        while ((reference = (InstanceReference) queue.poll()) != null) {
+            instances.remove(reference.jid, reference);
+        }
     }
 
     private UserJid(@NonNull Jid jid) {
         this.jid = jid;
-        counter++;
+        string = jid.toString();
+        hash = jid.hashCode();
     }
 
     public @NonNull Jid getJid() {
@@ -81,7 +128,16 @@ public class UserJid implements Comparable<UserJid>, Parcelable {
     }
 
     public @NonNull UserJid getBareUserJid() {
-        return getUserJid(jid.asBareJid());
+        UserJid bareUserJid = this.bareUserJid;
+        if (bareUserJid == null) {
+            if (jid.hasNoResource()) {
+                bareUserJid = this;
+            } else {
+                bareUserJid = getUserJid(jid.asBareJid());
+            }
+            this.bareUserJid = bareUserJid;
+        }
+        return bareUserJid;
     }
 
     @Override
@@ -91,6 +147,9 @@ public class UserJid implements Comparable<UserJid>, Parcelable {
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (o != null && o instanceof UserJid) {
             return getJid().equals(((UserJid) o).getJid());
         } else {
@@ -104,12 +163,12 @@ public class UserJid implements Comparable<UserJid>, Parcelable {
 
     @Override
     public int hashCode() {
-        return getJid().hashCode();
+        return hash;
     }
 
     @Override
     public String toString() {
-        return getJid().toString();
+        return string;
     }
 
     @Override
@@ -119,7 +178,7 @@ public class UserJid implements Comparable<UserJid>, Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeString(jid.toString());
+        dest.writeString(string);
     }
 
     public static final Parcelable.Creator<UserJid> CREATOR = new Parcelable.Creator<UserJid>() {
@@ -138,4 +197,13 @@ public class UserJid implements Comparable<UserJid>, Parcelable {
             return new UserJid[size];
         }
     };
+
+    private static class InstanceReference extends WeakReference<UserJid> {
+        final Jid jid;
+
+        InstanceReference(UserJid userJid) {
+            super(userJid, queue);
+            jid = userJid.jid;
+        }
+    }
 }
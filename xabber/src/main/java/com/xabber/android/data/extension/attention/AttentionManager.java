@@ -20,6 +20,7 @@ import android.net.Uri;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.account.AccountItem;
@@ -39,6 +40,8 @@ import com.xabber.android.data.notification.EntityNotificationProvider;
 import com.xabber.android.data.notification.NotificationManager;
 import com.xabber.android.data.roster.RosterManager;
 
+import java.util.Arrays;
+import java.util.Collection;
 import org.jivesoftware.smack.ConnectionCreationListener;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPConnectionRegistry;
@@ -56,7 +59,7 @@ import org.jxmpp.jid.parts.Resourcepart;
  *
  * @author alexander.ivanov
  */
-public class AttentionManager implements OnPacketListener, OnLoadListener {
+public class AttentionManager implements OnPacketListener, OnLoadDependentListener {
 
     @SuppressWarnings("WeakerAccess")
     final static Object enabledLock;
@@ -132,6 +135,11 @@ public class AttentionManager implements OnPacketListener, OnLoadListener {
         }
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(AccountManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         Application.getInstance().runOnUiThread(new Runnable() {
@@ -14,6 +14,7 @@
  */
 package com.xabber.android.data.extension.avatar;
 
+import android.content.ComponentCallbacks2;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -30,36 +31,48 @@ import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
 
 import com.amulyakhare.textdrawable.TextDrawable;
 import com.amulyakhare.textdrawable.util.ColorGenerator;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.OnLowMemoryListener;
+import com.xabber.android.data.OnTrimMemoryListener;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.connection.ConnectionItem;
-import com.xabber.android.data.connection.listeners.OnPacketListener;
+import com.xabber.android.data.connection.listeners.OnBackgroundPacketListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.sqlite.AvatarTable;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
 import com.xabber.android.data.extension.vcard.VCardManager;
 import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.roster.RosterContact;
+import com.xabber.android.data.roster.RosterManager;
 import com.xabber.android.ui.color.ColorManager;
 import com.xabber.xmpp.vcardupdate.VCardUpdate;
 
 import org.jivesoftware.smack.packet.ExtensionElement;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.packet.Stanza;
+import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.Jid;
 import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.stringprep.XmppStringprepException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides information about avatars (hashes and values). Store and retrieve
@@ -77,13 +90,29 @@ import java.util.Map;
  *
  * @author alexander.ivanov
  */
-public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPacketListener {
+public class AvatarManager implements OnLoadDependentListener, OnLowMemoryListener, OnTrimMemoryListener,
+        OnBackgroundPacketListener {
 
     /**
      * Maximum image width / height to be loaded.
      */
     private static final int MAX_SIZE = 256;
 
+    /**
+     * Part of max heap size to be used by decoded avatars.
+     */
+    private static final int BITMAP_CACHE_HEAP_FRACTION = 16;
+
+    /**
+     * Max number of cached default contact list drawables.
+     */
+    private static final int CONTACT_LIST_DRAWABLES_CACHE_SIZE = 512;
+
+    /**
+     * Delay to collect avatars decoded in background before listeners are notified.
+     */
+    private static final long DECODED_NOTIFY_DELAY_MILLIS = 200;
+
     public static final String EMPTY_HASH = "";
     private static final Bitmap EMPTY_BITMAP = Bitmap.createBitmap(1, 1, Bitmap.Config.ALPHA_8);
     private static AvatarManager instance;
@@ -93,18 +122,31 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
      * Map with hashes for specified users.
      * <p/>
      * {@link #EMPTY_HASH} is used to store <code>null</code> values.
+     * Updated from the stanza processing thread, can be read from any thread.
      */
     private final Map<Jid, String> hashes;
     /**
-     * Map with bitmaps for specified hashes.
+     * Bitmaps for specified hashes, limited by size in bytes.
+     * Bitmap is read from {@link AvatarStorage} in background on first request,
+     * default avatar is used until it is ready.
      * <p/>
      * {@link #EMPTY_BITMAP} is used to store <code>null</code> values.
      */
-    private final Map<String, Bitmap> bitmaps;
+    private final LruCache<String, Bitmap> bitmaps;
+    /**
+     * Hashes being decoded in background.
+     */
+    private final Set<String> decoding;
+    /**
+     * Hashes decoded since listeners were notified.
+     */
+    private final Set<String> decoded;
     /**
-     * Map with drawable used in contact list only for specified uses.
+     * Default avatars used in contact list for users without decoded avatar.
+     * Decoded avatars are wrapped on request and not cached here,
+     * so that their memory is limited by {@link #bitmaps} only.
      */
-    private final Map<Jid, Drawable> contactListDrawables;
+    private final LruCache<Jid, Drawable> contactListDrawables;
     /**
      * Users' default avatar set.
      */
@@ -127,9 +169,16 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
         userAvatarSet = new BaseAvatarSet(application, R.array.default_avatars_icons, R.array.default_avatars_colors);
         roomAvatarSet = new BaseAvatarSet(application, R.array.muc_avatars, R.array.default_avatars_colors);
 
-        hashes = new HashMap<>();
-        bitmaps = new HashMap<>();
-        contactListDrawables = new HashMap<>();
+        hashes = new ConcurrentHashMap<>();
+        bitmaps = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / BITMAP_CACHE_HEAP_FRACTION)) {
+            @Override
+            protected int sizeOf(String hash, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        contactListDrawables = new LruCache<>(CONTACT_LIST_DRAWABLES_CACHE_SIZE);
+        decoding = new HashSet<>();
+        decoded = new HashSet<>();
     }
 
     /**
@@ -204,10 +253,14 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
         return output;
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance(), AvatarStorage.getInstance());
+    }
+
     @Override
     public void onLoad() {
         final Map<Jid, String> hashes = new HashMap<>();
-        final Map<String, Bitmap> bitmaps = new HashMap<>();
         Cursor cursor = AvatarTable.getInstance().list();
         try {
             if (cursor.moveToFirst()) {
@@ -225,22 +278,16 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
         } finally {
             cursor.close();
         }
-        for (String hash : new HashSet<>(hashes.values()))
-            if (!hash.equals(EMPTY_HASH)) {
-                Bitmap bitmap = makeBitmap(AvatarStorage.getInstance().read(hash));
-                bitmaps.put(hash, bitmap == null ? EMPTY_BITMAP : bitmap);
-            }
         Application.getInstance().runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                onLoaded(hashes, bitmaps);
+                onLoaded(hashes);
             }
         });
     }
 
-    private void onLoaded(Map<Jid, String> hashes, Map<String, Bitmap> bitmaps) {
+    private void onLoaded(Map<Jid, String> hashes) {
         this.hashes.putAll(hashes);
-        this.bitmaps.putAll(bitmaps);
     }
 
     /**
@@ -265,7 +312,7 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
      *
      * @param jid
      * @return avatar's value. <code>null</code> can be returned if user has no
-     * avatar or avatar doesn't exists.
+     * avatar, avatar doesn't exists or it is not decoded yet.
      */
     private Bitmap getBitmap(Jid jid) {
         String hash = getHash(jid);
@@ -273,13 +320,97 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
             return null;
         }
         Bitmap bitmap = bitmaps.get(hash);
-        if (bitmap == EMPTY_BITMAP) {
+        if (bitmap == null) {
+            decodeBitmap(hash);
+            return null;
+        } else if (bitmap == EMPTY_BITMAP) {
             return null;
         } else {
             return bitmap;
         }
     }
 
+    /**
+     * Reads and decodes stored avatar in background.
+     */
+    private void decodeBitmap(final String hash) {
+        synchronized (decoding) {
+            if (!decoding.add(hash)) {
+                return;
+            }
+        }
+        application.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = makeBitmap(AvatarStorage.getInstance().read(hash));
+                application.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onBitmapDecoded(hash, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onBitmapDecoded(String hash, Bitmap bitmap) {
+        synchronized (decoding) {
+            decoding.remove(hash);
+        }
+        bitmaps.put(hash, bitmap == null ? EMPTY_BITMAP : bitmap);
+        if (bitmap == null) {
+            return;
+        }
+        decoded.add(hash);
+        if (decoded.size() == 1) {
+            application.runOnUiThreadDelay(notifyDecodedRunnable, DECODED_NOTIFY_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Notifies about contacts and accounts whose avatars were decoded.
+     */
+    private final Runnable notifyDecodedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Collection<RosterContact> contacts = new ArrayList<>();
+            Collection<AccountJid> accounts = new ArrayList<>();
+            Collection<AccountJid> enabledAccounts = AccountManager.getInstance().getEnabledAccounts();
+            // avatars evicted before notification would be requested and decoded again
+            Set<String> ready = new HashSet<>();
+            for (String hash : decoded) {
+                if (bitmaps.get(hash) != null) {
+                    ready.add(hash);
+                }
+            }
+            decoded.clear();
+            if (ready.isEmpty()) {
+                return;
+            }
+
+            for (Map.Entry<Jid, String> entry : hashes.entrySet()) {
+                if (!ready.contains(entry.getValue())) {
+                    continue;
+                }
+                BareJid bareJid = entry.getKey().asBareJid();
+                for (AccountJid account : enabledAccounts) {
+                    if (account.getFullJid().asBareJid().equals(bareJid)) {
+                        accounts.add(account);
+                    }
+                    RosterContact contact = RosterManager.getInstance().getRosterContact(account, bareJid);
+                    if (contact != null) {
+                        contacts.add(contact);
+                    }
+                }
+            }
+
+            RosterManager.onContactsChanged(contacts);
+            if (!accounts.isEmpty()) {
+                AccountManager.getInstance().onAccountsChanged(accounts);
+            }
+        }
+    };
+
     @Nullable
     public String getHash(Jid bareAddress) {
         return hashes.get(bareAddress);
@@ -307,11 +438,48 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
 
     @Override
     public void onLowMemory() {
-        contactListDrawables.clear();
+        bitmaps.evictAll();
+        contactListDrawables.evictAll();
         userAvatarSet.onLowMemory();
         roomAvatarSet.onLowMemory();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            onLowMemory();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            bitmaps.trimToSize(bitmaps.maxSize() / 2);
+            contactListDrawables.evictAll();
+        }
+        LogManager.i(this, "onTrimMemory " + level + ", avatar cache " + bitmaps.size()
+                + " bytes, hits " + getBitmapCacheHitCount() + ", misses " + getBitmapCacheMissCount()
+                + ", evictions " + getBitmapCacheEvictionCount());
+    }
+
+    /**
+     * @return number of avatar requests served from the cache.
+     */
+    public int getBitmapCacheHitCount() {
+        return bitmaps.hitCount();
+    }
+
+    /**
+     * @return number of avatar requests that needed to decode avatar from storage.
+     */
+    public int getBitmapCacheMissCount() {
+        return bitmaps.missCount();
+    }
+
+    /**
+     * @return number of avatars evicted from the cache.
+     */
+    public int getBitmapCacheEvictionCount() {
+        return bitmaps.evictionCount();
+    }
+
     /**
      * Gets account's avatar.
      *
@@ -407,15 +575,19 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
     }
 
     /**
-     * Gets and caches drawable with avatar for regular user.
+     * Gets drawable with avatar for regular user, caches default one.
      *
      * @param user
      * @return
      */
     public Drawable getUserAvatarForContactList(UserJid user, String name) {
+        Bitmap value = getBitmap(user.getJid());
+        if (value != null) {
+            return new BitmapDrawable(application.getResources(), value);
+        }
         Drawable drawable = contactListDrawables.get(user.getJid());
         if (drawable == null) {
-            drawable = getUserAvatar(user, name);
+            drawable = generateDefaultAvatar(user.getBareJid().toString(), name);
             contactListDrawables.put(user.getJid(), drawable);
         }
         return drawable;
@@ -447,15 +619,19 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
     }
 
     /**
-     * Gets and caches drawable with room's avatar.
+     * Gets drawable with room's avatar, caches default one.
      *
      * @param user
      * @return
      */
     public Drawable getRoomAvatarForContactList(UserJid user) {
+        Bitmap value = getBitmap(user.getJid());
+        if (value != null) {
+            return new BitmapDrawable(application.getResources(), value);
+        }
         Drawable drawable = contactListDrawables.get(user.getJid());
         if (drawable == null) {
-            drawable = getRoomAvatar(user);
+            drawable = generateDefaultRoomAvatar(user.getBareJid().toString());
             contactListDrawables.put(user.getJid(), drawable);
         }
         return drawable;
@@ -519,8 +695,7 @@ public class AvatarManager implements OnLoadListener, OnLowMemoryListener, OnPac
             return;
         }
         final String hash = vCardUpdate.getPhotoHash();
-        if (bitmaps.containsKey(hash)) {
-            setHash(user.getJid(), hash);
+        if (hash.equals(getHash(user.getJid()))) {
             return;
         }
         Application.getInstance().runInBackground(new Runnable() {
@@ -20,23 +20,25 @@ import android.support.annotation.Nullable;
 import com.xabber.android.BuildConfig;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
-import com.xabber.android.data.account.AccountItem;
-import com.xabber.android.data.account.AccountManager;
+import com.xabber.android.data.OnLoadDependentListener;
+import com.xabber.android.data.OnLoadListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.entity.AccountJid;
-import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.message.MessageManager;
 import com.xabber.android.data.roster.OnContactChangedListener;
 import com.xabber.android.data.roster.RosterContact;
 import com.xabber.android.data.roster.RosterManager;
 
-import org.jivesoftware.smack.SmackException;
-import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smackx.caps.EntityCapsManager;
+import org.jivesoftware.smackx.caps.packet.CapsExtension;
 import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
 import org.jxmpp.jid.Jid;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -45,11 +47,16 @@ import java.util.concurrent.ConcurrentHashMap;
  *
  * @author alexander.ivanov
  */
-public class CapabilitiesManager {
+public class CapabilitiesManager implements OnLoadDependentListener, DiscoveryScheduler.Listener {
 
     @SuppressWarnings("WeakerAccess")
     static final String LOG_TAG = CapabilitiesManager.class.getSimpleName();
 
+    /**
+     * Time to not repeat failed lookup on presences with the same caps.
+     */
+    private static final long FAILED_LOOKUP_TTL = 10 * 60 * 1000;
+
     private static CapabilitiesManager instance;
 
     // cache for jids does not supporting Entity Caps
@@ -57,6 +64,19 @@ public class CapabilitiesManager {
     Map<Jid, DiscoverInfo> discoverInfoCache;
     private Map<Jid, ClientInfo> clientInfoCache;
 
+    /**
+     * Last received caps node#ver of full jids, empty string for presences without caps.
+     */
+    private Map<Jid, String> capsNodeVers;
+
+    /**
+     * Time of the last failed lookup by jid.
+     */
+    private Map<Jid, Long> failedLookups;
+
+    private final EntityCapsCache entityCapsCache;
+    private final DiscoveryScheduler discoveryScheduler;
+
     public static CapabilitiesManager getInstance() {
         if (instance == null) {
             instance = new CapabilitiesManager();
@@ -69,12 +89,26 @@ public class CapabilitiesManager {
         Context applicationContext = Application.getInstance().getApplicationContext();
 
         EntityCapsManager.setDefaultEntityNode(applicationContext.getString(R.string.caps_entity_node));
-        EntityCapsManager.setPersistentCache(new EntityCapsCache());
+        entityCapsCache = new EntityCapsCache();
+        EntityCapsManager.setPersistentCache(entityCapsCache);
 
         setServiceDiscoveryClientIdentity(applicationContext);
 
         discoverInfoCache = new ConcurrentHashMap<>();
         clientInfoCache = new ConcurrentHashMap<>();
+        capsNodeVers = new ConcurrentHashMap<>();
+        failedLookups = new ConcurrentHashMap<>();
+        discoveryScheduler = new DiscoveryScheduler(this);
+    }
+
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Collections.singletonList(DatabaseManager.getInstance());
+    }
+
+    @Override
+    public void onLoad() {
+        entityCapsCache.load();
     }
 
     private void setServiceDiscoveryClientIdentity(Context applicationContext) {
@@ -113,78 +147,117 @@ public class CapabilitiesManager {
     public void onPresence(final AccountJid accountJid, final Presence presence) {
         final Jid from = presence.getFrom();
 
-        discoverInfoCache.remove(from);
-        clientInfoCache.remove(from);
-
-        DiscoverInfo discoverInfoByUser = EntityCapsManager.getDiscoverInfoByUser(from);
-        if (discoverInfoByUser != null) {
+        if (!presence.isAvailable()) {
+            capsNodeVers.remove(from);
+            discoverInfoCache.remove(from);
+            clientInfoCache.remove(from);
+            failedLookups.remove(from);
             return;
         }
 
-        Application.getInstance().runInBackground(new Runnable() {
-            @Override
-            public void run() {
-                updateClientInfo(accountJid, from);
+        String nodeVer = getNodeVer(presence);
+        String previousNodeVer = capsNodeVers.put(from, nodeVer);
+        if (nodeVer.equals(previousNodeVer)) {
+            ClientInfo clientInfo = clientInfoCache.get(from);
+            if (clientInfo != null && (clientInfo != ClientInfo.INVALID_CLIENT_INFO
+                    || isLookupFailedRecently(from))) {
+                return;
             }
-        });
-    }
+        } else {
+            failedLookups.remove(from);
+        }
 
-    public void requestClientInfoByUser(final AccountJid account, final Jid jid) {
-        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
-            @Override
-            public void run() {
-                updateClientInfo(account, jid);
-            }
-        });
+        discoverInfoCache.remove(from);
+        clientInfoCache.remove(from);
+
+        updateClientInfo(accountJid, from, MessageManager.getInstance()
+                .isVisibleChat(accountJid, from.asBareJid()));
     }
 
-    @SuppressWarnings("WeakerAccess")
-    void updateClientInfo(final AccountJid account, final Jid jid) {
-        DiscoverInfo discoverInfo = EntityCapsManager.getDiscoverInfoByUser(jid);
+    /**
+     * @return node#ver of caps in presence or empty string.
+     */
+    private static String getNodeVer(Presence presence) {
+        CapsExtension caps = presence.getExtension(CapsExtension.ELEMENT, CapsExtension.NAMESPACE);
+        if (caps == null) {
+            return "";
+        }
+        return caps.getNode() + "#" + caps.getVer();
+    }
 
-        if (discoverInfo != null) {
-            return;
+    /**
+     * @return whether lookup for the jid has failed less than {@link #FAILED_LOOKUP_TTL} ago.
+     */
+    private boolean isLookupFailedRecently(Jid jid) {
+        Long failed = failedLookups.get(jid);
+        if (failed == null) {
+            return false;
         }
+        if (System.currentTimeMillis() - failed > FAILED_LOOKUP_TTL) {
+            failedLookups.remove(jid);
+            return false;
+        }
+        return true;
+    }
 
-        AccountItem accountItem = AccountManager.getInstance().getAccount(account);
-        if (accountItem == null) {
+    public void requestClientInfoByUser(final AccountJid account, final Jid jid) {
+        failedLookups.remove(jid);
+        updateClientInfo(account, jid, true);
+    }
+
+    private void updateClientInfo(final AccountJid account, final Jid jid, boolean priority) {
+        if (EntityCapsManager.getDiscoverInfoByUser(jid) != null) {
             return;
         }
 
-        try {
-            discoverInfo = ServiceDiscoveryManager.getInstanceFor(accountItem.getConnection())
-                    .discoverInfo(jid);
+        discoveryScheduler.request(account, jid, priority);
+    }
 
-            EntityCapsManager.NodeVerHash nodeVerHashByJid = EntityCapsManager.getNodeVerHashByJid(jid);
-            if (nodeVerHashByJid == null) {
+    @Override
+    public void onDiscoverInfo(AccountJid account, Collection<Jid> jids, DiscoverInfo discoverInfo) {
+        ClientInfo clientInfo = ClientInfo.fromDiscoveryInfo(discoverInfo);
+        for (Jid jid : jids) {
+            if (EntityCapsManager.getNodeVerHashByJid(jid) == null) {
                 discoverInfoCache.put(jid, discoverInfo);
             }
+            clientInfoCache.put(jid, clientInfo);
+            failedLookups.remove(jid);
+        }
+        onClientInfoChanged(account, jids);
+    }
 
-            if (discoverInfo != null) {
-                clientInfoCache.put(jid, ClientInfo.fromDiscoveryInfo(discoverInfo));
-            }
-
-        } catch (SmackException.NoResponseException | XMPPException.XMPPErrorException | InterruptedException | SmackException.NotConnectedException e) {
-            LogManager.exception(this, e);
+    @Override
+    public void onDiscoverInfoFailed(AccountJid account, Collection<Jid> jids) {
+        long now = System.currentTimeMillis();
+        for (Jid jid : jids) {
             clientInfoCache.put(jid, ClientInfo.INVALID_CLIENT_INFO);
+            failedLookups.put(jid, now);
         }
+        onClientInfoChanged(account, jids);
+    }
 
-        RosterContact rosterContact = RosterManager.getInstance().getRosterContact(account, jid.asBareJid());
+    private void onClientInfoChanged(AccountJid account, Collection<Jid> jids) {
+        final ArrayList<RosterContact> rosterContacts = new ArrayList<>();
+        for (Jid jid : jids) {
+            RosterContact rosterContact = RosterManager.getInstance().getRosterContact(account, jid.asBareJid());
+            if (rosterContact != null && !rosterContacts.contains(rosterContact)) {
+                rosterContacts.add(rosterContact);
+            }
+        }
 
-        if (rosterContact != null) {
-            final ArrayList<RosterContact> rosterContacts = new ArrayList<>();
-            rosterContacts.add(rosterContact);
+        if (rosterContacts.isEmpty()) {
+            return;
+        }
 
-            Application.getInstance().runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    for (OnContactChangedListener onContactChangedListener
-                            : Application.getInstance().getUIListeners(OnContactChangedListener.class)) {
-                        onContactChangedListener.onContactsChanged(rosterContacts);
-                    }
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                for (OnContactChangedListener onContactChangedListener
+                        : Application.getInstance().getUIListeners(OnContactChangedListener.class)) {
+                    onContactChangedListener.onContactsChanged(rosterContacts);
                 }
-            });
-        }
+            }
+        });
     }
 
     public boolean isFeatureSupported(Jid jid, String namespace) {
@@ -0,0 +1,216 @@
+package com.xabber.android.data.extension.capability;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.xabber.android.data.account.AccountItem;
+import com.xabber.android.data.account.AccountManager;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.log.LogManager;
+
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smackx.caps.EntityCapsManager;
+import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+import org.jxmpp.jid.Jid;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sends disco#info requests on behalf of {@link CapabilitiesManager}.
+ * <p/>
+ * Requests for the same jid or for jids with the same caps node#ver share single IQ.
+ * At most {@link #MAX_IN_FLIGHT} requests are sent at once for each account, others wait
+ * in the queue of the account. Priority requests are put at the head of the queue.
+ * Requests waiting longer than {@link #QUEUE_TIMEOUT_MILLIS} are dropped.
+ */
+class DiscoveryScheduler {
+
+    private static final String LOG_TAG = DiscoveryScheduler.class.getSimpleName();
+
+    private static final int MAX_IN_FLIGHT = 3;
+    private static final long QUEUE_TIMEOUT_MILLIS = 60000;
+
+    interface Listener {
+
+        /**
+         * Discovery info was received for jids.
+         */
+        void onDiscoverInfo(AccountJid account, Collection<Jid> jids, DiscoverInfo discoverInfo);
+
+        /**
+         * Entity returned error or did not respond.
+         */
+        void onDiscoverInfoFailed(AccountJid account, Collection<Jid> jids);
+
+    }
+
+    private final Listener listener;
+    private final ExecutorService executor;
+
+    /**
+     * Queued and sent requests by key.
+     */
+    private final Map<String, Request> requests;
+    private final Map<AccountJid, AccountQueue> queues;
+
+    DiscoveryScheduler(Listener listener) {
+        this.listener = listener;
+        requests = new HashMap<>();
+        queues = new HashMap<>();
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Discovery");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Requests discovery info of the jid.
+     *
+     * @param priority whether request should be sent before not prioritized ones.
+     */
+    synchronized void request(AccountJid account, Jid jid, boolean priority) {
+        String key = account.toString() + " " + getFlightKey(jid);
+        AccountQueue queue = queues.get(account);
+        if (queue == null) {
+            queue = new AccountQueue();
+            queues.put(account, queue);
+        }
+
+        Request request = requests.get(key);
+        if (request != null) {
+            request.jids.add(jid);
+            if (priority && !request.priority && !request.sent) {
+                request.priority = true;
+                queue.waiting.remove(request);
+                queue.waiting.addFirst(request);
+            }
+            return;
+        }
+
+        request = new Request(account, key, jid, priority);
+        requests.put(key, request);
+        if (priority) {
+            queue.waiting.addFirst(request);
+        } else {
+            queue.waiting.addLast(request);
+        }
+        sendNext(queue);
+    }
+
+    /**
+     * @return caps node#ver of the jid or jid itself if caps are not known.
+     */
+    private static String getFlightKey(Jid jid) {
+        EntityCapsManager.NodeVerHash nodeVerHash = EntityCapsManager.getNodeVerHashByJid(jid);
+        if (nodeVerHash != null) {
+            return nodeVerHash.getNodeVer();
+        }
+        return jid.toString();
+    }
+
+    private void sendNext(AccountQueue queue) {
+        while (queue.sending < MAX_IN_FLIGHT && !queue.waiting.isEmpty()) {
+            final Request request = queue.waiting.pollFirst();
+            if (System.currentTimeMillis() - request.created > QUEUE_TIMEOUT_MILLIS) {
+                LogManager.i(LOG_TAG, "Drop expired request " + request.key);
+                requests.remove(request.key);
+                continue;
+            }
+            request.sent = true;
+            queue.sending++;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(request);
+                }
+            });
+        }
+    }
+
+    private void send(Request request) {
+        DiscoverInfo discoverInfo = null;
+        boolean failed = false;
+        try {
+            discoverInfo = discoverInfo(request.account, request.jid);
+        } catch (SmackException.NoResponseException | XMPPException.XMPPErrorException e) {
+            LogManager.exception(LOG_TAG, e);
+            failed = true;
+        } catch (SmackException.NotConnectedException | InterruptedException e) {
+            LogManager.exception(LOG_TAG, e);
+        } catch (RuntimeException e) {
+            LogManager.exception(LOG_TAG, e);
+        }
+
+        Collection<Jid> jids;
+        synchronized (this) {
+            requests.remove(request.key);
+            jids = new ArrayList<>(request.jids);
+            AccountQueue queue = queues.get(request.account);
+            queue.sending--;
+            sendNext(queue);
+        }
+
+        if (discoverInfo != null) {
+            listener.onDiscoverInfo(request.account, jids, discoverInfo);
+        } else if (failed) {
+            listener.onDiscoverInfoFailed(request.account, jids);
+        }
+    }
+
+    @Nullable
+    private static DiscoverInfo discoverInfo(AccountJid account, Jid jid)
+            throws SmackException.NoResponseException, XMPPException.XMPPErrorException,
+            SmackException.NotConnectedException, InterruptedException {
+        AccountItem accountItem = AccountManager.getInstance().getAccount(account);
+        if (accountItem == null) {
+            return null;
+        }
+        return ServiceDiscoveryManager.getInstanceFor(accountItem.getConnection()).discoverInfo(jid);
+    }
+
+    private static class Request {
+        final AccountJid account;
+        final String key;
+        final Jid jid;
+        final long created;
+
+        /**
+         * Jids waiting for the result, including {@link #jid}.
+         */
+        final Set<Jid> jids;
+
+        boolean priority;
+        boolean sent;
+
+        Request(AccountJid account, String key, Jid jid, boolean priority) {
+            this.account = account;
+            this.key = key;
+            this.jid = jid;
+            this.priority = priority;
+            created = System.currentTimeMillis();
+            jids = new LinkedHashSet<>();
+            jids.add(jid);
+        }
+    }
+
+    private static class AccountQueue {
+        final ArrayDeque<Request> waiting = new ArrayDeque<>();
+        int sending;
+    }
+
+}
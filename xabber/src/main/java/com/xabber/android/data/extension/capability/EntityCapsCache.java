@@ -1,5 +1,7 @@
 package com.xabber.android.data.extension.capability;
 
+import android.support.annotation.NonNull;
+
 import com.xabber.android.data.database.RealmManager;
 import com.xabber.android.data.database.realm.DiscoveryInfoCache;
 import com.xabber.android.data.log.LogManager;
@@ -7,67 +9,236 @@ import com.xabber.android.data.log.LogManager;
 import org.jivesoftware.smackx.caps.cache.EntityCapsPersistentCache;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
 
-import io.realm.Realm;
-
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * Persistent entity caps cache with in memory front.
+ * <p/>
+ * Stored entries are read in bulk by {@link #load()}, after that lookups are served
+ * from memory and realm is queried only for entries evicted from memory.
+ * New entries are written on the dedicated thread, all entries added
+ * during {@link #FLUSH_DELAY_MILLIS} are committed in single transaction.
+ */
 class EntityCapsCache implements EntityCapsPersistentCache {
 
     private static final String LOG_TAG = EntityCapsCache.class.getSimpleName();
 
-    @Override
-    public void addDiscoverInfoByNodePersistent(final String nodeVer, final DiscoverInfo info) {
+    private static final int MAX_ENTRIES = 1000;
+    private static final long FLUSH_DELAY_MILLIS = 2000;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Known entries by node#ver, the least recently used is evicted first.
+     */
+    private final Map<String, DiscoverInfo> entries;
+
+    /**
+     * Entries waiting to be written.
+     */
+    private Map<String, DiscoverInfo> pending;
+
+    private boolean flushScheduled;
+
+    /**
+     * Whether {@link #entries} contains all stored entries,
+     * so that realm should not be queried for missed ones.
+     */
+    private boolean complete;
+
+    EntityCapsCache() {
+        entries = new LinkedHashMap<String, DiscoverInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DiscoverInfo> eldest) {
+                if (size() > MAX_ENTRIES) {
+                    complete = false;
+                    return true;
+                }
+                return false;
+            }
+        };
+        pending = new HashMap<>();
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Entity caps writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Reads stored entries into memory.
+     * Must be called from background thread.
+     */
+    void load() {
         final long startTime = System.currentTimeMillis();
-        if (nodeVer == null || info == null) {
-            return;
+        Map<String, DiscoverInfo> loaded = new HashMap<>();
+        int stored;
+
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            RealmResults<DiscoveryInfoCache> results = realm.where(DiscoveryInfoCache.class).findAll();
+            stored = results.size();
+            for (DiscoveryInfoCache discoveryInfoCache : results) {
+                if (loaded.size() >= MAX_ENTRIES) {
+                    break;
+                }
+                try {
+                    loaded.put(discoveryInfoCache.getNodeVer(), discoveryInfoCache.getDiscoveryInfo());
+                } catch (IllegalStateException e) {
+                    LogManager.exception(LOG_TAG, e);
+                }
+            }
+        } finally {
+            realm.close();
         }
 
-        // TODO: 13.03.18 ANR - WRITE
-        Realm realm = RealmManager.getInstance().getNewRealm();
-        realm.beginTransaction();
+        synchronized (this) {
+            for (Map.Entry<String, DiscoverInfo> entry : loaded.entrySet()) {
+                if (!entries.containsKey(entry.getKey())) {
+                    entries.put(entry.getKey(), entry.getValue());
+                }
+            }
+            complete = stored <= MAX_ENTRIES && entries.size() < MAX_ENTRIES;
+        }
 
-        DiscoveryInfoCache discoveryInfoCache = new DiscoveryInfoCache(nodeVer, info);
-        realm.copyToRealmOrUpdate(discoveryInfoCache);
+        LogManager.d("REALM", Thread.currentThread().getName() + " load " + loaded.size()
+                + " of " + stored + " discover infos: " + (System.currentTimeMillis() - startTime));
+    }
 
-        realm.commitTransaction();
-        realm.close();
-        LogManager.d("REALM", Thread.currentThread().getName()
-                + " save discover info: " + (System.currentTimeMillis() - startTime));
+    @Override
+    public void addDiscoverInfoByNodePersistent(final String nodeVer, final DiscoverInfo info) {
+        if (nodeVer == null || info == null) {
+            return;
+        }
 
+        synchronized (this) {
+            entries.put(nodeVer, info);
+            pending.put(nodeVer, info);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        executor.schedule(flushRunnable, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     @Override
     public DiscoverInfo lookup(String nodeVer) {
-        Realm realm = RealmManager.getInstance().getNewRealm();
-
-        DiscoveryInfoCache discoveryInfoCache = realm.where(DiscoveryInfoCache.class)
-                .equalTo(DiscoveryInfoCache.Fields.NODE_VER, nodeVer)
-                .findFirst();
+        synchronized (this) {
+            DiscoverInfo discoverInfo = entries.get(nodeVer);
+            if (discoverInfo == null) {
+                discoverInfo = pending.get(nodeVer);
+            }
+            if (discoverInfo != null || complete) {
+                return discoverInfo;
+            }
+        }
 
         DiscoverInfo discoverInfo = null;
-
-        if (discoveryInfoCache != null) {
-            discoverInfo = realm.copyFromRealm(discoveryInfoCache).getDiscoveryInfo();
+        Realm realm = RealmManager.getInstance().getNewRealm();
+        try {
+            DiscoveryInfoCache discoveryInfoCache = realm.where(DiscoveryInfoCache.class)
+                    .equalTo(DiscoveryInfoCache.Fields.NODE_VER, nodeVer)
+                    .findFirst();
+            if (discoveryInfoCache != null) {
+                discoverInfo = discoveryInfoCache.getDiscoveryInfo();
+            }
+        } catch (IllegalStateException e) {
+            LogManager.exception(LOG_TAG, e);
+        } finally {
+            realm.close();
         }
 
-        realm.close();
-
+        if (discoverInfo != null) {
+            synchronized (this) {
+                entries.put(nodeVer, discoverInfo);
+            }
+        }
         return discoverInfo;
     }
 
     @Override
     public void emptyCache() {
+        synchronized (this) {
+            entries.clear();
+            pending.clear();
+            complete = true;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long startTime = System.currentTimeMillis();
+                Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+                try {
+                    realm.executeTransaction(new Realm.Transaction() {
+                        @Override
+                        public void execute(Realm realm) {
+                            realm.where(DiscoveryInfoCache.class)
+                                    .findAll()
+                                    .deleteAllFromRealm();
+                        }
+                    });
+                } finally {
+                    realm.close();
+                }
+                LogManager.d("REALM", Thread.currentThread().getName()
+                        + " delete discover cache: " + (System.currentTimeMillis() - startTime));
+            }
+        });
+    }
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final Map<String, DiscoverInfo> writes;
+            synchronized (EntityCapsCache.this) {
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                writes = pending;
+                pending = new HashMap<>();
+            }
+
+            try {
+                write(writes);
+            } catch (Exception e) {
+                LogManager.exception(LOG_TAG, e);
+            }
+        }
+    };
+
+    private void write(final Map<String, DiscoverInfo> writes) {
         final long startTime = System.currentTimeMillis();
-        // TODO: 13.03.18 ANR - WRITE
-        Realm realm = RealmManager.getInstance().getNewRealm();
 
-        realm.beginTransaction();
-        realm.where(DiscoveryInfoCache.class)
-                .findAll()
-                .deleteAllFromRealm();
-        realm.commitTransaction();
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            realm.executeTransaction(new Realm.Transaction() {
+                @Override
+                public void execute(Realm realm) {
+                    for (Map.Entry<String, DiscoverInfo> write : writes.entrySet()) {
+                        realm.copyToRealmOrUpdate(new DiscoveryInfoCache(write.getKey(), write.getValue()));
+                    }
+                }
+            });
+        } finally {
+            realm.close();
+        }
 
-        realm.close();
-        LogManager.d("REALM", Thread.currentThread().getName()
-                + " delete discover cache: " + (System.currentTimeMillis() - startTime));
+        LogManager.d("REALM", Thread.currentThread().getName() + " save " + writes.size()
+                + " discover infos: " + (System.currentTimeMillis() - startTime));
     }
 }
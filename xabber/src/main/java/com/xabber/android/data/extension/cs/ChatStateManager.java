@@ -19,6 +19,7 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
+import android.os.Looper;
 
 import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
@@ -29,7 +30,7 @@ import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.ConnectionManager;
 import com.xabber.android.data.connection.StanzaSender;
 import com.xabber.android.data.connection.listeners.OnDisconnectListener;
-import com.xabber.android.data.connection.listeners.OnPacketListener;
+import com.xabber.android.data.connection.listeners.OnBackgroundPacketListener;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.NestedMap;
 import com.xabber.android.data.entity.NestedNestedMaps;
@@ -64,7 +65,7 @@ import java.util.Map;
  * @author alexander.ivanov
  */
 public class ChatStateManager implements OnDisconnectListener,
-        OnPacketListener, OnCloseListener {
+        OnBackgroundPacketListener, OnCloseListener {
 
     private static ChatStateManager instance;
 
@@ -92,6 +93,10 @@ public class ChatStateManager implements OnDisconnectListener,
 
     /**
      * Chat states for lower cased resource for bareAddress in account.
+     * <p/>
+     * Incoming state maps ({@link #chatStates}, {@link #stateCleaners} and {@link #supports})
+     * are updated from the stanza processing thread and must be changed under
+     * {@link #incomingLock}, reads can be made from any thread.
      */
     private final NestedNestedMaps<Resourcepart, ChatState> chatStates;
 
@@ -127,6 +132,8 @@ public class ChatStateManager implements OnDisconnectListener,
      */
     private final Handler handler;
 
+    private final Object incomingLock = new Object();
+
     private ChatStateManager() {
         chatStates = new NestedNestedMaps<>();
         stateCleaners = new NestedNestedMaps<>();
@@ -135,7 +142,7 @@ public class ChatStateManager implements OnDisconnectListener,
         pauseIntents = new NestedMap<>();
         alarmManager = (AlarmManager) Application.getInstance()
                 .getSystemService(Context.ALARM_SERVICE);
-        handler = new Handler();
+        handler = new Handler(Looper.getMainLooper());
     }
 
     /**
@@ -268,14 +275,16 @@ public class ChatStateManager implements OnDisconnectListener,
         if (!(connection instanceof AccountItem))
             return;
         AccountJid account = ((AccountItem) connection).getAccount();
-        chatStates.clear(account.toString());
-        for (Map<Resourcepart, Runnable> map : stateCleaners.getNested(account.toString()).values()) {
-            for (Runnable runnable : map.values()) {
-                handler.removeCallbacks(runnable);
+        synchronized (incomingLock) {
+            chatStates.clear(account.toString());
+            for (Map<Resourcepart, Runnable> map : stateCleaners.getNested(account.toString()).values()) {
+                for (Runnable runnable : map.values()) {
+                    handler.removeCallbacks(runnable);
+                }
             }
+            stateCleaners.clear(account.toString());
+            supports.clear(account.toString());
         }
-        stateCleaners.clear(account.toString());
-        supports.clear(account.toString());
         sent.clear(account.toString());
         for (PendingIntent pendingIntent : pauseIntents.getNested(account.toString()).values()) {
             alarmManager.cancel(pendingIntent);
@@ -314,45 +323,55 @@ public class ChatStateManager implements OnDisconnectListener,
             if (presence.getType() != Type.unavailable) {
                 return;
             }
-            chatStates.remove(account.toString(), bareUserJid.toString(), resource);
-            removeCallback(account, bareUserJid.getBareJid(), resource);
-            supports.remove(account.toString(), bareUserJid.toString(), resource);
+            synchronized (incomingLock) {
+                chatStates.remove(account.toString(), bareUserJid.toString(), resource);
+                removeCallback(account, bareUserJid.getBareJid(), resource);
+                supports.remove(account.toString(), bareUserJid.toString(), resource);
+            }
         } else if (stanza instanceof Message) {
-            boolean support = false;
+            ChatStateExtension chatStateExtension = null;
             for (ExtensionElement extension : stanza.getExtensions())
                 if (extension instanceof ChatStateExtension) {
+                    chatStateExtension = (ChatStateExtension) extension;
+                    break;
+                }
+            Message message = (Message) stanza;
+            boolean updateSupport = message.getType() == Message.Type.chat
+                    || message.getType() == Message.Type.groupchat;
+            synchronized (incomingLock) {
+                if (chatStateExtension != null) {
                     removeCallback(account, bareUserJid.getBareJid(), resource);
-                    ChatState chatState = ((ChatStateExtension) extension).getChatState();
+                    ChatState chatState = chatStateExtension.getChatState();
                     chatStates.put(account.toString(), bareUserJid.toString(), resource, chatState);
                     if (chatState != ChatState.active) {
                         Runnable runnable = new Runnable() {
                             @Override
                             public void run() {
-                                if (this != stateCleaners.get(account.toString(), bareUserJid.toString(), resource)) {
-                                    return;
+                                synchronized (incomingLock) {
+                                    if (this != stateCleaners.get(account.toString(), bareUserJid.toString(), resource)) {
+                                        return;
+                                    }
+                                    chatStates.remove(account.toString(), bareUserJid.toString(), resource);
+                                    removeCallback(account, bareUserJid.getBareJid(), resource);
                                 }
-                                chatStates.remove(account.toString(), bareUserJid.toString(), resource);
-                                removeCallback(account, bareUserJid.getBareJid(), resource);
                                 RosterManager.onChatStateChanged(account, bareUserJid);
                             }
                         };
                         handler.postDelayed(runnable, REMOVE_STATE_DELAY);
                         stateCleaners.put(account.toString(), bareUserJid.toString(), resource, runnable);
                     }
-                    RosterManager.onChatStateChanged(account, bareUserJid);
-                    support = true;
-                    break;
                 }
-            Message message = (Message) stanza;
-            if (message.getType() != Message.Type.chat
-                    && message.getType() != Message.Type.groupchat) {
-                return;
+                if (updateSupport) {
+                    if (chatStateExtension != null) {
+                        supports.put(account.toString(), bareUserJid.toString(), resource, true);
+                    } else if (supports.get(account.toString(), bareUserJid.toString(), resource) == null) {
+                        // Disable only if there no information about support.
+                        supports.put(account.toString(), bareUserJid.toString(), resource, false);
+                    }
+                }
             }
-            if (support) {
-                supports.put(account.toString(), bareUserJid.toString(), resource, true);
-            } else if (supports.get(account.toString(), bareUserJid.toString(), resource) == null) {
-                // Disable only if there no information about support.
-                supports.put(account.toString(), bareUserJid.toString(), resource, false);
+            if (chatStateExtension != null) {
+                RosterManager.onChatStateChanged(account, bareUserJid);
             }
         }
     }
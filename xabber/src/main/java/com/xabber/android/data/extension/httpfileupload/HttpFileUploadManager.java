@@ -1,18 +1,23 @@
 package com.xabber.android.data.extension.httpfileupload;
 
 
+import android.support.annotation.Nullable;
+
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.connection.CertificateManager;
 import com.xabber.android.data.connection.ConnectionItem;
+import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.MessageItem;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.MessageManager;
 import com.xabber.xmpp.httpfileupload.Slot;
 
+import org.greenrobot.eventbus.EventBus;
 import org.jivesoftware.smack.ExceptionCallback;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.StanzaListener;
@@ -27,9 +32,11 @@ import java.io.File;
 import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -38,12 +45,14 @@ import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.X509TrustManager;
 
 import de.duenndns.ssl.MemorizingTrustManager;
+import io.realm.Realm;
+import io.realm.RealmResults;
 import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.RequestBody;
 import okhttp3.Response;
 
 
@@ -53,8 +62,39 @@ public class HttpFileUploadManager {
 
     private static final MediaType CONTENT_TYPE = MediaType.parse("application/octet-stream");
 
+    /**
+     * Max number of files uploaded at the same time, other uploads are queued.
+     */
+    private static final int MAX_CONCURRENT_UPLOADS = 2;
+
+    /**
+     * Min progress change to be reported.
+     */
+    private static final int PROGRESS_STEP_PERCENT = 5;
+
     private Map<AccountJid, Jid> uploadServers = new ConcurrentHashMap<>();
 
+    /**
+     * Client with dispatcher and connection pool shared by clients of all accounts.
+     */
+    private final OkHttpClient baseClient;
+
+    /**
+     * Clients with trust manager of the account.
+     */
+    private final Map<AccountJid, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Unique ids of file messages with requested slot or upload in progress.
+     */
+    private final Set<String> activeUploads =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Upload progress in percents by unique id of file message.
+     */
+    private final Map<String, Integer> uploadProgress = new ConcurrentHashMap<>();
+
     public static HttpFileUploadManager getInstance() {
         if (instance == null) {
             instance = new HttpFileUploadManager();
@@ -64,12 +104,31 @@ public class HttpFileUploadManager {
     }
 
     private HttpFileUploadManager() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CONCURRENT_UPLOADS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_UPLOADS);
+
+        baseClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .writeTimeout(5, TimeUnit.MINUTES)
+                .connectTimeout(5, TimeUnit.MINUTES)
+                .readTimeout(5, TimeUnit.MINUTES)
+                .build();
     }
 
     public boolean isFileUploadSupported(AccountJid account) {
         return uploadServers.containsKey(account);
     }
 
+    /**
+     * @return upload progress in percents for the file message
+     * or <code>null</code> if file is not being uploaded now.
+     */
+    @Nullable
+    public Integer getUploadProgress(String messageId) {
+        return uploadProgress.get(messageId);
+    }
+
     public void uploadFile(final AccountJid account, final UserJid user, final String filePath) {
         final Jid uploadServerUrl = uploadServers.get(account);
         if (uploadServerUrl == null) {
@@ -83,6 +142,16 @@ public class HttpFileUploadManager {
 
         final File file = new File(filePath);
 
+        // message is stored before upload, so upload can be resumed after restart
+        String fileMessageId = MessageManager.getInstance().createFileMessage(account, user, file);
+        activeUploads.add(fileMessageId);
+        requestSlot(accountItem, uploadServerUrl, user, file, fileMessageId);
+    }
+
+    private void requestSlot(AccountItem accountItem, Jid uploadServerUrl, final UserJid user,
+                             final File file, final String fileMessageId) {
+        final AccountJid account = accountItem.getAccount();
+
         final com.xabber.xmpp.httpfileupload.Request httpFileUpload = new com.xabber.xmpp.httpfileupload.Request();
         httpFileUpload.setFilename(file.getName());
         httpFileUpload.setSize(String.valueOf(file.length()));
@@ -96,70 +165,149 @@ public class HttpFileUploadManager {
                         return;
                     }
 
-                    uploadFileToSlot(account, (Slot) packet);
-                }
-
-                private void uploadFileToSlot(final AccountJid account, final Slot slot) {
-                    SSLSocketFactory sslSocketFactory = null;
-                    MemorizingTrustManager mtm = CertificateManager.getInstance().getNewFileUploadManager(account);
-
-                    final SSLContext sslContext;
-                    try {
-                        sslContext = SSLContext.getInstance("SSL");
-                        sslContext.init(null, new X509TrustManager[]{mtm}, new java.security.SecureRandom());
-                        sslSocketFactory = sslContext.getSocketFactory();
-                    } catch (NoSuchAlgorithmException | KeyManagementException e) {
-                        return;
-                    }
-
-                    OkHttpClient client = new OkHttpClient().newBuilder()
-                            .sslSocketFactory(sslSocketFactory)
-                            .hostnameVerifier(mtm.wrapHostnameVerifier(new org.apache.http.conn.ssl.StrictHostnameVerifier()))
-                            .writeTimeout(5, TimeUnit.MINUTES)
-                            .connectTimeout(5, TimeUnit.MINUTES)
-                            .readTimeout(5, TimeUnit.MINUTES)
-                            .build();
-
-
-                    Request request = new Request.Builder()
-                            .url(slot.getPutUrl())
-                            .put(RequestBody.create(CONTENT_TYPE, file))
-                            .build();
-
-                    final String fileMessageId;
-                    fileMessageId = MessageManager.getInstance().createFileMessage(account, user, file);
-
-                    LogManager.i(HttpFileUploadManager.this, "starting upload file to " + slot.getPutUrl() + " size " + file.length());
-                    client.newCall(request).enqueue(new Callback() {
-                        @Override
-                        public void onFailure(Call call, IOException e) {
-                            LogManager.i(HttpFileUploadManager.this, "onFailure " + e.getMessage());
-                            MessageManager.getInstance().updateMessageWithError(fileMessageId, e.toString());
-                        }
-
-                        @Override
-                        public void onResponse(Call call, Response response) throws IOException {
-                            LogManager.i(HttpFileUploadManager.this, "onResponse " + response.isSuccessful() + " " + response.body().string());
-                            if (response.isSuccessful()) {
-                                MessageManager.getInstance().updateFileMessage(account, user, fileMessageId, slot.getGetUrl());
-                            } else {
-                                MessageManager.getInstance().updateMessageWithError(fileMessageId, response.message());
-                            }
-                        }
-                    });
-
+                    uploadFileToSlot(account, user, file, fileMessageId, (Slot) packet);
                 }
-
             }, new ExceptionCallback() {
                 @Override
                 public void processException(Exception exception) {
                     LogManager.i(this, "On HTTP file upload slot error");
                     LogManager.exception(this, exception);
                     Application.getInstance().onError(R.string.http_file_upload_slot_error);
+                    onUploadFinished(fileMessageId);
+                    MessageManager.getInstance().updateMessageWithError(fileMessageId, exception.toString());
                 }
             });
         } catch (SmackException.NotConnectedException | InterruptedException e) {
             LogManager.exception(this, e);
+            // message stays in progress and upload will be resumed after reconnection
+            onUploadFinished(fileMessageId);
+        }
+    }
+
+    private void uploadFileToSlot(final AccountJid account, final UserJid user, final File file,
+                                  final String fileMessageId, final Slot slot) {
+        OkHttpClient client = getClient(account);
+        if (client == null) {
+            onUploadFinished(fileMessageId);
+            MessageManager.getInstance().updateMessageWithError(fileMessageId,
+                    "Unable to create SSL context");
+            return;
+        }
+
+        Request request = new Request.Builder()
+                .url(slot.getPutUrl())
+                .put(new ProgressRequestBody(CONTENT_TYPE, file, new ProgressRequestBody.ProgressListener() {
+                    private int reportedProgress = -1;
+
+                    @Override
+                    public void onProgress(long bytesWritten, long contentLength) {
+                        int progress = contentLength > 0 ? (int) (bytesWritten * 100 / contentLength) : 100;
+                        if (progress < reportedProgress + PROGRESS_STEP_PERCENT && progress < 100) {
+                            return;
+                        }
+                        reportedProgress = progress;
+                        uploadProgress.put(fileMessageId, progress);
+                        EventBus.getDefault().post(new UploadProgressEvent(account, user, fileMessageId));
+                    }
+                }))
+                .build();
+
+        LogManager.i(HttpFileUploadManager.this, "starting upload file to " + slot.getPutUrl() + " size " + file.length());
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LogManager.i(HttpFileUploadManager.this, "onFailure " + e.getMessage());
+                onUploadFinished(fileMessageId);
+                MessageManager.getInstance().updateMessageWithError(fileMessageId, e.toString());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                LogManager.i(HttpFileUploadManager.this, "onResponse " + response.isSuccessful() + " " + response.body().string());
+                onUploadFinished(fileMessageId);
+                if (response.isSuccessful()) {
+                    MessageManager.getInstance().updateFileMessage(account, user, fileMessageId, slot.getGetUrl());
+                } else {
+                    MessageManager.getInstance().updateMessageWithError(fileMessageId, response.message());
+                }
+            }
+        });
+    }
+
+    private void onUploadFinished(String fileMessageId) {
+        uploadProgress.remove(fileMessageId);
+        activeUploads.remove(fileMessageId);
+    }
+
+    /**
+     * @return client sharing connection pool and upload queue with clients of other accounts,
+     * or <code>null</code> if SSL context can't be created.
+     */
+    @Nullable
+    private synchronized OkHttpClient getClient(AccountJid account) {
+        OkHttpClient client = clients.get(account);
+        if (client != null) {
+            return client;
+        }
+
+        MemorizingTrustManager mtm = CertificateManager.getInstance().getNewFileUploadManager(account);
+
+        final SSLSocketFactory sslSocketFactory;
+        try {
+            SSLContext sslContext = SSLContext.getInstance("SSL");
+            sslContext.init(null, new X509TrustManager[]{mtm}, new java.security.SecureRandom());
+            sslSocketFactory = sslContext.getSocketFactory();
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            LogManager.exception(this, e);
+            return null;
+        }
+
+        client = baseClient.newBuilder()
+                .sslSocketFactory(sslSocketFactory)
+                .hostnameVerifier(mtm.wrapHostnameVerifier(new org.apache.http.conn.ssl.StrictHostnameVerifier()))
+                .build();
+        clients.put(account, client);
+        return client;
+    }
+
+    /**
+     * Requests new slots for file messages of the account left in progress,
+     * e.g. because application was closed during upload.
+     */
+    private void resumeUploads(AccountJid account) {
+        final Jid uploadServerUrl = uploadServers.get(account);
+        AccountItem accountItem = AccountManager.getInstance().getAccount(account);
+        if (uploadServerUrl == null || accountItem == null) {
+            return;
+        }
+
+        List<MessageItem> messageItems = new ArrayList<>();
+        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+        RealmResults<MessageItem> inProgress = realm.where(MessageItem.class)
+                .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
+                .equalTo(MessageItem.Fields.IS_IN_PROGRESS, true)
+                .isNotNull(MessageItem.Fields.FILE_PATH)
+                .findAllSorted(MessageItem.Fields.TIMESTAMP);
+        for (MessageItem messageItem : inProgress) {
+            messageItems.add(realm.copyFromRealm(messageItem));
+        }
+        realm.close();
+
+        for (MessageItem messageItem : messageItems) {
+            String fileMessageId = messageItem.getUniqueId();
+            if (!activeUploads.add(fileMessageId)) {
+                continue;
+            }
+
+            File file = new File(messageItem.getFilePath());
+            if (!file.exists()) {
+                onUploadFinished(fileMessageId);
+                MessageManager.getInstance().updateMessageWithError(fileMessageId, "File not found");
+                continue;
+            }
+
+            LogManager.i(this, "Resume upload of " + file.getName());
+            requestSlot(accountItem, uploadServerUrl, messageItem.getUser(), file, fileMessageId);
         }
     }
 
@@ -188,9 +336,21 @@ public class HttpFileUploadManager {
     public void onAuthorized(final ConnectionItem connectionItem) {
         try {
             discoverSupport(connectionItem.getAccount(), connectionItem.getConnection());
+            resumeUploads(connectionItem.getAccount());
         } catch (SmackException.NotConnectedException | XMPPException.XMPPErrorException
                 | SmackException.NoResponseException | InterruptedException e) {
             LogManager.exception(this, e);
         }
     }
+
+    /**
+     * Stream was resumed, upload server discovered before suspension is still valid.
+     */
+    public void onResumed(final ConnectionItem connectionItem) {
+        if (uploadServers.get(connectionItem.getAccount()) == null) {
+            onAuthorized(connectionItem);
+        } else {
+            resumeUploads(connectionItem.getAccount());
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package com.xabber.android.data.extension.httpfileupload;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Request body streaming file content and reporting number of written bytes.
+ */
+class ProgressRequestBody extends RequestBody {
+
+    private static final long SEGMENT_SIZE = 8 * 1024;
+
+    interface ProgressListener {
+        /**
+         * Called from the OkHttp thread after each written segment.
+         */
+        void onProgress(long bytesWritten, long contentLength);
+    }
+
+    private final MediaType contentType;
+    private final File file;
+    private final ProgressListener listener;
+
+    ProgressRequestBody(MediaType contentType, File file, ProgressListener listener) {
+        this.contentType = contentType;
+        this.file = file;
+        this.listener = listener;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return file.length();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        long contentLength = contentLength();
+        Source source = Okio.source(file);
+        try {
+            long bytesWritten = 0;
+            long read;
+            while ((read = source.read(sink.buffer(), SEGMENT_SIZE)) != -1) {
+                sink.flush();
+                bytesWritten += read;
+                listener.onProgress(bytesWritten, contentLength);
+            }
+        } finally {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.xabber.android.data.extension.httpfileupload;
+
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+
+/**
+ * Upload progress of the file message was changed.
+ */
+public class UploadProgressEvent {
+
+    private final AccountJid account;
+    private final UserJid user;
+    private final String uniqueId;
+
+    public UploadProgressEvent(AccountJid account, UserJid user, String uniqueId) {
+        this.account = account;
+        this.user = user;
+        this.uniqueId = uniqueId;
+    }
+
+    public AccountJid getAccount() {
+        return account;
+    }
+
+    public UserJid getUser() {
+        return user;
+    }
+
+    public String getUniqueId() {
+        return uniqueId;
+    }
+}
@@ -8,6 +8,7 @@ import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.AccountSyncInfo;
 import com.xabber.android.data.database.messagerealm.MessageItem;
 import com.xabber.android.data.database.messagerealm.SyncInfo;
 import com.xabber.android.data.entity.AccountJid;
@@ -18,9 +19,8 @@ import com.xabber.android.data.extension.otr.OTRManager;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.AbstractChat;
 import com.xabber.android.data.message.MessageManager;
+import com.xabber.android.data.message.search.MessageSearchManager;
 import com.xabber.android.data.roster.OnRosterReceivedListener;
-import com.xabber.android.data.roster.RosterContact;
-import com.xabber.android.data.roster.RosterManager;
 
 import net.java.otr4j.io.SerializationUtils;
 import net.java.otr4j.io.messages.PlainTextMessage;
@@ -32,14 +32,18 @@ import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.tcp.XMPPTCPConnection;
 import org.jivesoftware.smackx.delay.packet.DelayInformation;
 import org.jivesoftware.smackx.forward.packet.Forwarded;
+import org.jxmpp.jid.Jid;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -52,6 +56,7 @@ public class MamManager implements OnRosterReceivedListener {
     public static final int SYNC_INTERVAL_MINUTES = 5;
 
     public static int PAGE_SIZE = AbstractChat.PRELOADED_MESSAGES;
+    private static final int ACCOUNT_PAGE_SIZE = 100;
 
     private Map<AccountJid, Boolean> supportedByAccount;
 
@@ -75,19 +80,14 @@ public class MamManager implements OnRosterReceivedListener {
     @Override
     public void onRosterReceived(final AccountItem accountItem) {
         LogManager.i(this, "onRosterReceived " + accountItem.getAccount());
-        Application.getInstance().runOnUiThread(new Runnable() {
+        if (accountItem.getLoadHistorySettings() != LoadHistorySettings.all) {
+            return;
+        }
+
+        Application.getInstance().runInBackground(new Runnable() {
             @Override
             public void run() {
-                if (accountItem.getLoadHistorySettings() != LoadHistorySettings.all) {
-                    return;
-                }
-
-                Collection<RosterContact> contacts = RosterManager.getInstance()
-                        .getAccountRosterContacts(accountItem.getAccount());
-                for (RosterContact contact : contacts) {
-                    requestLastHistory(MessageManager.getInstance()
-                            .getOrCreateChat(contact.getAccount(), contact.getUser()));
-                }
+                syncAccountHistory(accountItem);
             }
         });
     }
@@ -170,15 +170,6 @@ public class MamManager implements OnRosterReceivedListener {
         });
     }
 
-    private void requestLastHistory(final AbstractChat chat) {
-        Application.getInstance().runInBackground(new Runnable() {
-            @Override
-            public void run() {
-                getLastHistory(chat, true);
-            }
-        });
-    }
-
     private boolean isTimeToRefreshHistory(AbstractChat chat) {
         return chat.getLastSyncedTime() != null
                 && TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - chat.getLastSyncedTime().getTime())
@@ -239,6 +230,185 @@ public class MamManager implements OnRosterReceivedListener {
         EventBus.getDefault().post(new LastHistoryLoadFinishedEvent(chat));
     }
 
+    /**
+     * Loads messages of all chats that were archived after the last account sync.
+     * <p/>
+     * On the first sync only the last page of archive is loaded, previous history
+     * of each chat is loaded on demand. Later syncs page through the whole archive
+     * after stored position. Messages are saved to their chats and chats are created
+     * for users who sent or received new messages.
+     */
+    @SuppressWarnings("WeakerAccess")
+    void syncAccountHistory(AccountItem accountItem) {
+        final AccountJid account = accountItem.getAccount();
+
+        XMPPTCPConnection connection = accountItem.getConnection();
+        if (!connection.isAuthenticated()) {
+            return;
+        }
+
+        if (!checkSupport(accountItem)) {
+            return;
+        }
+
+        org.jivesoftware.smackx.mam.MamManager mamManager
+                = org.jivesoftware.smackx.mam.MamManager.getInstanceFor(connection);
+
+        String lastMessageMamId;
+        {
+            Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+            AccountSyncInfo accountSyncInfo = realm.where(AccountSyncInfo.class)
+                    .equalTo(AccountSyncInfo.FIELD_ACCOUNT, account.toString())
+                    .findFirst();
+            lastMessageMamId = accountSyncInfo == null ? null : accountSyncInfo.getLastMessageMamId();
+            realm.close();
+        }
+        final boolean incremental = lastMessageMamId != null;
+
+        // positions known to be at or past the account position this sync started from,
+        // only chats synchronized up to one of them can be moved with the account
+        final Set<String> alignedMamIds = new HashSet<>();
+        if (incremental) {
+            alignedMamIds.add(lastMessageMamId);
+        }
+
+        final Set<UserJid> users = new HashSet<>();
+        int pages = 0;
+        int messages = 0;
+        while (true) {
+            final org.jivesoftware.smackx.mam.MamManager.MamQueryResult mamQueryResult;
+            try {
+                if (lastMessageMamId == null) {
+                    mamQueryResult = mamManager.pageBefore(null, "", ACCOUNT_PAGE_SIZE);
+                } else {
+                    mamQueryResult = mamManager.pageAfter(null, lastMessageMamId, ACCOUNT_PAGE_SIZE);
+                }
+            } catch (SmackException.NotLoggedInException | InterruptedException
+                    | SmackException.NotConnectedException | SmackException.NoResponseException
+                    | XMPPException.XMPPErrorException e) {
+                LogManager.exception(this, e);
+                break;
+            }
+            pages++;
+            messages += mamQueryResult.forwardedMessages.size();
+
+            String pageLastMamId = mamQueryResult.mamFin.getRSMSet() == null
+                    ? null : mamQueryResult.mamFin.getRSMSet().getLast();
+
+            Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+            Map<UserJid, List<Forwarded>> forwardedByUser
+                    = groupByUser(account, mamQueryResult.forwardedMessages);
+            for (Map.Entry<UserJid, List<Forwarded>> entry : forwardedByUser.entrySet()) {
+                UserJid user = entry.getKey();
+                syncMessages(realm, account, user, getMessageItems(entry.getValue(), account, user));
+            }
+            users.addAll(forwardedByUser.keySet());
+            if (incremental && pageLastMamId != null) {
+                advanceLastHistorySyncInfos(realm, account, alignedMamIds, pageLastMamId);
+                alignedMamIds.add(pageLastMamId);
+            }
+            if (pageLastMamId != null) {
+                lastMessageMamId = pageLastMamId;
+                saveAccountSyncInfo(realm, account, lastMessageMamId);
+            }
+            realm.close();
+
+            if (!incremental || pageLastMamId == null || mamQueryResult.mamFin.isComplete()
+                    || mamQueryResult.forwardedMessages.isEmpty()) {
+                break;
+            }
+        }
+
+        LogManager.i(this, "Account history sync " + account + ": " + messages
+                + " messages in " + pages + " pages for " + users.size() + " chats");
+
+        if (users.isEmpty()) {
+            return;
+        }
+
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                for (UserJid user : users) {
+                    MessageManager.getInstance().getOrCreateChat(account, user);
+                }
+            }
+        });
+    }
+
+    /**
+     * Groups archived messages by the other party of chat. Group chat messages are skipped.
+     */
+    private Map<UserJid, List<Forwarded>> groupByUser(AccountJid account, List<Forwarded> forwardedMessages) {
+        Map<UserJid, List<Forwarded>> forwardedByUser = new HashMap<>();
+        for (Forwarded forwarded : forwardedMessages) {
+            if (!(forwarded.getForwardedStanza() instanceof Message)) {
+                continue;
+            }
+            Message message = (Message) forwarded.getForwardedStanza();
+            if (message.getType() == Message.Type.groupchat) {
+                continue;
+            }
+
+            Jid from = message.getFrom();
+            Jid user = from != null && from.asBareJid().equals(account.getFullJid().asBareJid())
+                    ? message.getTo() : from;
+            if (user == null) {
+                continue;
+            }
+
+            UserJid userJid;
+            try {
+                userJid = UserJid.from(user.asBareJid());
+            } catch (UserJid.UserJidCreateException e) {
+                LogManager.exception(this, e);
+                continue;
+            }
+
+            List<Forwarded> userForwarded = forwardedByUser.get(userJid);
+            if (userForwarded == null) {
+                userForwarded = new ArrayList<>();
+                forwardedByUser.put(userJid, userForwarded);
+            }
+            userForwarded.add(forwarded);
+        }
+        return forwardedByUser;
+    }
+
+    /**
+     * Moves position of the last history of chats that were synchronized up to one of
+     * aligned positions, as all their messages up to specified one are already loaded.
+     * Positions of other chats may be behind the account position with messages
+     * between them not loaded yet, so they are not changed.
+     */
+    private void advanceLastHistorySyncInfos(Realm realm, AccountJid account,
+                                             Set<String> alignedMamIds, String lastMessageMamId) {
+        RealmResults<SyncInfo> syncInfos = realm.where(SyncInfo.class)
+                .equalTo(SyncInfo.FIELD_ACCOUNT, account.toString())
+                .in(SyncInfo.FIELD_LAST_MESSAGE_MAM_ID,
+                        alignedMamIds.toArray(new String[alignedMamIds.size()]))
+                .findAll();
+        if (syncInfos.isEmpty()) {
+            return;
+        }
+
+        realm.beginTransaction();
+        for (SyncInfo syncInfo : new ArrayList<>(syncInfos)) {
+            syncInfo.setLastMessageMamId(lastMessageMamId);
+        }
+        realm.commitTransaction();
+    }
+
+    private void saveAccountSyncInfo(Realm realm, AccountJid account, String lastMessageMamId) {
+        AccountSyncInfo accountSyncInfo = new AccountSyncInfo();
+        accountSyncInfo.setAccount(account);
+        accountSyncInfo.setLastMessageMamId(lastMessageMamId);
+
+        realm.beginTransaction();
+        realm.copyToRealmOrUpdate(accountSyncInfo);
+        realm.commitTransaction();
+    }
+
     public void setRemoteHistoryCompletelyLoaded(AbstractChat chat) {
         LogManager.i(this, "setRemoteHistoryCompletelyLoaded " + chat.getUser());
 
@@ -273,13 +443,15 @@ public class MamManager implements OnRosterReceivedListener {
 
         Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
         updateLastHistorySyncInfo(realm, chat, mamQueryResult);
-        syncMessages(realm, chat, getMessageItems(mamQueryResult, chat));
+        syncMessages(realm, chat.getAccount(), chat.getUser(),
+                getMessageItems(mamQueryResult.forwardedMessages, chat.getAccount(), chat.getUser()));
         realm.close();
 
         return receivedMessagesCount;
     }
 
-    private void syncMessages(Realm realm, AbstractChat chat, final Collection<MessageItem> messagesFromServer) {
+    private void syncMessages(Realm realm, AccountJid account, UserJid user,
+                              final Collection<MessageItem> messagesFromServer) {
 
         if (messagesFromServer == null || messagesFromServer.isEmpty()) {
             return;
@@ -288,79 +460,26 @@ public class MamManager implements OnRosterReceivedListener {
         LogManager.i(this, "syncMessages: " + messagesFromServer.size());
 
         RealmResults<MessageItem> localMessages = realm.where(MessageItem.class)
-                .equalTo(MessageItem.Fields.ACCOUNT, chat.getAccount().toString())
-                .equalTo(MessageItem.Fields.USER, chat.getUser().toString())
+                .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
+                .equalTo(MessageItem.Fields.USER, user.toString())
                 .findAll();
 
+        MessageDeduplicator deduplicator = new MessageDeduplicator(localMessages, messagesFromServer);
+
+        int duplicatesCount = 0;
         Iterator<MessageItem> iterator = messagesFromServer.iterator();
         while (iterator.hasNext()) {
-            MessageItem remoteMessage = iterator.next();
-
-            // assume that Stanza ID could be not unique
-            if (localMessages.where()
-                    .equalTo(MessageItem.Fields.STANZA_ID, remoteMessage.getStanzaId())
-                    .equalTo(MessageItem.Fields.TEXT, remoteMessage.getText())
-                    .count() > 0) {
-                LogManager.i(this, "Sync. Removing message with same Stanza ID and text. Remote message:"
-                        + " Text: " + remoteMessage.getText()
-                        + " Timestamp: " + remoteMessage.getTimestamp()
-                        + " Delay Timestamp: " + remoteMessage.getDelayTimestamp()
-                        + " StanzaId: " + remoteMessage.getStanzaId());
-                iterator.remove();
-                continue;
-            }
-
-            Long remoteMessageDelayTimestamp = remoteMessage.getDelayTimestamp();
-            Long remoteMessageTimestamp = remoteMessage.getTimestamp();
-
-            RealmResults<MessageItem> sameTextMessages = localMessages.where()
-                    .equalTo(MessageItem.Fields.TEXT, remoteMessage.getText()).findAll();
-
-            if (isTimeStampSimilar(sameTextMessages, remoteMessageTimestamp)) {
-                LogManager.i(this, "Sync. Found messages with same text and similar remote timestamp. Removing. Remote message:"
-                        + " Text: " + remoteMessage.getText()
-                        + " Timestamp: " + remoteMessage.getTimestamp()
-                        + " Delay Timestamp: " + remoteMessage.getDelayTimestamp()
-                        + " StanzaId: " + remoteMessage.getStanzaId());
+            if (deduplicator.isDuplicate(iterator.next())) {
                 iterator.remove();
-                continue;
-            }
-
-            if (remoteMessageDelayTimestamp != null
-                    && isTimeStampSimilar(sameTextMessages, remoteMessageDelayTimestamp)) {
-                LogManager.i(this, "Sync. Found messages with same text and similar remote delay timestamp. Removing. Remote message:"
-                        + " Text: " + remoteMessage.getText()
-                        + " Timestamp: " + remoteMessage.getTimestamp()
-                        + " Delay Timestamp: " + remoteMessage.getDelayTimestamp()
-                        + " StanzaId: " + remoteMessage.getStanzaId());
-                iterator.remove();
-                continue;
+                duplicatesCount++;
             }
         }
+        LogManager.i(this, "Sync. Removed messages already stored locally: " + duplicatesCount);
 
         realm.beginTransaction();
         realm.copyToRealm(messagesFromServer);
         realm.commitTransaction();
-    }
-
-    private static boolean isTimeStampSimilar(RealmResults<MessageItem> sameTextMessages, long remoteMessageTimestamp) {
-        long start = remoteMessageTimestamp - (1000 * 5);
-        long end = remoteMessageTimestamp + (1000 * 5);
-
-        if (sameTextMessages.where()
-                .between(MessageItem.Fields.TIMESTAMP, start, end)
-                .count() > 0) {
-            LogManager.i(MamManager.class.getSimpleName(), "Sync. Found messages with similar local timestamp");
-            return true;
-        }
-
-        if (sameTextMessages.where()
-                .between(MessageItem.Fields.DELAY_TIMESTAMP, start, end)
-                .count() > 0) {
-            LogManager.i(MamManager.class.getSimpleName(), "Sync. Found messages with similar local delay timestamp.");
-            return true;
-        }
-        return false;
+        MessageSearchManager.getInstance().index(messagesFromServer);
     }
 
     @NonNull
@@ -454,8 +573,9 @@ public class MamManager implements OnRosterReceivedListener {
                 LogManager.i("MAM", "queryArchive finished. fin count expected: " + mamQueryResult.mamFin.getRSMSet().getCount() + " real: " + mamQueryResult.forwardedMessages.size());
 
                 Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-                List<MessageItem> messageItems = getMessageItems(mamQueryResult, chat);
-                syncMessages(realm, chat, messageItems);
+                List<MessageItem> messageItems = getMessageItems(mamQueryResult.forwardedMessages,
+                        chat.getAccount(), chat.getUser());
+                syncMessages(realm, chat.getAccount(), chat.getUser(), messageItems);
                 updatePreviousHistorySyncInfo(realm, chat, mamQueryResult, messageItems);
                 realm.close();
             }
@@ -479,10 +599,11 @@ public class MamManager implements OnRosterReceivedListener {
         realm.commitTransaction();
     }
 
-    private List<MessageItem> getMessageItems(org.jivesoftware.smackx.mam.MamManager.MamQueryResult mamQueryResult, AbstractChat chat) {
+    private List<MessageItem> getMessageItems(List<Forwarded> forwardedMessages,
+                                              AccountJid account, UserJid user) {
         List<MessageItem> messageItems = new ArrayList<>();
 
-        for (Forwarded forwarded : mamQueryResult.forwardedMessages) {
+        for (Forwarded forwarded : forwardedMessages) {
             if (!(forwarded.getForwardedStanza() instanceof Message)) {
                 continue;
             }
@@ -506,7 +627,7 @@ public class MamManager implements OnRosterReceivedListener {
                     encrypted = true;
                     try {
                         // this transforming just decrypt message if have keys. No action as injectMessage or something else
-                        body = OTRManager.getInstance().transformReceivingIfSessionExist(chat.getAccount(), chat.getUser(), body);
+                        body = OTRManager.getInstance().transformReceivingIfSessionExist(account, user, body);
                         if (OTRManager.getInstance().isEncrypted(body)) {
                             continue;
                         }
@@ -517,13 +638,13 @@ public class MamManager implements OnRosterReceivedListener {
                 else body = ((PlainTextMessage) otrMessage).cleanText;
             }
 
-            boolean incoming = message.getFrom().asBareJid().equals(chat.getUser().getJid().asBareJid());
+            boolean incoming = message.getFrom().asBareJid().equals(user.getJid().asBareJid());
 
             MessageItem messageItem = new MessageItem();
 
-            messageItem.setAccount(chat.getAccount());
-            messageItem.setUser(chat.getUser());
-            messageItem.setResource(chat.getUser().getJid().getResourceOrNull());
+            messageItem.setAccount(account);
+            messageItem.setUser(user);
+            messageItem.setResource(user.getJid().getResourceOrNull());
             messageItem.setText(body);
             messageItem.setTimestamp(delayInformation.getStamp().getTime());
             if (messageDelay != null) {
@@ -598,8 +719,9 @@ public class MamManager implements OnRosterReceivedListener {
                 + mamQueryResult.forwardedMessages.size());
 
         Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-        List<MessageItem> messageItems = getMessageItems(mamQueryResult, chat);
-        syncMessages(realm, chat, messageItems);
+        List<MessageItem> messageItems = getMessageItems(mamQueryResult.forwardedMessages,
+                chat.getAccount(), chat.getUser());
+        syncMessages(realm, chat.getAccount(), chat.getUser(), messageItems);
         updatePreviousHistorySyncInfo(realm, chat, mamQueryResult, messageItems);
         realm.close();
     }
@@ -0,0 +1,157 @@
+package com.xabber.android.data.extension.mam;
+
+import android.support.annotation.Nullable;
+
+import com.xabber.android.data.database.messagerealm.MessageItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.realm.RealmResults;
+
+/**
+ * Finds messages received from archive that are already stored locally.
+ * <p/>
+ * Local messages are loaded once per page: ones with the same stanza ids
+ * and ones with timestamps in the time range of the page.
+ * Remote message is a duplicate if there is local message with
+ * <ul>
+ * <li>the same stanza id and text or</li>
+ * <li>the same text and timestamp or delay timestamp differs from remote timestamp
+ * or delay timestamp for no more than {@link #SIMILAR_TIME_MILLIS}.</li>
+ * </ul>
+ */
+class MessageDeduplicator {
+
+    private static final long SIMILAR_TIME_MILLIS = 1000 * 5;
+
+    /**
+     * Stanza id and text pairs of local messages.
+     */
+    private final Set<List<String>> stanzaIdsWithText;
+
+    /**
+     * Local message texts with their timestamps by {@link #getBucket(long)} of timestamp.
+     */
+    private final Map<Long, List<TimedText>> textsByBucket;
+
+    /**
+     * @param localMessages all local messages of the chat.
+     */
+    MessageDeduplicator(RealmResults<MessageItem> localMessages,
+                        Collection<MessageItem> remoteMessages) {
+        stanzaIdsWithText = new HashSet<>();
+        textsByBucket = new HashMap<>();
+
+        Set<String> stanzaIds = new LinkedHashSet<>();
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (MessageItem remoteMessage : remoteMessages) {
+            stanzaIds.add(remoteMessage.getStanzaId());
+            for (Long time : Arrays.asList(remoteMessage.getTimestamp(),
+                    remoteMessage.getDelayTimestamp())) {
+                if (time != null) {
+                    start = Math.min(start, time);
+                    end = Math.max(end, time);
+                }
+            }
+        }
+
+        if (!stanzaIds.isEmpty()) {
+            RealmResults<MessageItem> sameStanzaIdMessages = localMessages.where()
+                    .in(MessageItem.Fields.STANZA_ID, stanzaIds.toArray(new String[stanzaIds.size()]))
+                    .findAll();
+            for (MessageItem messageItem : sameStanzaIdMessages) {
+                stanzaIdsWithText.add(Arrays.asList(messageItem.getStanzaId(), messageItem.getText()));
+            }
+        }
+
+        if (start <= end) {
+            start -= SIMILAR_TIME_MILLIS;
+            end += SIMILAR_TIME_MILLIS;
+            RealmResults<MessageItem> sameTimeMessages = localMessages.where()
+                    .beginGroup()
+                    .between(MessageItem.Fields.TIMESTAMP, start, end)
+                    .or()
+                    .between(MessageItem.Fields.DELAY_TIMESTAMP, start, end)
+                    .endGroup()
+                    .findAll();
+            for (MessageItem messageItem : sameTimeMessages) {
+                String text = messageItem.getText();
+                addTimedText(text, messageItem.getTimestamp());
+                addTimedText(text, messageItem.getDelayTimestamp());
+            }
+        }
+    }
+
+    private void addTimedText(String text, Long time) {
+        if (time == null) {
+            return;
+        }
+        long bucket = getBucket(time);
+        List<TimedText> texts = textsByBucket.get(bucket);
+        if (texts == null) {
+            texts = new ArrayList<>();
+            textsByBucket.put(bucket, texts);
+        }
+        texts.add(new TimedText(text, time));
+    }
+
+    private static long getBucket(long time) {
+        return time / SIMILAR_TIME_MILLIS;
+    }
+
+    /**
+     * @return whether remote message is already stored locally.
+     */
+    boolean isDuplicate(MessageItem remoteMessage) {
+        String text = remoteMessage.getText();
+
+        if (stanzaIdsWithText.contains(Arrays.asList(remoteMessage.getStanzaId(), text))) {
+            return true;
+        }
+
+        Long timestamp = remoteMessage.getTimestamp();
+        if (timestamp != null && hasSimilarText(text, timestamp)) {
+            return true;
+        }
+
+        Long delayTimestamp = remoteMessage.getDelayTimestamp();
+        return delayTimestamp != null && hasSimilarText(text, delayTimestamp);
+    }
+
+    private boolean hasSimilarText(@Nullable String text, long time) {
+        long lastBucket = getBucket(time + SIMILAR_TIME_MILLIS);
+        for (long bucket = getBucket(time - SIMILAR_TIME_MILLIS); bucket <= lastBucket; bucket++) {
+            List<TimedText> texts = textsByBucket.get(bucket);
+            if (texts == null) {
+                continue;
+            }
+            for (TimedText timedText : texts) {
+                if (Math.abs(timedText.time - time) <= SIMILAR_TIME_MILLIS
+                        && (text == null ? timedText.text == null : text.equals(timedText.text))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static class TimedText {
+        @Nullable
+        final String text;
+        final long time;
+
+        TimedText(@Nullable String text, long time) {
+            this.text = text;
+            this.time = time;
+        }
+    }
+}
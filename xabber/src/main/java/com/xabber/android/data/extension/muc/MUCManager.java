@@ -19,12 +19,14 @@ import android.database.Cursor;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.StanzaSender;
 import com.xabber.android.data.connection.listeners.OnPacketListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.sqlite.RoomTable;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
@@ -59,6 +61,7 @@ import org.jxmpp.jid.parts.Resourcepart;
 import org.jxmpp.stringprep.XmppStringprepException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -69,7 +72,7 @@ import java.util.Collections;
  *
  * @author alexander.ivanov
  */
-public class MUCManager implements OnLoadListener, OnPacketListener {
+public class MUCManager implements OnLoadDependentListener, OnPacketListener {
 
     private static MUCManager instance;
 
@@ -89,6 +92,11 @@ public class MUCManager implements OnLoadListener, OnPacketListener {
         authorizationErrorProvider = new EntityNotificationProvider<>(R.drawable.ic_stat_error);
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance(), AccountManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         Application.getInstance().runInBackground(new Runnable() {
@@ -180,10 +188,16 @@ public class MUCManager implements OnLoadListener, OnPacketListener {
     }
 
     /**
+     * Can be called from any thread.
+     *
      * @return Whether there is such room.
      */
     public boolean hasRoom(AccountJid account, EntityBareJid room) {
-        return getRoomChat(account, room) != null;
+        try {
+            return MessageManager.getInstance().hasRoomChat(account, UserJid.from(room));
+        } catch (UserJid.UserJidCreateException e) {
+            return false;
+        }
     }
 
     public boolean isMucPrivateChat(AccountJid account, UserJid user) {
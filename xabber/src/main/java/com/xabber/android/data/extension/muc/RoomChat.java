@@ -15,7 +15,6 @@
 package com.xabber.android.data.extension.muc;
 
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
@@ -28,6 +27,7 @@ import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
 import com.xabber.android.data.message.AbstractChat;
 import com.xabber.android.data.message.ChatAction;
+import com.xabber.android.data.message.MessageWriter;
 import com.xabber.android.data.message.NewIncomingMessageEvent;
 import com.xabber.android.data.message.chat.ChatManager;
 import com.xabber.android.data.roster.RosterManager;
@@ -258,10 +258,9 @@ public class RoomChat extends AbstractChat {
                     notify = false;
                 }
 
-                String messageUId = getMessageIdIfInHistory(stanzaId, text);
-                if (messageUId != null) {
+                if (isInHistory(stanzaId, text)) {
                     if (isSelf(resource)) {
-                        markMessageAsDelivered(messageUId);
+                        MessageWriter.getInstance().markAsDelivered(stanzaId);
                     }
                     return true;
                 }
@@ -332,34 +331,20 @@ public class RoomChat extends AbstractChat {
         return true;
     }
 
-    private void markMessageAsDelivered(final String messageUId) {
-        Application.getInstance().runInBackground(new Runnable() {
-            @Override
-            public void run() {
-                Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-                realm.executeTransaction(new Realm.Transaction() {
-                    @Override
-                    public void execute(Realm realm) {
-                        MessageItem message = realm.where(MessageItem.class)
-                                .equalTo(MessageItem.Fields.UNIQUE_ID, messageUId).findFirst();
-                        message.setDelivered(true);
-                    }
-                });
-            }
-        });
-    }
-
-    @Nullable
-    private String getMessageIdIfInHistory(String stanzaId, String body) {
-        if (stanzaId == null) return null;
+    /**
+     * @return Whether message was already saved or is waiting to be saved.
+     */
+    private boolean isInHistory(String stanzaId, String body) {
+        if (stanzaId == null) return false;
+        if (MessageWriter.getInstance().isSaving(account, user, stanzaId, body)) return true;
         Realm realm = MessageDatabaseManager.getInstance().getRealmUiThread();
-        MessageItem message = realm
+        return realm
                 .where(MessageItem.class)
+                .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
+                .equalTo(MessageItem.Fields.USER, user.toString())
                 .equalTo(MessageItem.Fields.TEXT, body)
                 .equalTo(MessageItem.Fields.STANZA_ID, stanzaId)
-                .findFirst();
-        if (message != null) return message.getUniqueId();
-        else return null;
+                .findFirst() != null;
     }
 
     /**
@@ -21,8 +21,10 @@ import android.support.annotation.Nullable;
 import com.xabber.android.BuildConfig;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.listeners.OnConnectedListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.extension.carbons.CarbonManager;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.NetworkException;
@@ -76,6 +78,8 @@ import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -90,7 +94,7 @@ import java.util.concurrent.ThreadFactory;
  * @author alexander.ivanov
  */
 public class OTRManager implements OtrEngineHost, OtrEngineListener,
-        OnLoadListener, OnAccountAddedListener, OnAccountRemovedListener, OnCloseListener, OnConnectedListener {
+        OnLoadDependentListener, OnAccountAddedListener, OnAccountRemovedListener, OnCloseListener, OnConnectedListener {
 
     private static OTRManager instance;
     private static Map<SecurityOtrMode, OtrPolicy> POLICIES;
@@ -153,6 +157,11 @@ public class OTRManager implements OtrEngineHost, OtrEngineListener,
                 });
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         final NestedNestedMaps<String, Boolean> fingerprints = new NestedNestedMaps<>();
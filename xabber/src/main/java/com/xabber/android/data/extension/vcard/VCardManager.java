@@ -18,6 +18,7 @@ import android.database.Cursor;
 
 import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.account.AccountItem;
@@ -25,7 +26,8 @@ import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.account.listeners.OnAccountRemovedListener;
 import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.ConnectionManager;
-import com.xabber.android.data.connection.listeners.OnPacketListener;
+import com.xabber.android.data.connection.listeners.OnBackgroundPacketListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.sqlite.VCardTable;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
@@ -33,6 +35,7 @@ import com.xabber.android.data.extension.avatar.AvatarManager;
 import com.xabber.android.data.extension.blocking.BlockingManager;
 import com.xabber.android.data.extension.muc.MUCManager;
 import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.message.MessageManager;
 import com.xabber.android.data.roster.OnRosterChangedListener;
 import com.xabber.android.data.roster.OnRosterReceivedListener;
 import com.xabber.android.data.roster.PresenceManager;
@@ -56,10 +59,12 @@ import org.jxmpp.jid.impl.JidCreate;
 import org.jxmpp.stringprep.XmppStringprepException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
@@ -67,12 +72,17 @@ import java.util.concurrent.ConcurrentSkipListSet;
  *
  * @author alexander.ivanov
  */
-public class VCardManager implements OnLoadListener, OnPacketListener,
+public class VCardManager implements OnLoadDependentListener, OnBackgroundPacketListener,
         OnRosterReceivedListener, OnAccountRemovedListener {
 
     private static final StructuredName EMPTY_STRUCTURED_NAME = new StructuredName(
             null, null, null, null, null);
 
+    /**
+     * Received names are written to database once per this interval.
+     */
+    private static final long WRITE_DELAY_MILLIS = 1000;
+
     /**
      * Nick and formatted names for the users.
      */
@@ -84,6 +94,14 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
      */
     private final ArrayList<AccountJid> accountRequested;
 
+    private final VCardScheduler scheduler;
+
+    /**
+     * Received names waiting to be written to database. Used from UI thread.
+     */
+    private Map<String, StructuredName> pendingNames;
+    private boolean writeScheduled;
+
     private static VCardManager instance;
 
     @SuppressWarnings("WeakerAccess")
@@ -100,8 +118,20 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
     }
 
     private VCardManager() {
-        names = new HashMap<>();
+        names = new ConcurrentHashMap<>();
         accountRequested = new ArrayList<>();
+        pendingNames = new HashMap<>();
+        scheduler = new VCardScheduler(new VCardScheduler.Loader() {
+            @Override
+            public void load(AccountJid account, Jid jid) {
+                getVCard(account, jid);
+            }
+        });
+    }
+
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance());
     }
 
     @Override
@@ -168,6 +198,7 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
     @Override
     public void onAccountRemoved(AccountItem accountItem) {
         accountRequested.remove(accountItem.getAccount());
+        scheduler.cancel(accountItem.getAccount());
     }
 
     public void requestByUser(final AccountJid account, final Jid jid) {
@@ -180,15 +211,19 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
     }
 
     /**
-     * Requests vCard.
+     * Requests vCard. Requests for the user of the visible chat are loaded first.
      */
     public void request(final AccountJid account, final Jid jid) {
-        Application.getInstance().runInBackground(new Runnable() {
-            @Override
-            public void run() {
-                getVCard(account, jid);
-            }
-        });
+        VCardScheduler.Priority priority = MessageManager.getInstance().isVisibleChat(account, jid.asBareJid())
+                ? VCardScheduler.Priority.chat : VCardScheduler.Priority.background;
+        scheduler.request(account, jid, priority);
+    }
+
+    /**
+     * Contact was shown in the contact list, its waiting request should be loaded earlier.
+     */
+    public void onContactShown(AccountJid account, UserJid user) {
+        scheduler.promote(account, user.getJid(), VCardScheduler.Priority.visible);
     }
 
     /**
@@ -257,12 +292,7 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
                 .getManagers(OnRosterChangedListener.class)) {
             listener.onContactStructuredInfoChanged(rosterContact, name);
         }
-        Application.getInstance().runInBackground(new Runnable() {
-            @Override
-            public void run() {
-                VCardTable.getInstance().write(bareAddress.toString(), name);
-            }
-        });
+        writeName(bareAddress.toString(), name);
         if (vCard.getFrom() == null) { // account it self
             AccountManager.getInstance().onAccountChanged(account);
         } else {
@@ -278,6 +308,31 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
         }
     }
 
+    /**
+     * Collects names to be written in single transaction.
+     */
+    private void writeName(String bareAddress, StructuredName name) {
+        pendingNames.put(bareAddress, name);
+        if (writeScheduled) {
+            return;
+        }
+        writeScheduled = true;
+        Application.getInstance().runOnUiThreadDelay(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, StructuredName> names = pendingNames;
+                pendingNames = new HashMap<>();
+                writeScheduled = false;
+                Application.getInstance().runInBackground(new Runnable() {
+                    @Override
+                    public void run() {
+                        VCardTable.getInstance().write(names);
+                    }
+                });
+            }
+        }, WRITE_DELAY_MILLIS);
+    }
+
     @SuppressWarnings("WeakerAccess")
     void onVCardFailed(final AccountJid account, final Jid bareAddress) {
         for (OnVCardListener listener : Application.getInstance().getUIListeners(OnVCardListener.class)) {
@@ -312,7 +367,8 @@ public class VCardManager implements OnLoadListener, OnPacketListener,
                 return;
             }
 
-            Jid addressForVcard = from;
+            // vCard of room occupant is requested by full jid, of other users by bare one
+            Jid addressForVcard = from.asBareJid();
 
             if (MUCManager.getInstance().hasRoom(account, from.asEntityBareJidIfPossible())) {
                 addressForVcard = from;
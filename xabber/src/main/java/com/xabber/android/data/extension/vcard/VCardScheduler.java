@@ -0,0 +1,207 @@
+package com.xabber.android.data.extension.vcard;
+
+import android.support.annotation.NonNull;
+
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.log.LogManager;
+
+import org.jxmpp.jid.Jid;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads vCards in background on behalf of {@link VCardManager}.
+ * <p/>
+ * Each account has queue for every {@link Priority} and at most {@link #MAX_IN_FLIGHT}
+ * requests loaded at once. Repeated requests for the same jid are ignored while
+ * previous one is waiting or loading, request with higher priority moves waiting one.
+ */
+class VCardScheduler {
+
+    private static final String LOG_TAG = VCardScheduler.class.getSimpleName();
+
+    private static final int MAX_IN_FLIGHT = 2;
+
+    /**
+     * Priorities of requests, from the highest.
+     */
+    enum Priority {
+        /**
+         * Chat with the user is open.
+         */
+        chat,
+        /**
+         * Contact is shown in the contact list.
+         */
+        visible,
+        /**
+         * All other requests.
+         */
+        background
+    }
+
+    interface Loader {
+        /**
+         * Loads vCard, called from scheduler thread.
+         */
+        void load(AccountJid account, Jid jid);
+    }
+
+    private final Loader loader;
+    private final ExecutorService executor;
+    private final Map<AccountJid, AccountQueue> queues;
+
+    VCardScheduler(Loader loader) {
+        this.loader = loader;
+        queues = new HashMap<>();
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "VCard loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    synchronized void request(AccountJid account, Jid jid, Priority priority) {
+        AccountQueue queue = queues.get(account);
+        if (queue == null) {
+            queue = new AccountQueue();
+            queues.put(account, queue);
+        }
+
+        Request request = queue.requests.get(jid);
+        if (request != null) {
+            promote(queue, request, priority);
+            return;
+        }
+
+        request = new Request(account, jid, priority);
+        queue.requests.put(jid, request);
+        queue.waiting[priority.ordinal()].addLast(request);
+        loadNext(queue);
+    }
+
+    /**
+     * Raises priority of the waiting request, if any. New request is not created.
+     */
+    synchronized void promote(AccountJid account, Jid jid, Priority priority) {
+        AccountQueue queue = queues.get(account);
+        if (queue == null) {
+            return;
+        }
+        Request request = queue.requests.get(jid);
+        if (request != null) {
+            promote(queue, request, priority);
+        }
+    }
+
+    private void promote(AccountQueue queue, Request request, Priority priority) {
+        if (request.loading || priority.ordinal() >= request.priority.ordinal()) {
+            return;
+        }
+        queue.waiting[request.priority.ordinal()].remove(request);
+        request.priority = priority;
+        queue.waiting[priority.ordinal()].addLast(request);
+    }
+
+    /**
+     * Removes waiting requests of the account.
+     */
+    synchronized void cancel(AccountJid account) {
+        AccountQueue queue = queues.get(account);
+        if (queue == null) {
+            return;
+        }
+        for (ArrayDeque<Request> waiting : queue.waiting) {
+            for (Request request : waiting) {
+                queue.requests.remove(request.jid);
+            }
+            waiting.clear();
+        }
+    }
+
+    private void loadNext(AccountQueue queue) {
+        while (queue.loading < MAX_IN_FLIGHT) {
+            final Request request = queue.poll();
+            if (request == null) {
+                return;
+            }
+            request.loading = true;
+            queue.loading++;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    load(request);
+                }
+            });
+        }
+    }
+
+    private void load(Request request) {
+        try {
+            loader.load(request.account, request.jid);
+        } catch (RuntimeException e) {
+            LogManager.exception(LOG_TAG, e);
+        }
+
+        synchronized (this) {
+            AccountQueue queue = queues.get(request.account);
+            queue.requests.remove(request.jid);
+            queue.loading--;
+            loadNext(queue);
+        }
+    }
+
+    private static class Request {
+        final AccountJid account;
+        final Jid jid;
+        Priority priority;
+        boolean loading;
+
+        Request(AccountJid account, Jid jid, Priority priority) {
+            this.account = account;
+            this.jid = jid;
+            this.priority = priority;
+        }
+    }
+
+    private static class AccountQueue {
+        /**
+         * Waiting and loading requests by jid.
+         */
+        final Map<Jid, Request> requests = new HashMap<>();
+
+        /**
+         * Waiting requests by {@link Priority#ordinal()}.
+         */
+        final ArrayDeque<Request>[] waiting;
+
+        int loading;
+
+        @SuppressWarnings("unchecked")
+        AccountQueue() {
+            waiting = new ArrayDeque[Priority.values().length];
+            for (int index = 0; index < waiting.length; index++) {
+                waiting[index] = new ArrayDeque<>();
+            }
+        }
+
+        Request poll() {
+            for (ArrayDeque<Request> requests : waiting) {
+                Request request = requests.pollFirst();
+                if (request != null) {
+                    return request;
+                }
+            }
+            return null;
+        }
+    }
+
+}
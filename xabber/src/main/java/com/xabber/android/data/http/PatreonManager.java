@@ -3,14 +3,18 @@ package com.xabber.android.data.http;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.SettingsManager;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.RealmManager;
 import com.xabber.android.data.database.realm.PatreonGoalRealm;
 import com.xabber.android.data.database.realm.PatreonRealm;
 import com.xabber.android.data.log.LogManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -28,7 +32,7 @@ import rx.subscriptions.CompositeSubscription;
  * Created by valery.miller on 03.10.17.
  */
 
-public class PatreonManager implements OnLoadListener {
+public class PatreonManager implements OnLoadDependentListener {
 
     private static final String LOG_TAG = PatreonManager.class.getSimpleName();
     private static final int CACHE_LIFETIME = (int) TimeUnit.DAYS.toSeconds(1);
@@ -48,6 +52,11 @@ public class PatreonManager implements OnLoadListener {
         return patreon;
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         this.patreon = loadPatreonFromRealm();
@@ -18,21 +18,90 @@ import com.xabber.android.ui.helper.BatteryHelper;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Writes log to files.
+ * <p/>
+ * Callers only put raw values to the preallocated lock-free ring buffer.
+ * Lines are formatted and written in batches by the writer thread.
+ */
 class FileLog {
-    private OutputStreamWriter streamWriter = null;
     private FastDateFormat dateFormat = null;
-    private DispatchQueue logQueue = null;
-    private File currentFile = null;
+    private volatile File currentFile = null;
     private File networkFile = null;
 
     private static final int LOG_FILE_MAX_SIZE = 8000000; // 8mb
+    private static final long LOG_FILE_MAX_AGE = TimeUnit.DAYS.toMillis(1);
     private static final int LOG_FILE_MAX_COUNT = 16;
+
+    /**
+     * Number of entries in the ring buffer, must be power of two.
+     */
+    private static final int BUFFER_CAPACITY = 8192;
+    private static final int BUFFER_MASK = BUFFER_CAPACITY - 1;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long CRASH_FLUSH_TIMEOUT = 2000;
+    private static final long REOPEN_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    private static final char DEBUG = 'D';
+    private static final char WARNING = 'W';
+    private static final char ERROR = 'E';
+
     private static volatile FileLog Instance = null;
+
+    /**
+     * Preallocated entries. Entry at sequence s is free for producer when its
+     * {@link Entry#sequence} is s and ready for writer when it is s + 1.
+     */
+    private final Entry[] entries;
+
+    /**
+     * Sequence of the next entry to be claimed by producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Sequence of the next entry to be written, used only by writer thread.
+     */
+    private long head;
+
+    /**
+     * All entries before this sequence were written to file.
+     */
+    private volatile long written;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writerThread;
+
+    private FileChannel channel;
+    /**
+     * Time of the last write failure, file is reopened after {@link #REOPEN_DELAY}.
+     */
+    private long channelFailed;
+    private long fileSize;
+    private long fileCreated;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder();
+
     public static FileLog getInstance() {
         FileLog localInstance = Instance;
         if (localInstance == null) {
@@ -48,11 +117,59 @@ class FileLog {
 
     public FileLog() {
         dateFormat = FastDateFormat.getInstance("yyyy-MM-dd_HH-mm-ss", Locale.US);
-        try {
-            logQueue = new DispatchQueue("logQueue");
-            currentFile = createLogFile();
-        } catch (Exception e) {
-            e.printStackTrace();
+        entries = new Entry[BUFFER_CAPACITY];
+        for (int index = 0; index < BUFFER_CAPACITY; index++) {
+            entries[index] = new Entry(index);
+        }
+
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    currentFile = createLogFile();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                writeLoop();
+            }
+        }, "File log writer");
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        installCrashHandler();
+    }
+
+    /**
+     * Writes buffered lines before default handler kills the process.
+     */
+    private void installCrashHandler() {
+        final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable throwable) {
+                put(ERROR, "FileLog", "Uncaught exception in " + thread.getName(), throwable);
+                flush(CRASH_FLUSH_TIMEOUT);
+                if (previous != null) {
+                    previous.uncaughtException(thread, throwable);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until all lines logged before this call are written.
+     */
+    private void flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (written < target && System.currentTimeMillis() < deadline) {
+            LockSupport.unpark(writerThread);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                return;
+            }
         }
     }
 
@@ -72,21 +189,23 @@ class FileLog {
             e.printStackTrace();
         }
         try {
-            if (streamWriter != null) {
-                streamWriter.flush();
-                streamWriter.close();
+            if (channel != null) {
+                writeBuffer();
+                channel.close();
+                channel = null;
             }
             newLogFile.createNewFile();
-            FileOutputStream stream = new FileOutputStream(newLogFile);
-            streamWriter = new OutputStreamWriter(stream);
-            streamWriter.write("-----start log " + dateFormat.format(System.currentTimeMillis())
+            channel = new FileOutputStream(newLogFile).getChannel();
+            fileSize = 0;
+            fileCreated = System.currentTimeMillis();
+            put("-----start log " + dateFormat.format(System.currentTimeMillis())
                     + " " + appName
                     + " " + BuildConfig.VERSION_NAME
                     + " Android " + Build.VERSION.RELEASE
                     + " SDK " + Build.VERSION.SDK_INT
                     + " Battery optimization: " + BatteryHelper.isOptimizingBattery()
                     +  "-----\n");
-            streamWriter.flush();
+            writeBuffer();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -96,22 +215,23 @@ class FileLog {
     }
 
     /*
-        Controls list of log files. Allow only 6 log-files. Each no more than 8 mb size.
+        Controls list of log files. Creates new file if current is too large or too old.
      */
     private void controlFileSize() {
-        // create new file if current file is too large
-        if (currentFile != null) {
-            if (currentFile.length() >= LOG_FILE_MAX_SIZE) {
-                File newFile = createLogFile();
-                if (newFile != null) {
-                    currentFile = newFile;
-                }
+        if (channel == null) {
+            return;
+        }
+        if (fileSize >= LOG_FILE_MAX_SIZE
+                || System.currentTimeMillis() - fileCreated >= LOG_FILE_MAX_AGE) {
+            File newFile = createLogFile();
+            if (newFile != null) {
+                currentFile = newFile;
             }
         }
     }
 
     private void deleteRedundantFiles() {
-        // delete old files if it's more than 6
+        // delete old files if it's more than LOG_FILE_MAX_COUNT
         File sdCard = Application.getInstance().getApplicationContext().getExternalFilesDir(null);
         if (sdCard == null) {
             return;
@@ -131,6 +251,169 @@ class FileLog {
         }
     }
 
+    /**
+     * Claims free entry and publishes values. Drops the line if buffer is full.
+     */
+    private void put(char level, String tag, String message, Throwable throwable) {
+        while (true) {
+            long sequence = tail.get();
+            Entry entry = entries[(int) (sequence & BUFFER_MASK)];
+            long entrySequence = entry.sequence;
+            if (entrySequence == sequence) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    entry.time = System.currentTimeMillis();
+                    entry.level = level;
+                    entry.tag = tag;
+                    entry.message = message;
+                    entry.throwable = throwable;
+                    entry.sequence = sequence + 1;
+                    if (sequence - written >= BUFFER_CAPACITY / 2) {
+                        LockSupport.unpark(writerThread);
+                    }
+                    return;
+                }
+            } else if (entrySequence < sequence) {
+                // writer has not freed this entry yet
+                dropped.incrementAndGet();
+                LockSupport.unpark(writerThread);
+                return;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            if (channel == null && channelFailed != 0
+                    && System.currentTimeMillis() - channelFailed >= REOPEN_DELAY) {
+                reopen();
+            }
+            try {
+                int count = writeEntries();
+                if (count > 0) {
+                    writeBuffer();
+                    written = head;
+                    controlFileSize();
+                } else {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                // lines can't be written, skip them and reopen file later
+                written = head;
+                closeChannel();
+                channelFailed = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private void reopen() {
+        File newFile = createLogFile();
+        if (channel == null) {
+            channelFailed = System.currentTimeMillis();
+        } else {
+            channelFailed = 0;
+            currentFile = newFile;
+        }
+    }
+
+    private void closeChannel() {
+        writeBuffer.clear();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    /**
+     * Formats ready entries to the write buffer and frees them.
+     *
+     * @return number of entries.
+     */
+    private int writeEntries() throws IOException {
+        int count = 0;
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            put(dateFormat.format(System.currentTimeMillis()) + " W/FileLog: " + lost
+                    + " lines dropped\n");
+        }
+        while (true) {
+            Entry entry = entries[(int) (head & BUFFER_MASK)];
+            if (entry.sequence != head + 1) {
+                return count;
+            }
+            try {
+                if (channel != null) {
+                    format(entry);
+                }
+            } finally {
+                entry.tag = null;
+                entry.message = null;
+                entry.throwable = null;
+                entry.sequence = head + BUFFER_CAPACITY;
+                head++;
+            }
+            count++;
+        }
+    }
+
+    private void format(Entry entry) throws IOException {
+        String date = dateFormat.format(entry.time);
+        String separator = entry.level == WARNING ? ": " : "﹕ ";
+        line.setLength(0);
+        line.append(date).append(' ').append(entry.level).append('/').append(entry.tag)
+                .append(separator).append(entry.message).append('\n');
+        put(line);
+
+        Throwable throwable = entry.throwable;
+        if (throwable != null) {
+            line.setLength(0);
+            line.append(date).append(' ').append(entry.level).append('/').append(entry.tag)
+                    .append(separator).append(throwable).append('\n');
+            put(line);
+            for (StackTraceElement element : throwable.getStackTrace()) {
+                line.setLength(0);
+                line.append(date).append(' ').append(entry.level).append('/').append(entry.tag)
+                        .append(separator).append(element).append('\n');
+                put(line);
+            }
+        }
+    }
+
+    /**
+     * Encodes text to the write buffer, writes full buffer to file.
+     */
+    private void put(CharSequence text) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, writeBuffer, true);
+            if (result.isOverflow()) {
+                writeBuffer();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                fileSize += channel.write(writeBuffer);
+            }
+        } finally {
+            writeBuffer.clear();
+        }
+    }
+
     public static String getNetworkLogPath() {
         try {
             File sdCard = Application.getInstance().getApplicationContext().getExternalFilesDir(null);
@@ -148,95 +431,23 @@ class FileLog {
     }
 
     public static void e(final String tag, final String message, final Throwable exception) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/" + tag + "﹕ " + message + "\n");
-                        getInstance().streamWriter.write(exception.toString());
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().put(ERROR, tag, message, exception);
     }
 
     public static void e(final String tag, final String message) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/" + tag + "﹕ " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().put(ERROR, tag, message, null);
     }
 
     public static void e(final String tag, final Throwable e) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/" + tag + "﹕ " + e + "\n");
-                        StackTraceElement[] stack = e.getStackTrace();
-                        for (int a = 0; a < stack.length; a++) {
-                            getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " E/" + tag + "﹕ " + stack[a] + "\n");
-                        }
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        } else {
-            e.printStackTrace();
-        }
+        getInstance().put(ERROR, tag, "", e);
     }
 
     public static void d(final String tag, final String message) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " D/" + tag + "﹕ " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().put(DEBUG, tag, message, null);
     }
 
     public static void w(final String tag, final String message) {
-        getInstance().controlFileSize();
-        if (getInstance().streamWriter != null) {
-            getInstance().logQueue.postRunnable(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        getInstance().streamWriter.write(getInstance().dateFormat.format(System.currentTimeMillis()) + " W/" + tag + ": " + message + "\n");
-                        getInstance().streamWriter.flush();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-        }
+        getInstance().put(WARNING, tag, message, null);
     }
 
     public static void cleanupLogs() {
@@ -259,4 +470,20 @@ class FileLog {
             }
         }
     }
+
+    /**
+     * Preallocated slot of the ring buffer.
+     */
+    private static class Entry {
+        volatile long sequence;
+        long time;
+        char level;
+        String tag;
+        String message;
+        Throwable throwable;
+
+        Entry(long sequence) {
+            this.sequence = sequence;
+        }
+    }
 }
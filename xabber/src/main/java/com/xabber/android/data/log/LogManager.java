@@ -20,7 +20,6 @@ import android.util.Log;
 import com.xabber.android.data.Application;
 import com.xabber.android.data.SettingsManager;
 
-import org.jivesoftware.smack.SmackConfiguration;
 
 import java.io.File;
 import java.io.PrintWriter;
@@ -49,6 +48,7 @@ public class LogManager {
     private LogManager() {
         debuggable = (Application.getInstance().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
 
+        // debugger is enabled for connection only if TrafficInspector is enabled
         System.setProperty("smack.debuggerClass", "com.xabber.android.data.log.SmackDebugger");
 
         onSettingsChanged();
@@ -56,14 +56,6 @@ public class LogManager {
 
     public void onSettingsChanged() {
         fileLog = SettingsManager.fileLog();
-
-        if (debuggable || fileLog) {
-            System.setProperty("smack.debugEnabled", "true");
-            SmackConfiguration.DEBUG = true;
-        } else {
-            System.setProperty("smack.debugEnabled", "false");
-            SmackConfiguration.DEBUG = false;
-        }
     }
 
     private static void dString(String tag, String msg) {
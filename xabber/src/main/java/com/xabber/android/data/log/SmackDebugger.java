@@ -1,21 +1,35 @@
 package com.xabber.android.data.log;
 
+import org.jivesoftware.smack.AbstractXMPPConnection;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.debugger.AbstractDebugger;
 
 import java.io.Reader;
 import java.io.Writer;
 
+/**
+ * Passes traffic of the connection to {@link TrafficInspector}.
+ * <p/>
+ * Created by Smack only for connections with enabled debugger.
+ */
 public class SmackDebugger extends AbstractDebugger {
     private static final String LOG_TAG = "Smack";
 
+    private final String connectionName;
+
     public SmackDebugger(XMPPConnection connection, Writer writer, Reader reader) {
         super(connection, writer, reader);
+        if (connection instanceof AbstractXMPPConnection) {
+            connectionName = ((AbstractXMPPConnection) connection).getConfiguration().getUsername()
+                    + "@" + connection.getXMPPServiceDomain();
+        } else {
+            connectionName = String.valueOf(connection.getXMPPServiceDomain());
+        }
     }
 
     @Override
     protected void log(String logMessage) {
-        LogManager.i(LOG_TAG, logMessage, replaceMessageBody(logMessage));
+        TrafficInspector.getInstance().record(connectionName, logMessage);
     }
 
     @Override
@@ -23,21 +37,4 @@ public class SmackDebugger extends AbstractDebugger {
         LogManager.exception(LOG_TAG, throwable);
     }
 
-    /**
-     * Replace body of message with ***.
-     */
-    private static String replaceMessageBody(String sourceMsg) {
-        if (sourceMsg.contains("</message>")) {
-            try {
-                int s = sourceMsg.indexOf("<body>");
-                int f = sourceMsg.indexOf("</body>");
-                if (s != -1 && f != -1)
-                    return sourceMsg.substring(0, s + 6) + "***" + sourceMsg.substring(f);
-                else return sourceMsg;
-            } catch (Exception e) {
-                return sourceMsg;
-            }
-        } else return sourceMsg;
-    }
-
 }
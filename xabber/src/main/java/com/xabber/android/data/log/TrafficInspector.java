@@ -0,0 +1,230 @@
+package com.xabber.android.data.log;
+
+import com.xabber.android.data.Application;
+import com.xabber.android.data.SettingsManager;
+import com.xabber.android.data.time.FastDateFormat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps recent raw XMPP traffic of each account in memory.
+ * <p/>
+ * Connections are created with {@link SmackDebugger} only while inspector is enabled,
+ * so disabled inspector doesn't touch the traffic at all.
+ * Contents of sensitive elements are hidden when traffic is written to file.
+ */
+public class TrafficInspector {
+
+    /**
+     * Number of entries kept for each account.
+     */
+    private static final int MAX_ENTRIES = 256;
+
+    /**
+     * Longer entries are truncated.
+     */
+    private static final int MAX_ENTRY_LENGTH = 4096;
+
+    /**
+     * Elements with message text or credentials.
+     */
+    private static final String[] REDACTED_ELEMENTS = new String[] {
+            "body", "auth", "response", "challenge", "success", "password",
+    };
+
+    private static final String REDACTED = "***";
+
+    private static final TrafficInspector instance = new TrafficInspector();
+
+    private final ConcurrentHashMap<String, TrafficBuffer> buffers;
+    private final FastDateFormat dateFormat;
+
+    private volatile boolean enabled;
+    private volatile int sampling;
+
+    public static TrafficInspector getInstance() {
+        return instance;
+    }
+
+    private TrafficInspector() {
+        buffers = new ConcurrentHashMap<>();
+        dateFormat = FastDateFormat.getInstance("yyyy-MM-dd_HH-mm-ss.SSS", Locale.US);
+        enabled = SettingsManager.debugTrafficInspector();
+        sampling = Math.max(1, SettingsManager.debugTrafficSampling());
+    }
+
+    public void onSettingsChanged() {
+        enabled = SettingsManager.debugTrafficInspector();
+        sampling = Math.max(1, SettingsManager.debugTrafficSampling());
+        if (!enabled) {
+            buffers.clear();
+        }
+    }
+
+    /**
+     * @return whether new connections should be created with debugger.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stores traffic entry of the connection.
+     *
+     * @param connection name of the connection.
+     */
+    void record(String connection, String entry) {
+        if (!enabled) {
+            return;
+        }
+        TrafficBuffer buffer = buffers.get(connection);
+        if (buffer == null) {
+            buffer = new TrafficBuffer();
+            TrafficBuffer previous = buffers.putIfAbsent(connection, buffer);
+            if (previous != null) {
+                buffer = previous;
+            }
+        }
+        buffer.add(entry, sampling);
+    }
+
+    /**
+     * Writes stored traffic of all connections to the new file in the log directory.
+     *
+     * @return written file.
+     */
+    public File dump() throws IOException {
+        File sdCard = Application.getInstance().getApplicationContext().getExternalFilesDir(null);
+        if (sdCard == null) {
+            throw new IOException("External storage is not available");
+        }
+        File dir = new File(sdCard.getAbsolutePath() + "/logs");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        File file = new File(dir, "traffic_" + dateFormat.format(System.currentTimeMillis()) + ".txt");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            for (Map.Entry<String, TrafficBuffer> entry : buffers.entrySet()) {
+                writer.write("----- " + entry.getKey() + " -----\n");
+                for (TrafficEntry trafficEntry : entry.getValue().getEntries()) {
+                    writer.write(dateFormat.format(trafficEntry.time));
+                    writer.write(' ');
+                    writer.write(redact(trafficEntry.text));
+                    writer.write('\n');
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Replaces contents of {@link #REDACTED_ELEMENTS} with {@link #REDACTED}.
+     */
+    static String redact(String source) {
+        String result = source;
+        for (String element : REDACTED_ELEMENTS) {
+            if (result.contains("<" + element)) {
+                result = redact(result, element);
+            }
+        }
+        return result;
+    }
+
+    private static String redact(String source, String element) {
+        String openTag = "<" + element;
+        String closeTag = "</" + element + ">";
+        StringBuilder result = new StringBuilder(source.length());
+        int position = 0;
+        while (true) {
+            int start = source.indexOf(openTag, position);
+            if (start == -1) {
+                break;
+            }
+            int nameEnd = start + openTag.length();
+            // skip elements with longer names, e.g. <bodyx>
+            if (nameEnd < source.length() && source.charAt(nameEnd) != '>'
+                    && !Character.isWhitespace(source.charAt(nameEnd))
+                    && source.charAt(nameEnd) != '/') {
+                result.append(source, position, nameEnd);
+                position = nameEnd;
+                continue;
+            }
+            int contentStart = source.indexOf('>', nameEnd);
+            if (contentStart == -1 || source.charAt(contentStart - 1) == '/') {
+                int end = contentStart == -1 ? source.length() : contentStart + 1;
+                result.append(source, position, end);
+                position = end;
+                continue;
+            }
+            contentStart++;
+            int contentEnd = source.indexOf(closeTag, contentStart);
+            result.append(source, position, contentStart).append(REDACTED);
+            if (contentEnd == -1) {
+                // element continues in the next entry
+                position = source.length();
+                break;
+            }
+            position = contentEnd;
+        }
+        result.append(source, position, source.length());
+        return result.toString();
+    }
+
+    private static class TrafficEntry {
+        final long time;
+        final String text;
+
+        TrafficEntry(long time, String text) {
+            this.time = time;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Ring buffer of the last {@link #MAX_ENTRIES} entries.
+     */
+    private static class TrafficBuffer {
+        private final TrafficEntry[] entries = new TrafficEntry[MAX_ENTRIES];
+        private int next;
+        private int size;
+        private long received;
+
+        synchronized void add(String text, int sampling) {
+            if (received++ % sampling != 0) {
+                return;
+            }
+            if (text.length() > MAX_ENTRY_LENGTH) {
+                text = text.substring(0, MAX_ENTRY_LENGTH) + "... (" + text.length() + " chars)";
+            }
+            entries[next] = new TrafficEntry(System.currentTimeMillis(), text);
+            next = (next + 1) % MAX_ENTRIES;
+            if (size < MAX_ENTRIES) {
+                size++;
+            }
+        }
+
+        synchronized List<TrafficEntry> getEntries() {
+            List<TrafficEntry> result = new ArrayList<>(size);
+            int first = (next - size + MAX_ENTRIES) % MAX_ENTRIES;
+            for (int index = 0; index < size; index++) {
+                result.add(entries[(first + index) % MAX_ENTRIES]);
+            }
+            return result;
+        }
+    }
+
+}
@@ -31,8 +31,8 @@ import com.xabber.android.data.extension.carbons.CarbonManager;
 import com.xabber.android.data.extension.cs.ChatStateManager;
 import com.xabber.android.data.extension.file.FileManager;
 import com.xabber.android.data.extension.otr.OTRManager;
-import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.chat.ChatManager;
+import com.xabber.android.data.message.search.MessageSearchManager;
 import com.xabber.android.data.notification.NotificationManager;
 
 import org.greenrobot.eventbus.EventBus;
@@ -48,20 +48,19 @@ import org.jxmpp.jid.parts.Resourcepart;
 
 import java.io.File;
 import java.util.Date;
-import java.util.List;
 import java.util.UUID;
 
+import io.realm.OrderedCollectionChangeSet;
+import io.realm.OrderedRealmCollectionChangeListener;
 import io.realm.Realm;
-import io.realm.RealmChangeListener;
 import io.realm.RealmResults;
-import io.realm.Sort;
 
 /**
  * Chat instance.
  *
  * @author alexander.ivanov
  */
-public abstract class AbstractChat extends BaseEntity implements RealmChangeListener<RealmResults<MessageItem>> {
+public abstract class AbstractChat extends BaseEntity implements OrderedRealmCollectionChangeListener<RealmResults<MessageItem>> {
 
     /**
      * Number of messages from history to be shown for context purpose.
@@ -99,6 +98,10 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
     private Date lastSyncedTime;
     private RealmResults<SyncInfo> syncInfo;
     private MessageItem lastMessage;
+    /**
+     * Position of {@link #lastMessage} in {@link #messages}, -1 if there is no last message.
+     */
+    private int lastMessageIndex = -1;
     private RealmResults<MessageItem> messages;
 
     protected AbstractChat(@NonNull final AccountJid account, @NonNull final UserJid user, boolean isPrivateMucChat) {
@@ -256,19 +259,16 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
         final MessageItem messageItem = createMessageItem(resource, text, action, delayTimestamp,
                 incoming, notify, encrypted, offline, stanzaId);
         saveMessageItem(messageItem);
-        EventBus.getDefault().post(new NewMessageEvent());
     }
 
+    /**
+     * Saves message in background and posts {@link NewMessageEvent} when it was saved.
+     */
     public void saveMessageItem(final MessageItem messageItem) {
-        final long startTime = System.currentTimeMillis();
-        // TODO: 12.03.18 ANR - WRITE (переписать без UI)
-        MessageDatabaseManager.getInstance().getRealmUiThread()
-                .executeTransaction(new Realm.Transaction() {
+        MessageWriter.getInstance().save(messageItem, new Runnable() {
             @Override
-            public void execute(Realm realm) {
-                realm.copyToRealm(messageItem);
-                LogManager.d("REALM", Thread.currentThread().getName()
-                        + " save message item: " + (System.currentTimeMillis() - startTime));
+            public void run() {
+                EventBus.getDefault().post(new NewMessageEvent());
             }
         });
     }
@@ -361,29 +361,30 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
         Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
 
         final String messageId = UUID.randomUUID().toString();
+        final MessageItem messageItem = new MessageItem(messageId);
+        messageItem.setAccount(account);
+        messageItem.setUser(user);
+        messageItem.setText(file.getName());
+        messageItem.setFilePath(file.getPath());
+        messageItem.setIsImage(FileManager.fileIsImage(file));
+        messageItem.setTimestamp(System.currentTimeMillis());
+        messageItem.setRead(true);
+        messageItem.setSent(true);
+        messageItem.setError(false);
+        messageItem.setIncoming(false);
+        messageItem.setInProgress(true);
+        messageItem.setStanzaId(UUID.randomUUID().toString());
 
         realm.executeTransaction(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                MessageItem messageItem = new MessageItem(messageId);
-                messageItem.setAccount(account);
-                messageItem.setUser(user);
-                messageItem.setText(file.getName());
-                messageItem.setFilePath(file.getPath());
-                messageItem.setIsImage(FileManager.fileIsImage(file));
-                messageItem.setTimestamp(System.currentTimeMillis());
-                messageItem.setRead(true);
-                messageItem.setSent(true);
-                messageItem.setError(false);
-                messageItem.setIncoming(false);
-                messageItem.setInProgress(true);
-                messageItem.setStanzaId(UUID.randomUUID().toString());
                 realm.copyToRealm(messageItem);
             }
         });
 
 
         realm.close();
+        MessageSearchManager.getInstance().index(messageItem);
 
         return messageId;
     }
@@ -400,21 +401,65 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
         return lastMessage;
     }
 
+    /**
+     * Copies newest text message (or newest action if there is no text messages) from realm.
+     * Only this single row is copied.
+     */
     private void updateLastMessage() {
         if (messages.isValid() && messages.isLoaded() && !messages.isEmpty()) {
-            List<MessageItem> textMessages = MessageDatabaseManager.getInstance()
-                    .getRealmUiThread()
-                    .copyFromRealm(messages.where().isNull(MessageItem.Fields.ACTION).findAll());
+            int index = messages.size() - 1;
+            while (index >= 0 && messages.get(index).getAction() != null) {
+                index--;
+            }
+            if (index < 0) {
+                index = messages.size() - 1;
+            }
 
-            if (!textMessages.isEmpty())
-                lastMessage = textMessages.get(textMessages.size() - 1);
-            else
-                lastMessage = MessageDatabaseManager.getInstance()
+            MessageItem messageItem = MessageDatabaseManager.getInstance()
                     .getRealmUiThread()
-                    .copyFromRealm(messages.last());
+                    .copyFromRealm(messages.get(index));
+            synchronized (this) {
+                lastMessageIndex = index;
+                lastMessage = messageItem;
+            }
         } else {
-            lastMessage = null;
+            synchronized (this) {
+                lastMessageIndex = -1;
+                lastMessage = null;
+            }
+        }
+    }
+
+    /**
+     * @return whether changes in messages can affect last message.
+     * Shifts {@link #lastMessageIndex} if older messages were inserted.
+     */
+    private synchronized boolean isLastMessageAffected(OrderedCollectionChangeSet changeSet) {
+        if (changeSet == null || lastMessageIndex < 0 || changeSet.getDeletions().length > 0) {
+            return true;
+        }
+        // action is used only if there is no text message, any new message can replace it
+        if (lastMessage.getAction() != null) {
+            return true;
+        }
+
+        int index = lastMessageIndex;
+        // insertions are sorted in ascending order and use indexes after change
+        for (int insertion : changeSet.getInsertions()) {
+            if (insertion <= index) {
+                index++;
+            } else {
+                return true;
+            }
         }
+        for (int change : changeSet.getChanges()) {
+            if (change == index) {
+                return true;
+            }
+        }
+
+        lastMessageIndex = index;
+        return false;
     }
 
     /**
@@ -457,30 +502,11 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
     }
 
 
+    /**
+     * Sends not sent messages from the history.
+     */
     public void sendMessages() {
-        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
-            @Override
-            public void run() {
-                Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-
-                RealmResults<MessageItem> messagesToSend = realm.where(MessageItem.class)
-                        .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
-                        .equalTo(MessageItem.Fields.USER, user.toString())
-                        .equalTo(MessageItem.Fields.SENT, false)
-                        .findAllSorted(MessageItem.Fields.TIMESTAMP, Sort.ASCENDING);
-
-                realm.beginTransaction();
-
-                for (final MessageItem messageItem : messagesToSend) {
-                    if (!sendMessage(messageItem)) {
-                        break;
-                    }
-                }
-                realm.commitTransaction();
-
-                realm.close();
-            }
-        });
+        MessageWriter.getInstance().sendMessages(this);
     }
 
     protected boolean canSendMessage() {
@@ -519,21 +545,7 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
                 StanzaSender.sendStanza(account, message, new StanzaListener() {
                     @Override
                     public void processStanza(Stanza packet) throws SmackException.NotConnectedException {
-                        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-                        realm.executeTransaction(new Realm.Transaction() {
-                                @Override
-                                public void execute(Realm realm) {
-                                    MessageItem acknowledgedMessage = realm
-                                            .where(MessageItem.class)
-                                            .equalTo(MessageItem.Fields.UNIQUE_ID, messageId)
-                                            .findFirst();
-
-                                    if (acknowledgedMessage != null) {
-                                        acknowledgedMessage.setAcknowledged(true);
-                                    }
-                                }
-                            });
-                        realm.close();
+                        MessageWriter.getInstance().markAsAcknowledged(messageId);
                     }
                 });
             } catch (NetworkException e) {
@@ -608,8 +620,10 @@ public abstract class AbstractChat extends BaseEntity implements RealmChangeList
     }
 
     @Override
-    public void onChange(RealmResults<MessageItem> messageItems) {
-        updateLastMessage();
+    public void onChange(RealmResults<MessageItem> messageItems, OrderedCollectionChangeSet changeSet) {
+        if (isLastMessageAffected(changeSet)) {
+            updateLastMessage();
+        }
     }
 
     public int getUnreadMessageCount() {
@@ -14,12 +14,12 @@
  */
 package com.xabber.android.data.message;
 
-import android.os.Environment;
 import android.support.annotation.Nullable;
 
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.SettingsManager.ChatsShowStatusChange;
@@ -32,6 +32,7 @@ import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.StanzaSender;
 import com.xabber.android.data.connection.listeners.OnDisconnectListener;
 import com.xabber.android.data.connection.listeners.OnPacketListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.MessageDatabaseManager;
 import com.xabber.android.data.database.messagerealm.MessageItem;
 import com.xabber.android.data.entity.AccountJid;
@@ -46,32 +47,32 @@ import com.xabber.android.data.extension.muc.RoomChat;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.message.chat.ChatManager;
 import com.xabber.android.data.message.chat.MucPrivateChatNotification;
+import com.xabber.android.data.message.search.MessageSearchManager;
 import com.xabber.android.data.notification.EntityNotificationProvider;
 import com.xabber.android.data.notification.NotificationManager;
 import com.xabber.android.data.roster.OnRosterReceivedListener;
 import com.xabber.android.data.roster.OnStatusChangeListener;
 import com.xabber.android.data.roster.PresenceManager;
 import com.xabber.android.data.roster.RosterManager;
-import com.xabber.android.utils.StringUtils;
 
-import org.greenrobot.eventbus.EventBus;
 import org.jivesoftware.smack.packet.ExtensionElement;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.packet.Stanza;
 import org.jivesoftware.smackx.carbons.packet.CarbonExtension;
 import org.jivesoftware.smackx.muc.packet.MUCUser;
+import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.FullJid;
 import org.jxmpp.jid.Jid;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.realm.Realm;
 import io.realm.RealmResults;
@@ -83,7 +84,7 @@ import io.realm.RealmResults;
  *
  * @author alexander.ivanov
  */
-public class MessageManager implements OnLoadListener, OnPacketListener, OnDisconnectListener,
+public class MessageManager implements OnLoadDependentListener, OnPacketListener, OnDisconnectListener,
         OnAccountRemovedListener, OnAccountDisabledListener, OnRosterReceivedListener,
         OnStatusChangeListener {
 
@@ -95,12 +96,17 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
      * Registered chats for bareAddresses in accounts.
      */
     private final NestedMap<AbstractChat> chats;
+    /**
+     * Users of registered room chats in accounts.
+     * Unlike {@link #chats} can be read from any thread.
+     */
+    private final Map<String, Set<String>> rooms;
     /**
      * Visible chat.
      * <p/>
      * Will be <code>null</code> if there is no one.
      */
-    private AbstractChat visibleChat;
+    private volatile AbstractChat visibleChat;
 
     public static MessageManager getInstance() {
         if (instance == null) {
@@ -112,12 +118,18 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
 
     private MessageManager() {
         chats = new NestedMap<>();
+        rooms = new ConcurrentHashMap<>();
 
         mucPrivateChatRequestProvider = new EntityNotificationProvider<>
                 (R.drawable.ic_stat_muc_private_chat_request_white_24dp);
         mucPrivateChatRequestProvider.setCanClearNotifications(false);
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance(), AccountManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
@@ -147,6 +159,8 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
     }
 
     /**
+     * Can be called from any thread.
+     *
      * @return <code>null</code> if there is no such chat.
      */
 
@@ -224,6 +238,15 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
             return;
         }
         chats.put(chat.getAccount().toString(), chat.getUser().toString(), chat);
+        if (chat instanceof RoomChat) {
+            String account = chat.getAccount().toString();
+            Set<String> users = rooms.get(account);
+            if (users == null) {
+                users = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                rooms.put(account, users);
+            }
+            users.add(chat.getUser().toString());
+        }
     }
 
     /**
@@ -235,6 +258,22 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
         chat.closeChat();
         LogManager.i(this, "removeChat " + chat.getUser());
         chats.remove(chat.getAccount().toString(), chat.getUser().toString());
+        if (chat instanceof RoomChat) {
+            Set<String> users = rooms.get(chat.getAccount().toString());
+            if (users != null) {
+                users.remove(chat.getUser().toString());
+            }
+        }
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return Whether room chat is registered for the user.
+     */
+    public boolean hasRoomChat(AccountJid account, UserJid user) {
+        Set<String> users = rooms.get(account.toString());
+        return users != null && users.contains(user.toString());
     }
 
     /**
@@ -250,22 +289,14 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
     }
 
     private void sendMessage(final String text, final AbstractChat chat) {
-        final long startTime = System.currentTimeMillis();
-
-        MessageDatabaseManager.getInstance()
-                // TODO: 13.03.18 ANR - WRITE
-                .getRealmUiThread().executeTransaction(new Realm.Transaction() {
+        // message is sent only after it was saved, so it will be resent if sending fails
+        MessageWriter.getInstance().save(chat.createNewMessageItem(text), new Runnable() {
             @Override
-            public void execute(Realm realm) {
-                MessageItem newMessageItem = chat.createNewMessageItem(text);
-                realm.copyToRealm(newMessageItem);
-                LogManager.d("REALM", Thread.currentThread().getName()
-                        + " save message before sending: " + (System.currentTimeMillis() - startTime));
-
+            public void run() {
+                if (chat.canSendMessage())
+                    chat.sendMessages();
             }
         });
-        if (chat.canSendMessage())
-            chat.sendMessages();
     }
 
     public String createFileMessage(AccountJid account, UserJid user, File file) {
@@ -298,6 +329,12 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
             }
         });
 
+        MessageItem messageItem = realm.where(MessageItem.class)
+                .equalTo(MessageItem.Fields.UNIQUE_ID, messageId)
+                .findFirst();
+        if (messageItem != null) {
+            MessageSearchManager.getInstance().index(messageItem);
+        }
         realm.close();
         chat.sendMessages();
     }
@@ -450,6 +487,15 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
         return visibleChat == chat;
     }
 
+    /**
+     * @return Whether chat with specified bare jid is currently visible.
+     */
+    public boolean isVisibleChat(AccountJid account, BareJid user) {
+        AbstractChat chat = visibleChat;
+        return chat != null && chat.getAccount().equals(account)
+                && user.equals(chat.getUser().getBareJid());
+    }
+
     /**
      * Removes all messages from chat.
      *
@@ -459,6 +505,8 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
     public void clearHistory(final AccountJid account, final UserJid user) {
         final long startTime = System.currentTimeMillis();
 
+        MessageSearchManager.getInstance().removeChat(account, user);
+
         MessageDatabaseManager.getInstance()
                 // TODO: 13.03.18 ANR
                 .getRealmUiThread().executeTransactionAsync(new Realm.Transaction() {
@@ -479,6 +527,7 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
      *
      */
     public void removeMessage(final String messageItemId) {
+        MessageSearchManager.getInstance().remove(messageItemId);
         Application.getInstance().runInBackgroundUserRequest(new Runnable() {
             @Override
             public void run() {
@@ -518,13 +567,7 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
         } catch (UserJid.UserJidCreateException e) {
             return;
         }
-        boolean processed = false;
-        for (AbstractChat chat : chats.getNested(account.toString()).values()) {
-            if (chat.onPacket(user, stanza, false)) {
-                processed = true;
-                break;
-            }
-        }
+        boolean processed = routeToChat(account, user, stanza, false);
 
         final AbstractChat chat = getChat(account, user);
 
@@ -626,6 +669,21 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
         }
     }
 
+    /**
+     * Passes stanza to the chat registered for the bare address.
+     * <p/>
+     * Chats are registered with {@link AbstractChat#getUser()} as key and accept stanzas
+     * only from the same address, so single lookup finds the only chat able to accept it:
+     * regular chat with contact or room chat with room address.
+     * Private room chats are registered with full address and never accept bare address.
+     *
+     * @return whether stanza was accepted by chat.
+     */
+    private boolean routeToChat(AccountJid account, UserJid bareUser, Stanza stanza, boolean isCarbons) {
+        AbstractChat chat = chats.get(account.toString(), bareUser.toString());
+        return chat != null && chat.onPacket(bareUser, stanza, isCarbons);
+    }
+
     // send messages without creating chat and adding to roster
     // used for service auto-generated messages
     public void sendMessageWithoutChat(Jid to, String threadId, AccountJid account, String text) {
@@ -660,22 +718,11 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
                 return;
             }
 
-            final AbstractChat finalChat = chat;
-            // TODO: 12.03.18 ANR - WRITE (переписать без UI)
-            final long startTime = System.currentTimeMillis();
-            MessageDatabaseManager.getInstance().getRealmUiThread().executeTransaction(new Realm.Transaction() {
-                @Override
-                public void execute(Realm realm) {
-                    MessageItem newMessageItem = finalChat.createNewMessageItem(body);
-                    newMessageItem.setStanzaId(message.getStanzaId());
-                    newMessageItem.setSent(true);
-                    newMessageItem.setForwarded(true);
-                    realm.copyToRealm(newMessageItem);
-                    LogManager.d("REALM", Thread.currentThread().getName()
-                            + " save carbons message: " + (System.currentTimeMillis() - startTime));
-                }
-            });
-            EventBus.getDefault().post(new NewMessageEvent());
+            MessageItem newMessageItem = chat.createNewMessageItem(body);
+            newMessageItem.setStanzaId(message.getStanzaId());
+            newMessageItem.setSent(true);
+            newMessageItem.setForwarded(true);
+            chat.saveMessageItem(newMessageItem);
             return;
         }
 
@@ -693,13 +740,7 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
             return;
         }
 
-        boolean processed = false;
-        for (AbstractChat chat : chats.getNested(account.toString()).values()) {
-            if (chat.onPacket(companion, message, true)) {
-                processed = true;
-                break;
-            }
-        }
+        boolean processed = routeToChat(account, companion, message, true);
         if (getChat(account, companion) != null) {
             return;
         }
@@ -734,68 +775,13 @@ public class MessageManager implements OnLoadListener, OnPacketListener, OnDisco
     @Override
     public void onAccountRemoved(AccountItem accountItem) {
         chats.clear(accountItem.getAccount().toString());
+        rooms.remove(accountItem.getAccount().toString());
     }
 
     @Override
     public void onAccountDisabled(AccountItem accountItem) {
         chats.clear(accountItem.getAccount().toString());
-    }
-
-    /**
-     * Export chat to file with specified name.
-     *
-     * @param account
-     * @param user
-     * @param fileName
-     * @throws NetworkException
-     */
-    public File exportChat(AccountJid account, UserJid user, String fileName) throws NetworkException {
-        final File file = new File(Environment.getExternalStorageDirectory(), fileName);
-        try {
-            BufferedWriter out = new BufferedWriter(new FileWriter(file));
-            final String titleName = RosterManager.getInstance().getName(account, user) + " (" + user + ")";
-            out.write("<html><head><title>");
-            out.write(StringUtils.escapeHtml(titleName));
-            out.write("</title></head><body>");
-            final AbstractChat abstractChat = getChat(account, user);
-            if (abstractChat != null) {
-                final boolean isMUC = abstractChat instanceof RoomChat;
-                final String accountName = AccountManager.getInstance().getNickName(account);
-                final String userName = RosterManager.getInstance().getName(account, user);
-
-                Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-                RealmResults<MessageItem> messageItems = MessageDatabaseManager.getChatMessages(realm, account, user);
-
-                for (MessageItem messageItem : messageItems) {
-                    if (messageItem.getAction() != null) {
-                        continue;
-                    }
-                    final String name;
-                    if (isMUC) {
-                        name = messageItem.getResource().toString();
-                    } else {
-                        if (messageItem.isIncoming()) {
-                            name = userName;
-                        } else {
-                            name = accountName;
-                        }
-                    }
-                    out.write("<b>");
-                    out.write(StringUtils.escapeHtml(name));
-                    out.write("</b>&nbsp;(");
-                    out.write(StringUtils.getDateTimeText(new Date(messageItem.getTimestamp())));
-                    out.write(")<br />\n<p>");
-                    out.write(StringUtils.escapeHtml(messageItem.getText()));
-                    out.write("</p><hr />\n");
-                }
-                realm.close();
-            }
-            out.write("</body></html>");
-            out.close();
-        } catch (IOException e) {
-            throw new NetworkException(R.string.FILE_NOT_FOUND);
-        }
-        return file;
+        rooms.remove(accountItem.getAccount().toString());
     }
 
     private boolean isStatusTrackingEnabled(AccountJid account, UserJid user) {
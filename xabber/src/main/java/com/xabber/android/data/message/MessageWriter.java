@@ -0,0 +1,439 @@
+package com.xabber.android.data.message;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.xabber.android.R;
+import com.xabber.android.data.Application;
+import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.message.search.MessageSearchManager;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Writer of new messages, their sending and status changes in the message realm.
+ * <p/>
+ * New messages and changes of delivered, acknowledged and error flags are written
+ * on the dedicated thread. All writes waiting at the moment are committed in single
+ * transaction. New messages are written as soon as possible, flag changes are collected
+ * for {@link #FLUSH_DELAY_MILLIS} or until {@link #MAX_BATCH_SIZE} writes are pending.
+ * <p/>
+ * If the batch fails, every write is retried in its own transaction, so that single
+ * broken write doesn't drop others. User is notified about messages that were not saved.
+ * <p/>
+ * UI sees written messages through realm change listeners.
+ * <p/>
+ * Message with stanza id is not saved if the same message from the same chat
+ * is already stored. Messages waiting to be committed can be checked by
+ * {@link #isSaving(AccountJid, UserJid, String, String)}.
+ * <p/>
+ * Outgoing messages are sent from the writer thread too, see {@link #sendMessages(AbstractChat)}.
+ */
+public class MessageWriter {
+
+    private static final String LOG_TAG = MessageWriter.class.getSimpleName();
+
+    private static final long FLUSH_DELAY_MILLIS = 100;
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private static MessageWriter instance;
+
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Writes waiting to be committed.
+     */
+    private List<Write> pending;
+
+    /**
+     * Writes being committed now.
+     */
+    private List<Write> writing;
+
+    /**
+     * Whether immediate flush was requested for pending writes.
+     */
+    private boolean flushRequested;
+
+    /**
+     * Whether delayed flush was scheduled for pending writes.
+     */
+    private boolean flushScheduled;
+
+    public static synchronized MessageWriter getInstance() {
+        if (instance == null) {
+            instance = new MessageWriter();
+        }
+
+        return instance;
+    }
+
+    private MessageWriter() {
+        pending = new ArrayList<>();
+        writing = Collections.emptyList();
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Message writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Saves new message.
+     *
+     * @param onSaved will be called from writer thread after message was committed.
+     *                Can be <code>null</code>.
+     */
+    public void save(@NonNull MessageItem messageItem, @Nullable Runnable onSaved) {
+        add(new SaveMessage(messageItem, onSaved), true);
+    }
+
+    /**
+     * Marks message with specified stanza id as delivered.
+     */
+    public void markAsDelivered(@NonNull String stanzaId) {
+        add(new StatusUpdate(StatusUpdate.Type.delivered, null, stanzaId, null), false);
+    }
+
+    /**
+     * Marks message with specified unique id as acknowledged by server.
+     */
+    public void markAsAcknowledged(@NonNull String uniqueId) {
+        add(new StatusUpdate(StatusUpdate.Type.acknowledged, null, uniqueId, null), false);
+    }
+
+    /**
+     * Marks message of the account with specified stanza id as failed.
+     *
+     * @param errorDescription can be <code>null</code>.
+     */
+    public void markAsError(@NonNull AccountJid account, @NonNull String stanzaId,
+                            @Nullable String errorDescription) {
+        add(new StatusUpdate(StatusUpdate.Type.error, account, stanzaId, errorDescription), false);
+    }
+
+    /**
+     * Sends not sent messages of the chat and marks them as sent.
+     * Messages are read and updated on the writer thread,
+     * so that concurrent requests never send the same message twice.
+     */
+    public void sendMessages(@NonNull final AbstractChat chat) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+                try {
+                    final RealmResults<MessageItem> messagesToSend = realm.where(MessageItem.class)
+                            .equalTo(MessageItem.Fields.ACCOUNT, chat.getAccount().toString())
+                            .equalTo(MessageItem.Fields.USER, chat.getUser().toString())
+                            .equalTo(MessageItem.Fields.SENT, false)
+                            .findAllSorted(MessageItem.Fields.TIMESTAMP, Sort.ASCENDING);
+
+                    realm.executeTransaction(new Realm.Transaction() {
+                        @Override
+                        public void execute(Realm realm) {
+                            for (MessageItem messageItem : messagesToSend) {
+                                if (!chat.sendMessage(messageItem)) {
+                                    break;
+                                }
+                            }
+                        }
+                    });
+                } catch (Exception e) {
+                    LogManager.exception(LOG_TAG, e);
+                } finally {
+                    realm.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return Whether message with specified stanza id and text is waiting
+     * to be committed for the chat.
+     */
+    public synchronized boolean isSaving(@NonNull AccountJid account, @NonNull UserJid user,
+                                         @NonNull String stanzaId, @Nullable String text) {
+        return isSaving(pending, account, user, stanzaId, text)
+                || isSaving(writing, account, user, stanzaId, text);
+    }
+
+    private static boolean isSaving(List<Write> writes, AccountJid account, UserJid user,
+                                    String stanzaId, String text) {
+        for (Write write : writes) {
+            if (write instanceof SaveMessage
+                    && ((SaveMessage) write).isSameMessage(account, user, stanzaId, text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(Write write, boolean immediately) {
+        synchronized (this) {
+            pending.add(write);
+            if (immediately || pending.size() >= MAX_BATCH_SIZE) {
+                if (flushRequested) {
+                    return;
+                }
+                flushRequested = true;
+                executor.execute(flushRunnable);
+                return;
+            }
+            if (flushScheduled || flushRequested) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        executor.schedule(flushRunnable, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final List<Write> writes;
+            synchronized (MessageWriter.this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                writes = pending;
+                writing = writes;
+                pending = new ArrayList<>();
+                flushRequested = false;
+                flushScheduled = false;
+            }
+
+            try {
+                write(writes);
+            } catch (Exception e) {
+                LogManager.exception(LOG_TAG, e);
+            } finally {
+                synchronized (MessageWriter.this) {
+                    writing = Collections.emptyList();
+                }
+            }
+        }
+    };
+
+    private void write(final List<Write> writes) {
+        final long startTime = System.currentTimeMillis();
+
+        Set<Write> failed = new HashSet<>();
+        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+        try {
+            try {
+                realm.executeTransaction(new Realm.Transaction() {
+                    @Override
+                    public void execute(Realm realm) {
+                        for (Write write : writes) {
+                            write.apply(realm);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                LogManager.exception(LOG_TAG, e);
+                for (final Write write : writes) {
+                    try {
+                        realm.executeTransaction(new Realm.Transaction() {
+                            @Override
+                            public void execute(Realm realm) {
+                                write.apply(realm);
+                            }
+                        });
+                    } catch (RuntimeException writeException) {
+                        LogManager.exception(LOG_TAG, writeException);
+                        failed.add(write);
+                    }
+                }
+            }
+        } finally {
+            realm.close();
+        }
+
+        LogManager.d("REALM", Thread.currentThread().getName() + " " + writes.size()
+                + " message writes, " + failed.size() + " failed: "
+                + (System.currentTimeMillis() - startTime));
+
+        List<MessageItem> savedItems = new ArrayList<>();
+        boolean statusUpdated = false;
+        boolean saveFailed = false;
+        AccountJid account = null;
+        for (Write write : writes) {
+            if (write instanceof StatusUpdate) {
+                if (failed.contains(write)) {
+                    continue;
+                }
+                AccountJid updateAccount = ((StatusUpdate) write).account;
+                if (!statusUpdated) {
+                    account = updateAccount;
+                } else if (account != null && !account.equals(updateAccount)) {
+                    account = null;
+                }
+                statusUpdated = true;
+            } else if (write instanceof SaveMessage) {
+                if (failed.contains(write)) {
+                    saveFailed = true;
+                    continue;
+                }
+                if (((SaveMessage) write).duplicate) {
+                    continue;
+                }
+                savedItems.add(((SaveMessage) write).messageItem);
+                ((SaveMessage) write).onSaved();
+            }
+        }
+        MessageSearchManager.getInstance().index(savedItems);
+        if (statusUpdated) {
+            EventBus.getDefault().post(new MessageUpdateEvent(account));
+        }
+        if (saveFailed) {
+            Application.getInstance().onError(R.string.message_save_error);
+        }
+    }
+
+    private interface Write {
+        void apply(Realm realm);
+    }
+
+    private static class SaveMessage implements Write {
+
+        private final MessageItem messageItem;
+        @Nullable
+        private final Runnable onSaved;
+        /**
+         * Whether the same message was already stored and this one was skipped.
+         */
+        private boolean duplicate;
+
+        SaveMessage(MessageItem messageItem, @Nullable Runnable onSaved) {
+            this.messageItem = messageItem;
+            this.onSaved = onSaved;
+        }
+
+        @Override
+        public void apply(Realm realm) {
+            duplicate = false;
+            String stanzaId = messageItem.getStanzaId();
+            if (stanzaId != null) {
+                MessageItem stored = realm.where(MessageItem.class)
+                        .equalTo(MessageItem.Fields.ACCOUNT, messageItem.getAccount().toString())
+                        .equalTo(MessageItem.Fields.USER, messageItem.getUser().toString())
+                        .equalTo(MessageItem.Fields.STANZA_ID, stanzaId)
+                        .equalTo(MessageItem.Fields.TEXT, messageItem.getText())
+                        .findFirst();
+                if (stored != null) {
+                    // incoming copy of own message, e.g. room echo
+                    if (messageItem.isIncoming() && !stored.isIncoming()) {
+                        stored.setDelivered(true);
+                    }
+                    duplicate = true;
+                    return;
+                }
+            }
+            realm.copyToRealm(messageItem);
+        }
+
+        boolean isSameMessage(AccountJid account, UserJid user, String stanzaId, String text) {
+            return stanzaId.equals(messageItem.getStanzaId())
+                    && (text == null ? messageItem.getText() == null : text.equals(messageItem.getText()))
+                    && account.equals(messageItem.getAccount())
+                    && user.equals(messageItem.getUser());
+        }
+
+        void onSaved() {
+            if (onSaved == null) {
+                return;
+            }
+            try {
+                onSaved.run();
+            } catch (Exception e) {
+                LogManager.exception(LOG_TAG, e);
+            }
+        }
+    }
+
+    private static class StatusUpdate implements Write {
+
+        enum Type {
+            delivered,
+            acknowledged,
+            error
+        }
+
+        private final Type type;
+        @Nullable
+        private final AccountJid account;
+        /**
+         * Stanza id for {@link Type#delivered} and {@link Type#error},
+         * unique id for {@link Type#acknowledged}.
+         */
+        private final String id;
+        @Nullable
+        private final String errorDescription;
+
+        StatusUpdate(Type type, @Nullable AccountJid account, String id,
+                     @Nullable String errorDescription) {
+            this.type = type;
+            this.account = account;
+            this.id = id;
+            this.errorDescription = errorDescription;
+        }
+
+        @Override
+        public void apply(Realm realm) {
+            switch (type) {
+                case delivered: {
+                    MessageItem messageItem = realm.where(MessageItem.class)
+                            .equalTo(MessageItem.Fields.STANZA_ID, id).findFirst();
+                    if (messageItem != null) {
+                        messageItem.setDelivered(true);
+                    }
+                    break;
+                }
+                case acknowledged: {
+                    MessageItem messageItem = realm.where(MessageItem.class)
+                            .equalTo(MessageItem.Fields.UNIQUE_ID, id).findFirst();
+                    if (messageItem != null) {
+                        messageItem.setAcknowledged(true);
+                    }
+                    break;
+                }
+                case error: {
+                    MessageItem messageItem = realm.where(MessageItem.class)
+                            .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
+                            .equalTo(MessageItem.Fields.STANZA_ID, id).findFirst();
+                    if (messageItem != null) {
+                        messageItem.setError(true);
+                        if (errorDescription != null) {
+                            messageItem.setErrorDescription(errorDescription);
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+    }
+}
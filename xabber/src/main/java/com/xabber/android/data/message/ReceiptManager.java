@@ -14,19 +14,15 @@
  */
 package com.xabber.android.data.message;
 
-import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.StanzaSender;
-import com.xabber.android.data.connection.listeners.OnPacketListener;
-import com.xabber.android.data.database.MessageDatabaseManager;
-import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.connection.listeners.OnBackgroundPacketListener;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.ui.adapter.ChatMessageAdapter;
 
-import org.greenrobot.eventbus.EventBus;
 import org.jivesoftware.smack.ConnectionCreationListener;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPConnectionRegistry;
@@ -40,14 +36,12 @@ import org.jivesoftware.smackx.receipts.DeliveryReceiptRequest;
 import org.jivesoftware.smackx.receipts.ReceiptReceivedListener;
 import org.jxmpp.jid.Jid;
 
-import io.realm.Realm;
-
 /**
  * Manage message receive receipts as well as error replies.
  *
  * @author alexander.ivanov
  */
-public class ReceiptManager implements OnPacketListener, ReceiptReceivedListener {
+public class ReceiptManager implements OnBackgroundPacketListener, ReceiptReceivedListener {
 
     private static ReceiptManager instance;
 
@@ -91,12 +85,7 @@ public class ReceiptManager implements OnPacketListener, ReceiptReceivedListener
         }
         final Message message = (Message) packet;
         if (message.getType() == Message.Type.error) {
-            Application.getInstance().runInBackgroundUserRequest(new Runnable() {
-                @Override
-                public void run() {
-                    markAsError(account, message);
-                }
-            });
+            markAsError(account, message);
         } else {
             // TODO setDefaultAutoReceiptMode should be used
             for (ExtensionElement packetExtension : message.getExtensions()) {
@@ -120,46 +109,26 @@ public class ReceiptManager implements OnPacketListener, ReceiptReceivedListener
     }
 
     private void markAsError(final AccountJid account, final Message message) {
-        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-        realm.beginTransaction();
-        MessageItem first = realm.where(MessageItem.class)
-                .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
-                .equalTo(MessageItem.Fields.STANZA_ID, message.getStanzaId()).findFirst();
-        if (first != null) {
-            first.setError(true);
-            XMPPError error = message.getError();
-            if (error != null) {
-                String errorStr = error.toString();
-                String descr = error.getDescriptiveText(null);
-                first.setErrorDescription(errorStr + "\n" + descr);
-            }
+        String stanzaId = message.getStanzaId();
+        if (stanzaId == null) {
+            return;
         }
-        realm.commitTransaction();
-        realm.close();
-        EventBus.getDefault().post(new MessageUpdateEvent(account));
+        String errorDescription = null;
+        XMPPError error = message.getError();
+        if (error != null) {
+            errorDescription = error.toString() + "\n" + error.getDescriptiveText(null);
+        }
+        MessageWriter.getInstance().markAsError(account, stanzaId, errorDescription);
     }
 
     @Override
     public void onReceiptReceived(Jid fromJid, final Jid toJid, final String receiptId, Stanza stanza) {
         DeliveryReceipt receipt = DeliveryReceipt.from((Message) stanza);
 
-        if (receipt == null) {
+        if (receipt == null || receiptId == null) {
             return;
         }
 
-        markAsDelivered(toJid, receiptId);
-    }
-
-    private void markAsDelivered(final Jid toJid, final String receiptId) {
-        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
-        realm.beginTransaction();
-        MessageItem first = realm.where(MessageItem.class)
-                .equalTo(MessageItem.Fields.STANZA_ID, receiptId).findFirst();
-        if (first != null) {
-            first.setDelivered(true);
-        }
-        realm.commitTransaction();
-        realm.close();
-        EventBus.getDefault().post(new MessageUpdateEvent());
+        MessageWriter.getInstance().markAsDelivered(receiptId);
     }
 }
@@ -19,10 +19,13 @@ import android.net.Uri;
 import android.support.annotation.Nullable;
 
 import com.xabber.android.data.Application;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.account.AccountItem;
+import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.account.listeners.OnAccountRemovedListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.RealmManager;
 import com.xabber.android.data.database.realm.ChatDataRealm;
 import com.xabber.android.data.database.realm.NotificationStateRealm;
@@ -44,6 +47,8 @@ import com.xabber.android.data.roster.RosterManager;
 
 import org.jxmpp.stringprep.XmppStringprepException;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -56,7 +61,7 @@ import io.realm.RealmResults;
  *
  * @author alexander.ivanov
  */
-public class ChatManager implements OnLoadListener, OnAccountRemovedListener {
+public class ChatManager implements OnLoadDependentListener, OnAccountRemovedListener {
 
     public static final Uri EMPTY_SOUND = Uri
             .parse("com.xabber.android.data.message.ChatManager.EMPTY_SOUND");
@@ -116,6 +121,11 @@ public class ChatManager implements OnLoadListener, OnAccountRemovedListener {
         suppress100 = new NestedMap<>();
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance(), AccountManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         final Set<BaseEntity> privateChats = new HashSet<>();
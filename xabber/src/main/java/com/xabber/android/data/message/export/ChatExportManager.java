@@ -0,0 +1,333 @@
+package com.xabber.android.data.message.export;
+
+import android.os.Environment;
+import android.support.annotation.NonNull;
+
+import com.xabber.android.R;
+import com.xabber.android.data.Application;
+import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.account.AccountManager;
+import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.extension.muc.MUCManager;
+import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.roster.RosterManager;
+
+import org.jxmpp.jid.parts.Resourcepart;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * Exports chat history to files on external storage.
+ * <p/>
+ * Exports are executed one by one on the dedicated thread. Messages are read from realm
+ * lazily and written straight to the file, progress is reported and cancellation is
+ * checked after every {@link #CHUNK_SIZE} messages.
+ */
+public class ChatExportManager {
+
+    private static final String LOG_TAG = ChatExportManager.class.getSimpleName();
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static ChatExportManager instance;
+
+    private final ExecutorService executor;
+
+    public interface Listener {
+
+        /**
+         * Called from UI thread after every written chunk.
+         */
+        void onExportProgress(int exported, int total);
+
+        /**
+         * Called from UI thread when file was written.
+         */
+        void onExported(File file);
+
+        /**
+         * Called from UI thread when export failed, partial file is removed.
+         */
+        void onExportFailed(NetworkException e);
+
+        /**
+         * Called from UI thread when export was cancelled, partial file is removed.
+         */
+        void onExportCancelled();
+
+    }
+
+    /**
+     * Handle of the requested export.
+     */
+    public static class ExportTask {
+
+        private volatile boolean cancelled;
+
+        /**
+         * Stops export after the current chunk.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+    }
+
+    public static synchronized ChatExportManager getInstance() {
+        if (instance == null) {
+            instance = new ChatExportManager();
+        }
+
+        return instance;
+    }
+
+    private ChatExportManager() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Chat export");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Exports history of the chat.
+     *
+     * @param fileName name of the file without extension.
+     */
+    public ExportTask exportChat(final AccountJid account, final UserJid user, String fileName,
+                                 final ExportFormat format, final Listener listener) {
+        final ExportTask task = new ExportTask();
+        final File file = new File(Environment.getExternalStorageDirectory(),
+                fileName + "." + format.getExtension());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Result result = Result.failed;
+                Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+                Writer writer = null;
+                try {
+                    Progress progress = new Progress(task, listener,
+                            MessageDatabaseManager.getChatMessages(realm, account, user).size());
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(file), "UTF-8"));
+                    writeChat(realm, account, user, ChatExportWriter.create(format, writer), progress);
+                    writer.close();
+                    writer = null;
+                    result = Result.exported;
+                } catch (CancellationException e) {
+                    result = Result.cancelled;
+                } catch (IOException | RuntimeException e) {
+                    LogManager.exception(LOG_TAG, e);
+                } finally {
+                    close(writer);
+                    realm.close();
+                    onFinished(listener, file, result);
+                }
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Exports history of all chats of the account into zip archive with file for each chat.
+     *
+     * @param fileName name of the archive without extension.
+     */
+    public ExportTask exportAccount(final AccountJid account, String fileName,
+                                    final ExportFormat format, final Listener listener) {
+        final ExportTask task = new ExportTask();
+        final File file = new File(Environment.getExternalStorageDirectory(), fileName + ".zip");
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Result result = Result.failed;
+                Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+                Writer writer = null;
+                try {
+                    List<UserJid> users = getUsers(realm, account);
+                    int total = 0;
+                    for (UserJid user : users) {
+                        total += MessageDatabaseManager.getChatMessages(realm, account, user).size();
+                    }
+                    Progress progress = new Progress(task, listener, total);
+
+                    ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+                    writer = new BufferedWriter(new OutputStreamWriter(zip, "UTF-8"));
+                    ChatExportWriter chatWriter = ChatExportWriter.create(format, writer);
+                    for (UserJid user : users) {
+                        zip.putNextEntry(new ZipEntry(user.toString().replace('/', '_')
+                                + "." + format.getExtension()));
+                        writeChat(realm, account, user, chatWriter, progress);
+                        writer.flush();
+                        zip.closeEntry();
+                    }
+                    writer.close();
+                    writer = null;
+                    result = Result.exported;
+                } catch (CancellationException e) {
+                    result = Result.cancelled;
+                } catch (IOException | RuntimeException e) {
+                    LogManager.exception(LOG_TAG, e);
+                } finally {
+                    close(writer);
+                    realm.close();
+                    onFinished(listener, file, result);
+                }
+            }
+        });
+        return task;
+    }
+
+    private static List<UserJid> getUsers(Realm realm, AccountJid account) {
+        RealmResults<MessageItem> messageItems = realm.where(MessageItem.class)
+                .equalTo(MessageItem.Fields.ACCOUNT, account.toString())
+                .distinct(MessageItem.Fields.USER);
+        List<UserJid> users = new ArrayList<>(messageItems.size());
+        for (MessageItem messageItem : messageItems) {
+            try {
+                users.add(messageItem.getUser());
+            } catch (IllegalStateException e) {
+                LogManager.exception(LOG_TAG, e);
+            }
+        }
+        return users;
+    }
+
+    private static void writeChat(Realm realm, AccountJid account, UserJid user,
+                                  ChatExportWriter writer, Progress progress) throws IOException {
+        final boolean isMUC = MUCManager.getInstance().hasRoom(account, user);
+        final String accountName = AccountManager.getInstance().getNickName(account);
+        final String userName = RosterManager.getInstance().getName(account, user);
+
+        writer.writeHeader(account, user, userName + " (" + user + ")");
+        RealmResults<MessageItem> messageItems
+                = MessageDatabaseManager.getChatMessages(realm, account, user);
+        for (MessageItem messageItem : messageItems) {
+            if (messageItem.getAction() == null) {
+                final String name;
+                if (isMUC) {
+                    Resourcepart resource = messageItem.getResource();
+                    name = resource == null ? "" : resource.toString();
+                } else if (messageItem.isIncoming()) {
+                    name = userName;
+                } else {
+                    name = accountName;
+                }
+                Long timestamp = messageItem.getTimestamp();
+                String text = messageItem.getText();
+                writer.writeMessage(name == null ? "" : name, messageItem.isIncoming(),
+                        timestamp == null ? 0 : timestamp, text == null ? "" : text);
+            }
+            progress.onMessage(writer.writer);
+        }
+        writer.writeFooter();
+    }
+
+    private enum Result {
+        exported,
+        failed,
+        cancelled
+    }
+
+    /**
+     * Removes partial file if export was not finished and notifies listener.
+     */
+    private static void onFinished(final Listener listener, final File file, final Result result) {
+        if (result != Result.exported && file.exists() && !file.delete()) {
+            LogManager.w(LOG_TAG, "Can't delete " + file);
+        }
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                switch (result) {
+                    case exported:
+                        listener.onExported(file);
+                        break;
+                    case cancelled:
+                        listener.onExportCancelled();
+                        break;
+                    default:
+                        listener.onExportFailed(new NetworkException(R.string.FILE_NOT_FOUND));
+                        break;
+                }
+            }
+        });
+    }
+
+    private static void close(Writer writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LogManager.exception(LOG_TAG, e);
+        }
+    }
+
+    /**
+     * Counts written messages of the task.
+     */
+    private static class Progress {
+        private final ExportTask task;
+        private final Listener listener;
+        private final int total;
+        private int exported;
+
+        Progress(ExportTask task, Listener listener, int total) {
+            this.task = task;
+            this.listener = listener;
+            this.total = total;
+        }
+
+        /**
+         * Flushes the writer, reports progress and checks cancellation at the end of chunk.
+         *
+         * @throws CancellationException if the task was cancelled.
+         */
+        void onMessage(Writer writer) throws IOException {
+            exported++;
+            if (exported % CHUNK_SIZE != 0) {
+                return;
+            }
+            writer.flush();
+            if (task.isCancelled()) {
+                throw new CancellationException();
+            }
+            final int exported = this.exported;
+            Application.getInstance().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onExportProgress(exported, total);
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.xabber.android.data.message.export;
+
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.time.FastDateFormat;
+import com.xabber.android.utils.StringUtils;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+
+/**
+ * Writes chat history in one of {@link ExportFormat}s.
+ * <p/>
+ * Messages are written as soon as they are passed, nothing is kept in memory.
+ */
+abstract class ChatExportWriter {
+
+    private static final FastDateFormat DATE_FORMAT
+            = FastDateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT);
+
+    protected final Writer writer;
+
+    static ChatExportWriter create(ExportFormat format, Writer writer) {
+        switch (format) {
+            case text:
+                return new TextWriter(writer);
+            case jsonLines:
+                return new JsonLinesWriter(writer);
+            default:
+                return new HtmlWriter(writer);
+        }
+    }
+
+    private ChatExportWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Starts history of the chat.
+     *
+     * @param title name of the chat.
+     */
+    abstract void writeHeader(AccountJid account, UserJid user, String title) throws IOException;
+
+    /**
+     * @param name name of the sender.
+     */
+    abstract void writeMessage(String name, boolean incoming, long timestamp, String text)
+            throws IOException;
+
+    /**
+     * Ends history of the chat.
+     */
+    abstract void writeFooter() throws IOException;
+
+    static String formatDate(long timestamp) {
+        return DATE_FORMAT.format(timestamp);
+    }
+
+    private static class HtmlWriter extends ChatExportWriter {
+
+        HtmlWriter(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        void writeHeader(AccountJid account, UserJid user, String title) throws IOException {
+            writer.write("<html><head><title>");
+            writer.write(StringUtils.escapeHtml(title));
+            writer.write("</title></head><body>");
+        }
+
+        @Override
+        void writeMessage(String name, boolean incoming, long timestamp, String text)
+                throws IOException {
+            writer.write("<b>");
+            writer.write(StringUtils.escapeHtml(name));
+            writer.write("</b>&nbsp;(");
+            writer.write(formatDate(timestamp));
+            writer.write(")<br />\n<p>");
+            writer.write(StringUtils.escapeHtml(text));
+            writer.write("</p><hr />\n");
+        }
+
+        @Override
+        void writeFooter() throws IOException {
+            writer.write("</body></html>");
+        }
+    }
+
+    private static class TextWriter extends ChatExportWriter {
+
+        TextWriter(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        void writeHeader(AccountJid account, UserJid user, String title) throws IOException {
+            writer.write(title);
+            writer.write("\n\n");
+        }
+
+        @Override
+        void writeMessage(String name, boolean incoming, long timestamp, String text)
+                throws IOException {
+            writer.write(name);
+            writer.write(" (");
+            writer.write(formatDate(timestamp));
+            writer.write("):\n");
+            writer.write(text);
+            writer.write("\n\n");
+        }
+
+        @Override
+        void writeFooter() throws IOException {
+        }
+    }
+
+    private static class JsonLinesWriter extends ChatExportWriter {
+
+        private String chat;
+
+        JsonLinesWriter(Writer writer) {
+            super(writer);
+        }
+
+        @Override
+        void writeHeader(AccountJid account, UserJid user, String title) throws IOException {
+            chat = "{\"account\":" + JSONObject.quote(account.toString())
+                    + ",\"user\":" + JSONObject.quote(user.toString());
+        }
+
+        @Override
+        void writeMessage(String name, boolean incoming, long timestamp, String text)
+                throws IOException {
+            writer.write(chat);
+            writer.write(",\"from\":");
+            writer.write(JSONObject.quote(name));
+            writer.write(",\"incoming\":");
+            writer.write(incoming ? "true" : "false");
+            writer.write(",\"timestamp\":");
+            writer.write(Long.toString(timestamp));
+            writer.write(",\"text\":");
+            writer.write(JSONObject.quote(text));
+            writer.write("}\n");
+        }
+
+        @Override
+        void writeFooter() throws IOException {
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.xabber.android.data.message.export;
+
+/**
+ * Format of exported chat history.
+ */
+public enum ExportFormat {
+
+    /**
+     * Html page, compatible with previous versions of export.
+     */
+    html("html"),
+
+    /**
+     * Plain text.
+     */
+    text("txt"),
+
+    /**
+     * Json object per message, one per line.
+     */
+    jsonLines("jsonl");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return file name extension without dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+}
@@ -18,7 +18,9 @@ import android.database.Cursor;
 import android.net.Uri;
 
 import com.xabber.android.data.Application;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.sqlite.PhraseTable;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
@@ -26,6 +28,7 @@ import com.xabber.android.data.message.chat.ChatManager;
 import com.xabber.android.data.roster.RosterManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -34,7 +37,7 @@ import java.util.List;
  *
  * @author alexander.ivanov
  */
-public class PhraseManager implements OnLoadListener {
+public class PhraseManager implements OnLoadDependentListener {
 
     /**
      * List of settings.
@@ -55,6 +58,11 @@ public class PhraseManager implements OnLoadListener {
         phrases = new ArrayList<>();
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         final Collection<Phrase> phrases = new ArrayList<>();
@@ -0,0 +1,308 @@
+package com.xabber.android.data.message.search;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.xabber.android.data.OnLoadDependentListener;
+import com.xabber.android.data.OnLoadListener;
+import com.xabber.android.data.database.DatabaseManager;
+import com.xabber.android.data.database.MessageDatabaseManager;
+import com.xabber.android.data.database.messagerealm.MessageItem;
+import com.xabber.android.data.database.sqlite.MessageSearchTable;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+import com.xabber.android.data.log.LogManager;
+
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Full text search over message history of all accounts.
+ * <p/>
+ * Texts are split into words, case folded and stripped of diacritics, then stored in
+ * {@link MessageSearchTable}. Index is updated on the dedicated thread when messages
+ * are saved or removed, and rebuilt from realm if it is empty while history is not.
+ * Every word of the query matches words starting with it.
+ */
+public class MessageSearchManager implements OnLoadDependentListener {
+
+    private static final String LOG_TAG = MessageSearchManager.class.getSimpleName();
+
+    /**
+     * Number of messages indexed in single transaction during rebuild.
+     */
+    private static final int REBUILD_CHUNK_SIZE = 500;
+
+    private static MessageSearchManager instance;
+
+    private final ExecutorService executor;
+
+    public static synchronized MessageSearchManager getInstance() {
+        if (instance == null) {
+            instance = new MessageSearchManager();
+        }
+
+        return instance;
+    }
+
+    private MessageSearchManager() {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Message search index");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Collections.singletonList(DatabaseManager.getInstance());
+    }
+
+    @Override
+    public void onLoad() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!MessageSearchTable.getInstance().isEmpty()) {
+                    return;
+                }
+                Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+                boolean hasMessages = realm.where(MessageItem.class).count() > 0;
+                realm.close();
+                if (hasMessages) {
+                    rebuildIndex();
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds saved messages to the index.
+     * Messages are read immediately, so they can be managed realm objects
+     * used inside transaction.
+     */
+    public void index(Collection<MessageItem> messageItems) {
+        final List<MessageSearchTable.Entry> entries = new ArrayList<>(messageItems.size());
+        for (MessageItem messageItem : messageItems) {
+            MessageSearchTable.Entry entry = createEntry(messageItem);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                MessageSearchTable.getInstance().write(entries);
+            }
+        });
+    }
+
+    public void index(MessageItem messageItem) {
+        index(Collections.singletonList(messageItem));
+    }
+
+    /**
+     * Removes message from the index.
+     */
+    public void remove(final String uniqueId) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                MessageSearchTable.getInstance().remove(Collections.singletonList(uniqueId));
+            }
+        });
+    }
+
+    /**
+     * Removes all messages of the chat from the index.
+     */
+    public void removeChat(final AccountJid account, final UserJid user) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                MessageSearchTable.getInstance().removeChat(account.toString(), user.toString());
+            }
+        });
+    }
+
+    /**
+     * Drops the index and indexes all stored messages again in background.
+     */
+    public void rebuild() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                rebuildIndex();
+            }
+        });
+    }
+
+    private void rebuildIndex() {
+        final long startTime = System.currentTimeMillis();
+        MessageSearchTable table = MessageSearchTable.getInstance();
+        table.clear();
+
+        int indexed = 0;
+        Realm realm = MessageDatabaseManager.getInstance().getNewBackgroundRealm();
+        try {
+            RealmResults<MessageItem> messageItems = realm.where(MessageItem.class)
+                    .isNotNull(MessageItem.Fields.TEXT)
+                    .isNotEmpty(MessageItem.Fields.TEXT)
+                    .findAllSorted(MessageItem.Fields.TIMESTAMP, Sort.ASCENDING);
+            List<MessageSearchTable.Entry> entries = new ArrayList<>(REBUILD_CHUNK_SIZE);
+            for (MessageItem messageItem : messageItems) {
+                MessageSearchTable.Entry entry = createEntry(messageItem);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+                if (entries.size() >= REBUILD_CHUNK_SIZE) {
+                    table.write(entries);
+                    indexed += entries.size();
+                    entries.clear();
+                }
+            }
+            table.write(entries);
+            indexed += entries.size();
+        } finally {
+            realm.close();
+        }
+
+        LogManager.d(LOG_TAG, "rebuild index of " + indexed + " messages: "
+                + (System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * Finds messages containing all words of the query, the most recent first.
+     * Must be called from background thread.
+     *
+     * @param offset number of results to skip.
+     * @param limit  maximum number of results.
+     */
+    @NonNull
+    public List<MessageSearchResult> search(String query, int offset, int limit) {
+        String match = toMatchQuery(query);
+        if (match == null) {
+            return Collections.emptyList();
+        }
+
+        List<MessageSearchResult> results = new ArrayList<>(limit);
+        Cursor cursor = MessageSearchTable.getInstance().search(match, offset, limit);
+        try {
+            while (cursor.moveToNext()) {
+                try {
+                    results.add(new MessageSearchResult(
+                            AccountJid.from(MessageSearchTable.getAccount(cursor)),
+                            UserJid.from(MessageSearchTable.getUser(cursor)),
+                            MessageSearchTable.getUniqueId(cursor),
+                            MessageSearchTable.getTimestamp(cursor)));
+                } catch (XmppStringprepException | UserJid.UserJidCreateException e) {
+                    LogManager.exception(LOG_TAG, e);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return results;
+    }
+
+    private void execute(final Runnable runnable) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (RuntimeException e) {
+                    LogManager.exception(LOG_TAG, e);
+                }
+            }
+        });
+    }
+
+    @Nullable
+    private static MessageSearchTable.Entry createEntry(MessageItem messageItem) {
+        String text = messageItem.getText();
+        if (TextUtils.isEmpty(text)) {
+            return null;
+        }
+        String content = normalize(text);
+        if (content.isEmpty()) {
+            return null;
+        }
+        Long timestamp = messageItem.getTimestamp();
+        try {
+            return new MessageSearchTable.Entry(messageItem.getUniqueId(),
+                    messageItem.getAccount().toString(), messageItem.getUser().toString(),
+                    timestamp == null ? 0 : timestamp, content);
+        } catch (IllegalStateException e) {
+            LogManager.exception(LOG_TAG, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return query matching words starting with words of the query,
+     * <code>null</code> if there are no words.
+     */
+    @Nullable
+    static String toMatchQuery(String query) {
+        if (query == null) {
+            return null;
+        }
+        String content = normalize(query);
+        if (content.isEmpty()) {
+            return null;
+        }
+        return content.replace(" ", "* ") + "*";
+    }
+
+    /**
+     * Splits text into lower case words without diacritics.
+     *
+     * @return words separated by single space.
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder builder = new StringBuilder(decomposed.length());
+        int index = 0;
+        while (index < decomposed.length()) {
+            int codePoint = decomposed.codePointAt(index);
+            index += Character.charCount(codePoint);
+            if (Character.getType(codePoint) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(codePoint)) {
+                builder.appendCodePoint(codePoint);
+            } else if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ' ') {
+                builder.append(' ');
+            }
+        }
+        int length = builder.length();
+        if (length > 0 && builder.charAt(length - 1) == ' ') {
+            builder.setLength(length - 1);
+        }
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.xabber.android.data.message.search;
+
+import android.support.annotation.NonNull;
+
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.entity.UserJid;
+
+/**
+ * Message found by {@link MessageSearchManager}.
+ */
+public class MessageSearchResult {
+
+    private final @NonNull AccountJid account;
+    private final @NonNull UserJid user;
+    private final @NonNull String uniqueId;
+    private final long timestamp;
+
+    MessageSearchResult(@NonNull AccountJid account, @NonNull UserJid user,
+                        @NonNull String uniqueId, long timestamp) {
+        this.account = account;
+        this.user = user;
+        this.uniqueId = uniqueId;
+        this.timestamp = timestamp;
+    }
+
+    @NonNull
+    public AccountJid getAccount() {
+        return account;
+    }
+
+    @NonNull
+    public UserJid getUser() {
+        return user;
+    }
+
+    /**
+     * @return unique id of the message in realm.
+     */
+    @NonNull
+    public String getUniqueId() {
+        return uniqueId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+}
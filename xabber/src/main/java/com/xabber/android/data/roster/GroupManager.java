@@ -18,6 +18,8 @@ import android.database.Cursor;
 
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
+import com.xabber.android.data.OnLoadDependentListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.account.AccountItem;
@@ -28,9 +30,11 @@ import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.NestedMap;
 import com.xabber.android.data.entity.NestedMap.Entry;
 
+import java.util.Arrays;
+import java.util.Collection;
 import org.jxmpp.stringprep.XmppStringprepException;
 
-public class GroupManager implements OnLoadListener, OnAccountRemovedListener,
+public class GroupManager implements OnLoadDependentListener, OnAccountRemovedListener,
         GroupStateProvider {
 
     /**
@@ -86,6 +90,11 @@ public class GroupManager implements OnLoadListener, OnAccountRemovedListener,
         groupConfigurations = new NestedMap<>();
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         final NestedMap<GroupConfiguration> groupConfigurations = new NestedMap<>();
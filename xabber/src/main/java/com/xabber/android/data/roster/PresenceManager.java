@@ -19,6 +19,7 @@ import android.support.annotation.Nullable;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.account.AccountItem;
@@ -27,7 +28,7 @@ import com.xabber.android.data.account.StatusMode;
 import com.xabber.android.data.account.listeners.OnAccountDisabledListener;
 import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.StanzaSender;
-import com.xabber.android.data.connection.listeners.OnPacketListener;
+import com.xabber.android.data.connection.listeners.OnBackgroundPacketListener;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
 import com.xabber.android.data.extension.avatar.AvatarManager;
@@ -49,6 +50,7 @@ import org.jxmpp.jid.EntityBareJid;
 import org.jxmpp.jid.parts.Resourcepart;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -61,8 +63,8 @@ import java.util.Set;
  *
  * @author alexander.ivanov
  */
-public class PresenceManager implements OnLoadListener, OnAccountDisabledListener,
-        OnPacketListener {
+public class PresenceManager implements OnLoadDependentListener, OnAccountDisabledListener,
+        OnBackgroundPacketListener {
 
     private static PresenceManager instance;
 
@@ -86,6 +88,11 @@ public class PresenceManager implements OnLoadListener, OnAccountDisabledListene
         requestedSubscriptions = new HashMap<>();
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(AccountManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         Application.getInstance().runOnUiThread(new Runnable() {
@@ -217,9 +224,7 @@ public class PresenceManager implements OnLoadListener, OnAccountDisabledListene
             return;
         }
 
-        if (presence.isAvailable()) {
-            CapabilitiesManager.getInstance().onPresence(account, presence);
-        }
+        CapabilitiesManager.getInstance().onPresence(account, presence);
 
         for (OnStatusChangeListener listener : Application.getInstance().getManagers(OnStatusChangeListener.class)) {
                 listener.onStatusChanged(account, from,
@@ -279,8 +284,11 @@ public class PresenceManager implements OnLoadListener, OnAccountDisabledListene
         }
 
         Presence presence = (Presence) stanza;
+        if (presence.getType() != Presence.Type.subscribe) {
+            return;
+        }
 
-        UserJid from;
+        final UserJid from;
         try {
             from = UserJid.from(stanza.getFrom());
         } catch (UserJid.UserJidCreateException e) {
@@ -288,65 +296,74 @@ public class PresenceManager implements OnLoadListener, OnAccountDisabledListene
             return;
         }
 
-        if (presence.getType() == Presence.Type.subscribe) {
-            AccountJid account = connection.getAccount();
-
-            // check spam-filter settings
-
-            // reject all subscribe-requests
-            if (SettingsManager.spamFilterMode() == SettingsManager.SpamFilterMode.noAuth) {
-                // send a warning message to sender
-                MessageManager.getInstance().sendMessageWithoutChat(from.getJid(),
-                        StringUtils.randomString(12), account,
-                        Application.getInstance().getResources().getString(R.string.spam_filter_ban_subscription));
-                // and discard subscription
-                try {
-                    discardSubscription(account, UserJid.from(from.toString()));
-                } catch (NetworkException | UserJid.UserJidCreateException e) {
-                    e.printStackTrace();
-                }
+        final AccountJid account = connection.getAccount();
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                onSubscribe(account, from);
+            }
+        });
+    }
 
-                return;
+    /**
+     * Applies spam filter to the incoming subscription request.
+     */
+    private void onSubscribe(AccountJid account, UserJid from) {
+        // check spam-filter settings
+
+        // reject all subscribe-requests
+        if (SettingsManager.spamFilterMode() == SettingsManager.SpamFilterMode.noAuth) {
+            // send a warning message to sender
+            MessageManager.getInstance().sendMessageWithoutChat(from.getJid(),
+                    StringUtils.randomString(12), account,
+                    Application.getInstance().getResources().getString(R.string.spam_filter_ban_subscription));
+            // and discard subscription
+            try {
+                discardSubscription(account, UserJid.from(from.toString()));
+            } catch (NetworkException | UserJid.UserJidCreateException e) {
+                e.printStackTrace();
             }
 
-            // require captcha for subscription
-            if (SettingsManager.spamFilterMode() == SettingsManager.SpamFilterMode.authCaptcha) {
+            return;
+        }
 
-                Captcha captcha = CaptchaManager.getInstance().getCaptcha(account, from);
+        // require captcha for subscription
+        if (SettingsManager.spamFilterMode() == SettingsManager.SpamFilterMode.authCaptcha) {
 
-                // if captcha for this user already exist, check expires time and discard if need
-                if (captcha != null) {
+            Captcha captcha = CaptchaManager.getInstance().getCaptcha(account, from);
 
-                    if (captcha.getExpiresDate() < System.currentTimeMillis()) {
-                        // discard subscription
-                        try {
-                            discardSubscription(account, UserJid.from(from.toString()));
-                        } catch (NetworkException | UserJid.UserJidCreateException e) {
-                            e.printStackTrace();
-                        }
-                        return;
-                    }
+            // if captcha for this user already exist, check expires time and discard if need
+            if (captcha != null) {
 
-                    // skip subscription, waiting for captcha in messageManager
+                if (captcha.getExpiresDate() < System.currentTimeMillis()) {
+                    // discard subscription
+                    try {
+                        discardSubscription(account, UserJid.from(from.toString()));
+                    } catch (NetworkException | UserJid.UserJidCreateException e) {
+                        e.printStackTrace();
+                    }
                     return;
+                }
 
-                } else {
-                    // generate captcha
-                    String captchaQuestion = CaptchaManager.getInstance().generateAndSaveCaptcha(account, from);
+                // skip subscription, waiting for captcha in messageManager
+                return;
 
-                    // send captcha message to sender
-                    MessageManager.getInstance().sendMessageWithoutChat(from.getJid(),
-                            StringUtils.randomString(12), account,
-                            Application.getInstance().getResources().getString(R.string.spam_filter_limit_subscription) + " " + captchaQuestion);
+            } else {
+                // generate captcha
+                String captchaQuestion = CaptchaManager.getInstance().generateAndSaveCaptcha(account, from);
 
-                    // and skip subscription, waiting for captcha in messageManager
-                    return;
-                }
-            }
+                // send captcha message to sender
+                MessageManager.getInstance().sendMessageWithoutChat(from.getJid(),
+                        StringUtils.randomString(12), account,
+                        Application.getInstance().getResources().getString(R.string.spam_filter_limit_subscription) + " " + captchaQuestion);
 
-            // subscription request
-            handleSubscriptionRequest(account, from);
+                // and skip subscription, waiting for captcha in messageManager
+                return;
+            }
         }
+
+        // subscription request
+        handleSubscriptionRequest(account, from);
     }
 
     public void handleSubscriptionRequest(AccountJid account, UserJid from) {
@@ -0,0 +1,271 @@
+package com.xabber.android.data.roster;
+
+import android.text.TextUtils;
+
+import com.xabber.android.data.database.RealmManager;
+import com.xabber.android.data.database.realm.RosterItemRealm;
+import com.xabber.android.data.database.realm.RosterVersionRealm;
+import com.xabber.android.data.entity.AccountJid;
+import com.xabber.android.data.log.LogManager;
+
+import org.jivesoftware.smack.roster.packet.RosterPacket;
+import org.jivesoftware.smack.roster.rosterstore.RosterStore;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * Keeps roster of the account in Realm, so that roster versioning (XEP-0237) can be used
+ * and contact list can be shown before connection is established.
+ * <p/>
+ * Methods are called by Smack from its threads.
+ */
+public class RealmRosterStore implements RosterStore {
+
+    private static final String LOG_TAG = RealmRosterStore.class.getSimpleName();
+
+    private final String account;
+
+    public RealmRosterStore(AccountJid account) {
+        this.account = account.toString();
+    }
+
+    @Override
+    public List<RosterPacket.Item> getEntries() {
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            return toItems(getItems(realm, account));
+        } finally {
+            realm.close();
+        }
+    }
+
+    @Override
+    public RosterPacket.Item getEntry(Jid bareJid) {
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            RosterItemRealm itemRealm = realm.where(RosterItemRealm.class)
+                    .equalTo(RosterItemRealm.Fields.ID,
+                            RosterItemRealm.createId(account, bareJid.asBareJid().toString()))
+                    .findFirst();
+            if (itemRealm == null) {
+                return null;
+            }
+            return toItem(itemRealm);
+        } finally {
+            realm.close();
+        }
+    }
+
+    @Override
+    public String getRosterVersion() {
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            RosterVersionRealm versionRealm = realm.where(RosterVersionRealm.class)
+                    .equalTo(RosterVersionRealm.Fields.ACCOUNT, account)
+                    .findFirst();
+            if (versionRealm == null) {
+                return null;
+            }
+            return versionRealm.getVersion();
+        } finally {
+            realm.close();
+        }
+    }
+
+    @Override
+    public boolean addEntry(RosterPacket.Item item, String version) {
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            realm.beginTransaction();
+            realm.copyToRealmOrUpdate(toItemRealm(account, item));
+            setVersion(realm, version);
+            realm.commitTransaction();
+            return true;
+        } catch (RuntimeException e) {
+            cancelTransaction(realm, e);
+            return false;
+        } finally {
+            realm.close();
+        }
+    }
+
+    @Override
+    public boolean resetEntries(Collection<RosterPacket.Item> items, String version) {
+        List<RosterItemRealm> itemRealms = new ArrayList<>(items.size());
+        for (RosterPacket.Item item : items) {
+            itemRealms.add(toItemRealm(account, item));
+        }
+
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            realm.beginTransaction();
+            getItems(realm, account).deleteAllFromRealm();
+            realm.copyToRealmOrUpdate(itemRealms);
+            setVersion(realm, version);
+            realm.commitTransaction();
+            return true;
+        } catch (RuntimeException e) {
+            cancelTransaction(realm, e);
+            return false;
+        } finally {
+            realm.close();
+        }
+    }
+
+    @Override
+    public boolean removeEntry(Jid bareJid, String version) {
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            realm.beginTransaction();
+            RosterItemRealm itemRealm = realm.where(RosterItemRealm.class)
+                    .equalTo(RosterItemRealm.Fields.ID,
+                            RosterItemRealm.createId(account, bareJid.asBareJid().toString()))
+                    .findFirst();
+            if (itemRealm != null) {
+                itemRealm.deleteFromRealm();
+            }
+            setVersion(realm, version);
+            realm.commitTransaction();
+            return true;
+        } catch (RuntimeException e) {
+            cancelTransaction(realm, e);
+            return false;
+        } finally {
+            realm.close();
+        }
+    }
+
+    @Override
+    public void resetStore() {
+        clear(account);
+    }
+
+    /**
+     * Removes stored roster and version of the account.
+     * Must be called from background thread.
+     */
+    static void clear(String account) {
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            realm.beginTransaction();
+            getItems(realm, account).deleteAllFromRealm();
+            realm.where(RosterVersionRealm.class)
+                    .equalTo(RosterVersionRealm.Fields.ACCOUNT, account)
+                    .findAll().deleteAllFromRealm();
+            realm.commitTransaction();
+        } catch (RuntimeException e) {
+            cancelTransaction(realm, e);
+        } finally {
+            realm.close();
+        }
+    }
+
+    /**
+     * Reads stored rosters of all accounts.
+     * Must be called from background thread.
+     *
+     * @return roster items by account string.
+     */
+    static Map<String, List<RosterPacket.Item>> loadAll() {
+        Map<String, List<RosterPacket.Item>> result = new HashMap<>();
+        Realm realm = RealmManager.getInstance().getNewBackgroundRealm();
+        try {
+            for (RosterItemRealm itemRealm : realm.where(RosterItemRealm.class).findAll()) {
+                RosterPacket.Item item = toItem(itemRealm);
+                if (item == null) {
+                    continue;
+                }
+                List<RosterPacket.Item> items = result.get(itemRealm.getAccount());
+                if (items == null) {
+                    items = new ArrayList<>();
+                    result.put(itemRealm.getAccount(), items);
+                }
+                items.add(item);
+            }
+        } finally {
+            realm.close();
+        }
+        return result;
+    }
+
+    private static RealmResults<RosterItemRealm> getItems(Realm realm, String account) {
+        return realm.where(RosterItemRealm.class)
+                .equalTo(RosterItemRealm.Fields.ACCOUNT, account)
+                .findAll();
+    }
+
+    private void setVersion(Realm realm, String version) {
+        RosterVersionRealm versionRealm = new RosterVersionRealm(account);
+        versionRealm.setVersion(version);
+        realm.copyToRealmOrUpdate(versionRealm);
+    }
+
+    private static void cancelTransaction(Realm realm, RuntimeException e) {
+        LogManager.exception(LOG_TAG, e);
+        if (realm.isInTransaction()) {
+            realm.cancelTransaction();
+        }
+    }
+
+    private static List<RosterPacket.Item> toItems(RealmResults<RosterItemRealm> itemRealms) {
+        List<RosterPacket.Item> items = new ArrayList<>(itemRealms.size());
+        for (RosterItemRealm itemRealm : itemRealms) {
+            RosterPacket.Item item = toItem(itemRealm);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private static RosterPacket.Item toItem(RosterItemRealm itemRealm) {
+        BareJid jid;
+        try {
+            jid = JidCreate.bareFrom(itemRealm.getJid());
+        } catch (XmppStringprepException e) {
+            LogManager.exception(LOG_TAG, e);
+            return null;
+        }
+
+        RosterPacket.Item item = new RosterPacket.Item(jid, itemRealm.getName(),
+                itemRealm.isSubscriptionPending());
+        if (itemRealm.getItemType() != null) {
+            try {
+                item.setItemType(RosterPacket.ItemType.valueOf(itemRealm.getItemType()));
+            } catch (IllegalArgumentException e) {
+                LogManager.exception(LOG_TAG, e);
+            }
+        }
+        item.setApproved(itemRealm.isApproved());
+        if (!TextUtils.isEmpty(itemRealm.getGroups())) {
+            for (String group : itemRealm.getGroups().split(RosterItemRealm.GROUP_SEPARATOR)) {
+                item.addGroupName(group);
+            }
+        }
+        return item;
+    }
+
+    private static RosterItemRealm toItemRealm(String account, RosterPacket.Item item) {
+        RosterItemRealm itemRealm = new RosterItemRealm(account, item.getJid().toString());
+        itemRealm.setName(item.getName());
+        if (item.getItemType() != null) {
+            itemRealm.setItemType(item.getItemType().name());
+        }
+        itemRealm.setSubscriptionPending(item.isSubscriptionPending());
+        itemRealm.setApproved(item.isApproved());
+        itemRealm.setGroups(TextUtils.join(RosterItemRealm.GROUP_SEPARATOR, item.getGroupNames()));
+        return itemRealm;
+    }
+
+}
@@ -21,13 +21,17 @@ import android.text.TextUtils;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.OnLoadDependentListener;
+import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.account.listeners.OnAccountDisabledListener;
 import com.xabber.android.data.account.listeners.OnAccountEnabledListener;
+import com.xabber.android.data.account.listeners.OnAccountRemovedListener;
 import com.xabber.android.data.connection.ConnectionItem;
 import com.xabber.android.data.connection.StanzaSender;
 import com.xabber.android.data.connection.listeners.OnDisconnectListener;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.NestedMap;
 import com.xabber.android.data.entity.UserJid;
@@ -50,9 +54,12 @@ import org.jxmpp.jid.Jid;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -60,8 +67,9 @@ import java.util.Set;
  *
  * @author alexander.ivanov
  */
-public class RosterManager implements OnDisconnectListener, OnAccountEnabledListener,
-        OnAccountDisabledListener {
+public class RosterManager implements OnLoadDependentListener, OnDisconnectListener,
+        OnAccountEnabledListener, OnAccountDisabledListener, OnAccountRemovedListener,
+        OnRosterReceivedListener {
 
     private static final String LOG_TAG = RosterManager.class.getSimpleName();
 
@@ -71,6 +79,17 @@ public class RosterManager implements OnDisconnectListener, OnAccountEnabledList
 
     private final NestedMap<WeakReference<AbstractContact>> contactsCache;
 
+    /**
+     * Contacts with chat state changed since last {@link OnChatStateListener} notification.
+     */
+    private static final Set<RosterContact> changedChatStates = new LinkedHashSet<>();
+
+    /**
+     * Whether {@link #notifyChatStatesRunnable} was posted and not started yet.
+     * Guarded by {@link #changedChatStates}.
+     */
+    private static boolean chatStatesNotificationPosted;
+
     private RosterManager() {
         rosterContacts = new NestedMap<>();
         contactsCache = new NestedMap<>();
@@ -84,6 +103,64 @@ public class RosterManager implements OnDisconnectListener, OnAccountEnabledList
         return instance;
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance(), AccountManager.getInstance());
+    }
+
+    @Override
+    public void onLoad() {
+        final Map<String, List<RosterPacket.Item>> items = RealmRosterStore.loadAll();
+        Application.getInstance().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                onLoaded(items);
+            }
+        });
+    }
+
+    /**
+     * Shows stored rosters until rosters are received from the server.
+     */
+    private void onLoaded(Map<String, List<RosterPacket.Item>> items) {
+        Collection<RosterContact> newContacts = new ArrayList<>();
+
+        for (AccountJid account : AccountManager.getInstance().getAllAccounts()) {
+            List<RosterPacket.Item> accountItems = items.get(account.toString());
+            if (accountItems == null || isRosterReceived(account)) {
+                continue;
+            }
+
+            AccountItem accountItem = AccountManager.getInstance().getAccount(account);
+            boolean enabled = accountItem != null && accountItem.isEnabled();
+
+            for (RosterPacket.Item item : accountItems) {
+                if (rosterContacts.get(account.toString(), item.getJid().toString()) != null) {
+                    continue;
+                }
+                try {
+                    RosterContact contact = RosterContact
+                            .getRosterContact(account, UserJid.from(item.getJid()), item.getName());
+                    contact.clearGroupReferences();
+                    for (String group : item.getGroupNames()) {
+                        contact.addGroupReference(new RosterGroupReference(new RosterGroup(account, group)));
+                    }
+                    contact.setEnabled(enabled);
+                    contact.setConnected(false);
+                    rosterContacts.put(account.toString(), item.getJid().toString(), contact);
+                    newContacts.add(contact);
+                } catch (UserJid.UserJidCreateException e) {
+                    LogManager.exception(LOG_TAG, e);
+                }
+            }
+        }
+
+        LogManager.i(LOG_TAG, "onLoaded stored contacts: " + newContacts.size());
+        if (!newContacts.isEmpty()) {
+            onContactsChanged(newContacts);
+        }
+    }
+
     @Nullable
     private Roster getRoster(AccountJid account) {
         final AccountItem accountItem = AccountManager.getInstance().getAccount(account);
@@ -538,6 +615,30 @@ public class RosterManager implements OnDisconnectListener, OnAccountEnabledList
         }
     }
 
+    /**
+     * Removes stored contacts that are absent in received roster.
+     */
+    @Override
+    public void onRosterReceived(AccountItem accountItem) {
+        final AccountJid account = accountItem.getAccount();
+        final Roster roster = getRoster(account);
+        if (roster == null) {
+            return;
+        }
+
+        Collection<Jid> removed = new ArrayList<>();
+        for (RosterContact contact : new ArrayList<>(getAccountRosterContacts(account))) {
+            BareJid jid = contact.getUser().getBareJid();
+            if (roster.getEntry(jid) == null) {
+                removed.add(jid);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            onContactsDeleted(account, removed);
+        }
+    }
+
     @Override
     public void onAccountEnabled(AccountItem accountItem) {
         setEnabled(accountItem.getAccount(), true);
@@ -548,6 +649,18 @@ public class RosterManager implements OnDisconnectListener, OnAccountEnabledList
         setEnabled(accountItem.getAccount(), false);
     }
 
+    @Override
+    public void onAccountRemoved(AccountItem accountItem) {
+        final String account = accountItem.getAccount().toString();
+        rosterContacts.clear(account);
+        Application.getInstance().runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                RealmRosterStore.clear(account);
+            }
+        });
+    }
+
     /**
      * Sets whether contacts in accounts are enabled.
      */
@@ -591,22 +704,37 @@ public class RosterManager implements OnDisconnectListener, OnAccountEnabledList
 
     /**
      * Notifies registered {@link OnChatStateListener}.
+     * <p/>
+     * Can be called from any thread. Changes made before listeners were
+     * notified are delivered by the single notification.
      */
     public static void onChatStateChanged(AccountJid account, UserJid bareAddress) {
-        final Collection<RosterContact> entities = new ArrayList<>();
         RosterContact rosterContact = getInstance().getRosterContact(account, bareAddress);
-        if (rosterContact != null) {
-            entities.add(rosterContact);
+        synchronized (changedChatStates) {
+            if (rosterContact != null) {
+                changedChatStates.add(rosterContact);
+            }
+            if (chatStatesNotificationPosted) {
+                return;
+            }
+            chatStatesNotificationPosted = true;
         }
+        Application.getInstance().runOnUiThread(notifyChatStatesRunnable);
+    }
 
-        Application.getInstance().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                for (OnChatStateListener onChatStateListener : Application
-                        .getInstance().getUIListeners(OnChatStateListener.class)) {
-                    onChatStateListener.onChatStateChanged(entities);
-                }
+    private static final Runnable notifyChatStatesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final Collection<RosterContact> entities;
+            synchronized (changedChatStates) {
+                entities = new ArrayList<>(changedChatStates);
+                changedChatStates.clear();
+                chatStatesNotificationPosted = false;
             }
-        });
-    }
+            for (OnChatStateListener onChatStateListener : Application
+                    .getInstance().getUIListeners(OnChatStateListener.class)) {
+                onChatStateListener.onChatStateChanged(entities);
+            }
+        }
+    };
 }
@@ -6,10 +6,12 @@ import android.util.Log;
 
 import com.xabber.android.data.Application;
 import com.xabber.android.data.NetworkException;
+import com.xabber.android.data.OnLoadDependentListener;
 import com.xabber.android.data.OnLoadListener;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.account.AccountItem;
 import com.xabber.android.data.account.AccountManager;
+import com.xabber.android.data.database.DatabaseManager;
 import com.xabber.android.data.database.RealmManager;
 import com.xabber.android.data.database.realm.EmailRealm;
 import com.xabber.android.data.database.realm.SocialBindingRealm;
@@ -25,6 +27,7 @@ import org.greenrobot.eventbus.EventBus;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -47,7 +50,7 @@ import rx.subscriptions.CompositeSubscription;
  * Created by valery.miller on 19.07.17.
  */
 
-public class XabberAccountManager implements OnLoadListener {
+public class XabberAccountManager implements OnLoadDependentListener {
 
     private static final String LOG_TAG = XabberAccountManager.class.getSimpleName();
     private static XabberAccountManager instance;
@@ -198,6 +201,11 @@ public class XabberAccountManager implements OnLoadListener {
         compositeSubscription.add(updateSettingsSubscription);
     }
 
+    @Override
+    public Collection<? extends OnLoadListener> getLoadDependencies() {
+        return Arrays.<OnLoadListener>asList(DatabaseManager.getInstance(), AccountManager.getInstance());
+    }
+
     @Override
     public void onLoad() {
         XabberAccount account = loadXabberAccountFromRealm();
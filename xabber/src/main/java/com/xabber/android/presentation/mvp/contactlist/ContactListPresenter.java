@@ -53,9 +53,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 import eu.davidea.flexibleadapter.items.IFlexible;
@@ -79,6 +82,34 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
     protected Locale locale = Locale.getDefault();
     private ChatListState currentChatsState = ChatListState.recent;
 
+    /**
+     * Contact items of the last built structure by {@link #getItemKey}.
+     * Items are reused by the next build unless contact was changed.
+     */
+    private Map<String, ContactVO> contactItems = new HashMap<>();
+
+    /**
+     * Contacts changed since the last build by {@link #getContactKey}.
+     */
+    private final Set<String> changedContacts = new HashSet<>();
+
+    /**
+     * Whether all contact items must be recreated by the next build.
+     */
+    private boolean allContactsChanged = true;
+
+    /**
+     * Sorted contact keys of the groups of the last build by {@link #getParentKey}.
+     * Unchanged contacts keep their order, so the next build only inserts changed ones.
+     */
+    private Map<String, List<String>> sortedContacts = new HashMap<>();
+    private Map<String, List<String>> newSortedContacts = new HashMap<>();
+
+    /**
+     * Comparator used to sort {@link #sortedContacts}.
+     */
+    private Comparator<AbstractContact> sortedComparator;
+
     public static ContactListPresenter getInstance(Context context) {
         if (instance == null) instance = new ContactListPresenter(context);
         return instance;
@@ -94,6 +125,8 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
         Application.getInstance().addUIListener(OnAccountChangedListener.class, this);
         Application.getInstance().addUIListener(OnContactChangedListener.class, this);
         EventBus.getDefault().register(this);
+        // changes were not tracked while view was unbound
+        allContactsChanged = true;
         structureBuilder.build();
     }
 
@@ -109,9 +142,17 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
     }
 
     public void updateContactList() {
+        allContactsChanged = true;
         structureBuilder.refreshRequest();
     }
 
+    /**
+     * Item of the contact will be recreated by the next build.
+     */
+    public void onContactChanged(AccountJid account, UserJid user) {
+        changedContacts.add(account + "/" + user);
+    }
+
     public void onItemClick(IFlexible item) {
         if (item instanceof ContactVO) {
             AccountJid accountJid = ((ContactVO) item).getAccountJid();
@@ -171,16 +212,21 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
 
     @Override
     public void onAccountsChanged(Collection<AccountJid> accounts) {
+        allContactsChanged = true;
         structureBuilder.refreshRequest();
     }
 
     @Override
     public void onContactsChanged(Collection<RosterContact> entities) {
+        for (RosterContact contact : entities) {
+            changedContacts.add(getContactKey(contact));
+        }
         structureBuilder.refreshRequest();
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onNewMessageEvent(NewMessageEvent event) {
+        allContactsChanged = true;
         structureBuilder.refreshRequest();
     }
 
@@ -189,6 +235,7 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
 //        listener.hidePlaceholder();
 
         List<IFlexible> items = new ArrayList<>();
+        Map<String, ContactVO> newContactItems = new HashMap<>();
 
         final Collection<RosterContact> allRosterContacts = RosterManager.getInstance().getAllContacts();
 
@@ -358,9 +405,9 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
                     for (AbstractContact contact : chatsGroup.getAbstractContacts()) {
                         if (i == MAX_RECENT_ITEMS - 1) {
                             if (getAllChatsSize() > MAX_RECENT_ITEMS)
-                                items.add(ChatWithButtonVO.convert(contact, this));
-                            else items.add(ChatVO.convert(contact, this, null));
-                        } else items.add(ChatVO.convert(contact, this, null));
+                                items.add(getContactItem(newContactItems, "", contact, ItemType.chatWithButton));
+                            else items.add(getContactItem(newContactItems, "", contact, ItemType.chat));
+                        } else items.add(getContactItem(newContactItems, "", contact, ItemType.chat));
                         i++;
                     }
 
@@ -375,9 +422,11 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
 
                             if (rosterAccount.getTotal() != 0) {
                                 if (showGroups) {
-                                    createContactListWithAccountsAndGroups(items, rosterAccount, showEmptyGroups, comparator);
+                                    createContactListWithAccountsAndGroups(items, newContactItems,
+                                            rosterAccount, showEmptyGroups, comparator);
                                 } else {
-                                    createContactListWithAccounts(items, rosterAccount, comparator);
+                                    createContactListWithAccounts(items, newContactItems,
+                                            rosterAccount, comparator);
                                 }
                             } else {
                                 AccountWithButtonsVO account = AccountWithButtonsVO.convert(rosterAccount, this);
@@ -389,25 +438,38 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
                         }
                     } else {
                         if (showGroups) {
-                            createContactListWithGroups(items, showEmptyGroups, groups, comparator);
+                            createContactListWithGroups(items, newContactItems, showEmptyGroups,
+                                    groups, comparator);
                         } else {
-                            createContactList(items, contacts, comparator);
+                            createContactList(items, newContactItems, contacts, comparator);
                         }
                     }
-                } else
-                    items.addAll(ChatVO.convert(chatsGroup.getAbstractContacts(), this, null));
+                } else {
+                    for (AbstractContact contact : chatsGroup.getAbstractContacts()) {
+                        items.add(getContactItem(newContactItems, "", contact, ItemType.chat));
+                    }
+                }
             }
         } else { // Search
             final ArrayList<AbstractContact> baseEntities = getSearchResults(rosterContacts, comparator, abstractChats);
             items.clear();
 
             items.add(new CategoryVO(context.getString(R.string.category_title_contacts)));
-            items.addAll(SettingsManager.contactsShowMessages()
-                    ? ExtContactVO.convert(baseEntities, this)
-                    : ContactVO.convert(baseEntities, this));
+            for (AbstractContact contact : baseEntities) {
+                items.add(getContactItem(newContactItems, "", contact, getContactItemType()));
+            }
             hasVisibleContacts = baseEntities.size() > 0;
         }
 
+        contactItems = newContactItems;
+        Map<String, List<String>> previousSortedContacts = sortedContacts;
+        sortedContacts = newSortedContacts;
+        newSortedContacts = previousSortedContacts;
+        newSortedContacts.clear();
+        sortedComparator = comparator;
+        changedContacts.clear();
+        allContactsChanged = false;
+
         if (view != null) view.onContactListChanged(commonState, hasContacts, hasVisibleContacts,
                     filterString != null);
 
@@ -477,7 +539,9 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
         return chatsGroup;
     }
 
-    private void createContactListWithAccountsAndGroups(List<IFlexible> items, AccountConfiguration rosterAccount,
+    private void createContactListWithAccountsAndGroups(List<IFlexible> items,
+                                                        Map<String, ContactVO> newContactItems,
+                                                        AccountConfiguration rosterAccount,
                                                         boolean showEmptyGroups, Comparator<AbstractContact> comparator) {
         AccountWithGroupsVO account = AccountWithGroupsVO.convert(rosterAccount, this);
         boolean firstGroupInAccount = true;
@@ -486,12 +550,12 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
             if (showEmptyGroups || !rosterConfiguration.isEmpty()) {
                 GroupVO group = GroupVO.convert(rosterConfiguration, firstGroupInAccount, this);
                 firstGroupInAccount = false;
-                rosterConfiguration.sortAbstractContacts(comparator);
 
-                for (AbstractContact contact : rosterConfiguration.getAbstractContacts()) {
-                    group.addSubItem(SettingsManager.contactsShowMessages()
-                            ? ExtContactVO.convert(contact, this)
-                            : ContactVO.convert(contact, this));
+                String parent = getParentKey(rosterConfiguration);
+                for (AbstractContact contact : getSortedContacts(parent,
+                        rosterConfiguration.getAbstractContacts(), comparator)) {
+                    group.addSubItem(getContactItem(newContactItems, parent, contact,
+                            getContactItemType()));
                 }
                 account.addSubItem(group);
             }
@@ -499,43 +563,141 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
         items.add(account);
     }
 
-    private void createContactListWithAccounts(List<IFlexible> items, AccountConfiguration rosterAccount,
+    private void createContactListWithAccounts(List<IFlexible> items,
+                                               Map<String, ContactVO> newContactItems,
+                                               AccountConfiguration rosterAccount,
                                                Comparator<AbstractContact> comparator) {
         AccountWithContactsVO account = AccountWithContactsVO.convert(rosterAccount, this);
-        rosterAccount.sortAbstractContacts(comparator);
 
-        for (AbstractContact contact : rosterAccount.getAbstractContacts()) {
-            account.addSubItem(SettingsManager.contactsShowMessages()
-                    ? ExtContactVO.convert(contact, this)
-                    : ContactVO.convert(contact, this));
+        String parent = getParentKey(rosterAccount);
+        for (AbstractContact contact : getSortedContacts(parent,
+                rosterAccount.getAbstractContacts(), comparator)) {
+            account.addSubItem(getContactItem(newContactItems, parent, contact,
+                    getContactItemType()));
         }
         items.add(account);
     }
 
-    private void createContactListWithGroups(List<IFlexible> items, boolean showEmptyGroups,
+    private void createContactListWithGroups(List<IFlexible> items,
+                                             Map<String, ContactVO> newContactItems,
+                                             boolean showEmptyGroups,
                                              Map<String, GroupConfiguration> groups,
                                              Comparator<AbstractContact> comparator) {
         for (GroupConfiguration rosterConfiguration : groups.values()) {
             if (showEmptyGroups || !rosterConfiguration.isEmpty()) {
                 GroupVO group = GroupVO.convert(rosterConfiguration, false, this);
-                rosterConfiguration.sortAbstractContacts(comparator);
 
-                for (AbstractContact contact : rosterConfiguration.getAbstractContacts()) {
-                    group.addSubItem(SettingsManager.contactsShowMessages()
-                            ? ExtContactVO.convert(contact, this)
-                            : ContactVO.convert(contact, this));
+                String parent = getParentKey(rosterConfiguration);
+                for (AbstractContact contact : getSortedContacts(parent,
+                        rosterConfiguration.getAbstractContacts(), comparator)) {
+                    group.addSubItem(getContactItem(newContactItems, parent, contact,
+                            getContactItemType()));
                 }
                 items.add(group);
             }
         }
     }
 
-    private void createContactList(List<IFlexible> items, List<AbstractContact> contacts,
+    private void createContactList(List<IFlexible> items, Map<String, ContactVO> newContactItems,
+                                   List<AbstractContact> contacts,
                                    Comparator<AbstractContact> comparator) {
-        Collections.sort(contacts, comparator);
-        items.addAll(SettingsManager.contactsShowMessages()
-                ? ExtContactVO.convert(contacts, this)
-                : ContactVO.convert(contacts, this));
+        for (AbstractContact contact : getSortedContacts("", contacts, comparator)) {
+            items.add(getContactItem(newContactItems, "", contact, getContactItemType()));
+        }
+    }
+
+    /**
+     * Sorts contacts of the group reusing order of the last build.
+     * Contacts not changed since it keep their relative order, changed and new ones
+     * are inserted by binary search, so only O(k log n) comparisons are made for k changes.
+     *
+     * @param parent key of the group or account, empty for top level contacts.
+     */
+    private List<AbstractContact> getSortedContacts(String parent, Collection<AbstractContact> contacts,
+                                                    Comparator<AbstractContact> comparator) {
+        List<AbstractContact> sorted = new ArrayList<>(contacts.size());
+        List<String> previous = sortedContacts.get(parent);
+
+        if (previous == null || allContactsChanged || comparator != sortedComparator) {
+            sorted.addAll(contacts);
+            Collections.sort(sorted, comparator);
+        } else {
+            Map<String, AbstractContact> remaining = new HashMap<>(contacts.size());
+            for (AbstractContact contact : contacts) {
+                remaining.put(getContactKey(contact), contact);
+            }
+            for (String contactKey : previous) {
+                if (changedContacts.contains(contactKey)) {
+                    continue;
+                }
+                AbstractContact contact = remaining.remove(contactKey);
+                if (contact != null) {
+                    sorted.add(contact);
+                }
+            }
+            for (AbstractContact contact : remaining.values()) {
+                int index = Collections.binarySearch(sorted, contact, comparator);
+                sorted.add(index < 0 ? -index - 1 : index, contact);
+            }
+        }
+
+        List<String> keys = new ArrayList<>(sorted.size());
+        for (AbstractContact contact : sorted) {
+            keys.add(getContactKey(contact));
+        }
+        newSortedContacts.put(parent, keys);
+        return sorted;
+    }
+
+    private ItemType getContactItemType() {
+        return SettingsManager.contactsShowMessages() ? ItemType.extContact : ItemType.contact;
+    }
+
+    /**
+     * Returns item of the last build if contact was not changed since it, creates new one otherwise.
+     *
+     * @param newContactItems items of the current build, returned item will be added to it.
+     * @param parent key of the group or account containing item, empty for top level items.
+     */
+    private ContactVO getContactItem(Map<String, ContactVO> newContactItems, String parent,
+                                     AbstractContact contact, ItemType type) {
+        String contactKey = getContactKey(contact);
+        String itemKey = getItemKey(parent, type, contactKey);
+
+        ContactVO item = null;
+        if (!allContactsChanged && !changedContacts.contains(contactKey)) {
+            item = contactItems.get(itemKey);
+        }
+        if (item == null) {
+            switch (type) {
+                case contact:
+                    item = ContactVO.convert(contact, this);
+                    break;
+                case extContact:
+                    item = ExtContactVO.convert(contact, this);
+                    break;
+                case chat:
+                    item = ChatVO.convert(contact, this, null);
+                    break;
+                case chatWithButton:
+                    item = ChatWithButtonVO.convert(contact, this);
+                    break;
+            }
+        }
+        newContactItems.put(itemKey, item);
+        return item;
+    }
+
+    private static String getContactKey(AbstractContact contact) {
+        return contact.getAccount() + "/" + contact.getUser();
+    }
+
+    private static String getItemKey(String parent, ItemType type, String contactKey) {
+        return parent + "/" + type + "/" + contactKey;
+    }
+
+    private static String getParentKey(GroupConfiguration configuration) {
+        return configuration.getAccount() + "/" + configuration.getGroup();
     }
 
     private ArrayList<AbstractContact> getSearchResults(Collection<RosterContact> rosterContacts,
@@ -600,6 +762,13 @@ public class ContactListPresenter implements OnContactChangedListener, OnAccount
         return items;
     }
 
+    private enum ItemType {
+        contact,
+        extContact,
+        chat,
+        chatWithButton
+    }
+
     public enum ChatListState {
         recent,
         unread,
@@ -75,7 +75,6 @@ public class ContactListFragment extends Fragment implements ContactListView,
     private ContactListFragmentListener contactListFragmentListener;
 
     private FlexibleAdapter<IFlexible> adapter;
-    private List<IFlexible> items;
     private Snackbar snackbar;
     private CoordinatorLayout coordinatorLayout;
     private LinearLayoutManager linearLayoutManager;
@@ -169,8 +168,7 @@ public class ContactListFragment extends Fragment implements ContactListView,
         buttonView = (Button) infoView.findViewById(R.id.button);
         animation = AnimationUtils.loadAnimation(getActivity(), R.anim.connection);
 
-        items = new ArrayList<>();
-        adapter = new FlexibleAdapter<>(items, null, false);
+        adapter = new FlexibleAdapter<>(new ArrayList<IFlexible>(), null, false);
 
         adapter.setStickyHeaders(true);
         adapter.setDisplayHeadersAtStartUp(true);
@@ -210,9 +208,9 @@ public class ContactListFragment extends Fragment implements ContactListView,
 
     @Override
     public void updateItems(List<IFlexible> items) {
-        this.items.clear();
-        this.items.addAll(items);
-        adapter.updateDataSet(this.items);
+        // adapter compares items by their ids in background and notifies only about changed ones,
+        // large lists are reloaded without diff
+        adapter.updateDataSet(new ArrayList<>(items), true);
     }
 
     /**
@@ -557,6 +555,7 @@ public class ContactListFragment extends Fragment implements ContactListView,
     public void setChatArchived(ChatVO chatVO, boolean archived) {
         AbstractChat chat = MessageManager.getInstance().getChat(chatVO.getAccountJid(), chatVO.getUserJid());
         if (chat != null) chat.setArchived(archived, true);
+        presenter.onContactChanged(chatVO.getAccountJid(), chatVO.getUserJid());
     }
 
     public void filterContactList(String filter) {
@@ -25,7 +25,6 @@ import com.xabber.android.ui.adapter.contactlist.AccountConfiguration;
 import com.xabber.android.ui.color.ColorManager;
 
 import java.util.List;
-import java.util.UUID;
 
 import eu.davidea.flexibleadapter.FlexibleAdapter;
 import eu.davidea.flexibleadapter.items.AbstractHeaderItem;
@@ -62,7 +61,7 @@ public class AccountVO extends AbstractHeaderItem<AccountVO.ViewHolder> {
                      String name, String jid, String status, int statusLevel, int statusId,
                      Drawable avatar, int offlineModeLevel, String contactCount, AccountJid accountJid,
                      boolean isExpand, String groupName, AccountClickListener listener) {
-        this.id = UUID.randomUUID().toString();
+        this.id = getClass().getSimpleName() + "/" + accountJid;
         this.accountColorIndicator = accountColorIndicator;
         this.accountColorIndicatorBack = accountColorIndicatorBack;
         this.showOfflineShadow = showOfflineShadow;
@@ -89,6 +88,18 @@ public class AccountVO extends AbstractHeaderItem<AccountVO.ViewHolder> {
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    /**
+     * @return id that stays the same between contact list updates.
+     */
+    public String getId() {
+        return id;
+    }
+
     @Override
     public int getLayoutRes() {
         return R.layout.item_account_in_contact_list;
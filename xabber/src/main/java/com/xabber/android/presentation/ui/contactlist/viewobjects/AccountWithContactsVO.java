@@ -70,6 +70,7 @@ public class AccountWithContactsVO extends AccountVO implements IExpandable<Acco
     public void addSubItem(ContactVO subItem) {
         if (mSubItems == null)
             mSubItems = new ArrayList<>();
+        subItem.setParentId(getId());
         mSubItems.add(subItem);
     }
 
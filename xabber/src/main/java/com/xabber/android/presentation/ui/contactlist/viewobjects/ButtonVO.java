@@ -14,7 +14,6 @@ import com.xabber.android.ui.adapter.contactlist.AccountConfiguration;
 import com.xabber.android.ui.color.ColorManager;
 
 import java.util.List;
-import java.util.UUID;
 
 import eu.davidea.flexibleadapter.FlexibleAdapter;
 import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
@@ -40,7 +39,7 @@ public class ButtonVO extends AbstractFlexibleItem<ButtonVO.ViewHolder> {
     public ButtonVO(int accountColorIndicator, boolean showOfflineShadow,
                     String title, String action, AccountJid account) {
 
-        this.id = UUID.randomUUID().toString();
+        this.id = account + "/" + action;
         this.accountColorIndicator = accountColorIndicator;
         this.showOfflineShadow = showOfflineShadow;
         this.title = title;
@@ -57,6 +56,11 @@ public class ButtonVO extends AbstractFlexibleItem<ButtonVO.ViewHolder> {
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
     @Override
     public int getLayoutRes() {
         return R.layout.item_button_in_contact_list;
@@ -7,7 +7,6 @@ import com.xabber.android.R;
 import com.xabber.android.ui.color.ColorManager;
 
 import java.util.List;
-import java.util.UUID;
 
 import eu.davidea.flexibleadapter.FlexibleAdapter;
 import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
@@ -23,7 +22,7 @@ public class CategoryVO extends AbstractFlexibleItem<CategoryVO.ViewHolder> {
     private final String title;
 
     public CategoryVO(String title) {
-        this.id = UUID.randomUUID().toString();
+        this.id = title;
         this.title = title;
     }
 
@@ -36,6 +35,11 @@ public class CategoryVO extends AbstractFlexibleItem<CategoryVO.ViewHolder> {
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
     @Override
     public int getLayoutRes() {
         return R.layout.item_category_in_contact_list;
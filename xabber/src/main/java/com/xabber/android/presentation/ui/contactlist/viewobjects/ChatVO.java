@@ -36,14 +36,14 @@ public class ChatVO extends ExtContactVO {
     }
 
     public ChatVO(int accountColorIndicator, int accountColorIndicatorBack, boolean showOfflineShadow,
-                  String name, String status, int statusId, int statusLevel, Drawable avatar,
+                  String name, String status, int statusId, int statusLevel,
                   int mucIndicatorLevel, UserJid userJid, AccountJid accountJid, int unreadCount,
                   boolean mute, NotificationState.NotificationMode notificationMode, String messageText,
                   boolean isOutgoing, Date time, int messageStatus, String messageOwner,
                   boolean archived, ContactClickListener listener, @Nullable IsCurrentChatListener currentChatListener) {
 
         super(accountColorIndicator, accountColorIndicatorBack, showOfflineShadow, name, status,
-                statusId, statusLevel, avatar, mucIndicatorLevel, userJid, accountJid,
+                statusId, statusLevel, mucIndicatorLevel, userJid, accountJid,
                 unreadCount, mute, notificationMode, messageText, isOutgoing, time, messageStatus,
                 messageOwner, archived, listener);
 
@@ -57,7 +57,7 @@ public class ChatVO extends ExtContactVO {
                 contactVO.getAccountColorIndicator(), contactVO.getAccountColorIndicatorBack(),
                 contactVO.isShowOfflineShadow(),
                 contactVO.getName(), contactVO.getStatus(), contactVO.getStatusId(),
-                contactVO.getStatusLevel(), contactVO.getAvatar(), contactVO.getMucIndicatorLevel(),
+                contactVO.getStatusLevel(), contactVO.getMucIndicatorLevel(),
                 contactVO.getUserJid(), contactVO.getAccountJid(), contactVO.getUnreadCount(),
                 contactVO.isMute(), contactVO.getNotificationMode(), contactVO.getMessageText(),
                 contactVO.isOutgoing(), contactVO.getTime(), contactVO.getMessageStatus(),
@@ -1,6 +1,5 @@
 package com.xabber.android.presentation.ui.contactlist.viewobjects;
 
-import android.graphics.drawable.Drawable;
 
 import com.xabber.android.R;
 import com.xabber.android.data.entity.AccountJid;
@@ -18,14 +17,14 @@ public class ChatWithButtonVO extends ExtContactVO {
 
     public ChatWithButtonVO(int accountColorIndicator, int accountColorIndicatorBack,
                             boolean showOfflineShadow,
-                            String name, String status, int statusId, int statusLevel, Drawable avatar,
+                            String name, String status, int statusId, int statusLevel,
                             int mucIndicatorLevel, UserJid userJid, AccountJid accountJid, int unreadCount,
                             boolean mute, NotificationState.NotificationMode notificationMode, String messageText,
                             boolean isOutgoing, Date time, int messageStatus, String messageOwner,
                             boolean archived, ContactClickListener listener) {
 
         super(accountColorIndicator, accountColorIndicatorBack, showOfflineShadow, name, status,
-                statusId, statusLevel, avatar, mucIndicatorLevel, userJid, accountJid,
+                statusId, statusLevel, mucIndicatorLevel, userJid, accountJid,
                 unreadCount, mute, notificationMode, messageText, isOutgoing, time, messageStatus,
                 messageOwner, archived, listener);
     }
@@ -36,7 +35,7 @@ public class ChatWithButtonVO extends ExtContactVO {
                 contactVO.getAccountColorIndicator(), contactVO.getAccountColorIndicatorBack(),
                 contactVO.isShowOfflineShadow(),
                 contactVO.getName(), contactVO.getStatus(), contactVO.getStatusId(),
-                contactVO.getStatusLevel(), contactVO.getAvatar(), contactVO.getMucIndicatorLevel(),
+                contactVO.getStatusLevel(), contactVO.getMucIndicatorLevel(),
                 contactVO.getUserJid(), contactVO.getAccountJid(), contactVO.getUnreadCount(),
                 contactVO.isMute(), contactVO.getNotificationMode(), contactVO.getMessageText(),
                 contactVO.isOutgoing(), contactVO.getTime(), contactVO.getMessageStatus(),
@@ -48,7 +47,7 @@ public class ChatWithButtonVO extends ExtContactVO {
                 chat.getAccountColorIndicator(), chat.getAccountColorIndicatorBack(),
                 chat.isShowOfflineShadow(),
                 chat.getName(), chat.getStatus(), chat.getStatusId(),
-                chat.getStatusLevel(), chat.getAvatar(), chat.getMucIndicatorLevel(),
+                chat.getStatusLevel(), chat.getMucIndicatorLevel(),
                 chat.getUserJid(), chat.getAccountJid(), chat.getUnreadCount(),
                 chat.isMute(), chat.getNotificationMode(), chat.getMessageText(),
                 chat.isOutgoing(), chat.getTime(), chat.getMessageStatus(),
@@ -29,10 +29,12 @@ import com.xabber.android.data.database.messagerealm.MessageItem;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
 import com.xabber.android.data.extension.muc.MUCManager;
+import com.xabber.android.data.extension.vcard.VCardManager;
 import com.xabber.android.data.message.AbstractChat;
 import com.xabber.android.data.message.MessageManager;
 import com.xabber.android.data.message.NotificationState;
 import com.xabber.android.data.roster.AbstractContact;
+import com.xabber.android.data.roster.RosterManager;
 import com.xabber.android.ui.color.ColorManager;
 
 import java.io.File;
@@ -40,7 +42,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.UUID;
 
 import eu.davidea.flexibleadapter.FlexibleAdapter;
 import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
@@ -51,6 +52,11 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
 
     private final String id;
 
+    /**
+     * Id of the group or account containing this item, empty for top level items.
+     */
+    private String parentId = "";
+
     private int accountColorIndicator;
     private int accountColorIndicatorBack;
     private boolean showOfflineShadow;
@@ -59,7 +65,6 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
     private final String status;
     private final int statusId;
     private final int statusLevel;
-    private final Drawable avatar;
     private final int mucIndicatorLevel;
     private final UserJid userJid;
     private final AccountJid accountJid;
@@ -83,12 +88,12 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
 
     protected ContactVO(int accountColorIndicator, int accountColorIndicatorBack,
                         boolean showOfflineShadow, String name,
-                        String status, int statusId, int statusLevel, Drawable avatar,
+                        String status, int statusId, int statusLevel,
                   int mucIndicatorLevel, UserJid userJid, AccountJid accountJid, int unreadCount,
                   boolean mute, NotificationState.NotificationMode notificationMode, String messageText,
                   boolean isOutgoing, Date time, int messageStatus, String messageOwner,
                         boolean archived, ContactClickListener listener) {
-        this.id = UUID.randomUUID().toString();
+        this.id = getClass().getSimpleName() + "/" + accountJid + "/" + userJid;
         this.accountColorIndicator = accountColorIndicator;
         this.accountColorIndicatorBack = accountColorIndicatorBack;
         this.showOfflineShadow = showOfflineShadow;
@@ -96,7 +101,6 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
         this.status = status;
         this.statusId = statusId;
         this.statusLevel = statusLevel;
-        this.avatar = avatar;
         this.mucIndicatorLevel = mucIndicatorLevel;
         this.userJid = userJid;
         this.accountJid = accountJid;
@@ -116,7 +120,6 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
         boolean showOfflineShadow;
         int accountColorIndicator;
         int accountColorIndicatorBack;
-        Drawable avatar;
         int statusLevel;
         int mucIndicatorLevel;
         boolean isOutgoing = false;
@@ -136,8 +139,6 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
                 .getAccountMainColor(contact.getAccount());
         accountColorIndicatorBack = ColorManager.getInstance().getAccountPainter()
                 .getAccountIndicatorBackColor(contact.getAccount());
-        avatar = contact.getAvatarForContactList();
-
 
         String name = contact.getName();
 
@@ -203,7 +204,7 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
 
         return new ContactVO(accountColorIndicator, accountColorIndicatorBack,
                 showOfflineShadow, name, statusText, statusId,
-                statusLevel, avatar, mucIndicatorLevel, contact.getUser(), contact.getAccount(),
+                statusLevel, mucIndicatorLevel, contact.getUser(), contact.getAccount(),
                 unreadCount, !chat.notifyAboutMessage(), mode, messageText, isOutgoing, time,
                 messageStatus, messageOwner, chat.isArchived(), listener);
     }
@@ -216,15 +217,28 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
         return items;
     }
 
+    /**
+     * Same contact can be shown in several groups,
+     * so item identity depends on the group containing it.
+     */
+    public void setParentId(String parentId) {
+        this.parentId = parentId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o instanceof ContactVO) {
             ContactVO inItem = (ContactVO) o;
-            return this.id.equals(inItem.id);
+            return this.id.equals(inItem.id) && this.parentId.equals(inItem.parentId);
         }
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return 31 * id.hashCode() + parentId.hashCode();
+    }
+
     @Override
     public int getLayoutRes() {
         return R.layout.item_contact_in_contact_list;
@@ -239,6 +253,8 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
     public void bindViewHolder(FlexibleAdapter adapter, ViewHolder viewHolder, int position, List<Object> payloads) {
         Context context = viewHolder.itemView.getContext();
 
+        VCardManager.getInstance().onContactShown(getAccountJid(), getUserJid());
+
         /** set up OFFLINE SHADOW */
         if (isShowOfflineShadow())
             viewHolder.offlineShadow.setVisibility(View.VISIBLE);
@@ -341,8 +357,12 @@ public class ContactVO extends AbstractFlexibleItem<ContactVO.ViewHolder> {
         return statusLevel;
     }
 
+    /**
+     * Avatar is requested only for bound rows, so that decoded avatars of
+     * invisible contacts are not kept in memory.
+     */
     public Drawable getAvatar() {
-        return avatar;
+        return RosterManager.getInstance().getBestContact(accountJid, userJid).getAvatarForContactList();
     }
 
     public int getMucIndicatorLevel() {
@@ -6,7 +6,6 @@ package com.xabber.android.presentation.ui.contactlist.viewobjects;
 
 import android.content.Context;
 import android.graphics.Typeface;
-import android.graphics.drawable.Drawable;
 import android.view.View;
 
 import com.xabber.android.R;
@@ -26,14 +25,14 @@ public class ExtContactVO extends ContactVO {
 
     public ExtContactVO(int accountColorIndicator, int accountColorIndicatorBack,
                         boolean showOfflineShadow, String name,
-                        String status, int statusId, int statusLevel, Drawable avatar,
+                        String status, int statusId, int statusLevel,
                         int mucIndicatorLevel, UserJid userJid, AccountJid accountJid, int unreadCount,
                         boolean mute, NotificationState.NotificationMode notificationMode, String messageText,
                         boolean isOutgoing, Date time, int messageStatus, String messageOwner,
                         boolean archived, ContactClickListener listener) {
 
         super(accountColorIndicator, accountColorIndicatorBack, showOfflineShadow, name, status,
-                statusId, statusLevel, avatar,
+                statusId, statusLevel,
                 mucIndicatorLevel, userJid, accountJid, unreadCount, mute, notificationMode, messageText,
                 isOutgoing, time, messageStatus, messageOwner, archived, listener);
     }
@@ -44,7 +43,7 @@ public class ExtContactVO extends ContactVO {
                 contactVO.getAccountColorIndicator(), contactVO.getAccountColorIndicatorBack(),
                 contactVO.isShowOfflineShadow(),
                 contactVO.getName(), contactVO.getStatus(), contactVO.getStatusId(),
-                contactVO.getStatusLevel(), contactVO.getAvatar(), contactVO.getMucIndicatorLevel(),
+                contactVO.getStatusLevel(), contactVO.getMucIndicatorLevel(),
                 contactVO.getUserJid(), contactVO.getAccountJid(), contactVO.getUnreadCount(),
                 contactVO.isMute(), contactVO.getNotificationMode(), contactVO.getMessageText(),
                 contactVO.isOutgoing(), contactVO.getTime(), contactVO.getMessageStatus(),
@@ -17,7 +17,6 @@ import com.xabber.android.ui.color.ColorManager;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 
 import eu.davidea.flexibleadapter.FlexibleAdapter;
 import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
@@ -62,7 +61,7 @@ public class GroupVO extends AbstractFlexibleItem<GroupVO.ViewHolder>
                    boolean expanded, int offlineIndicatorLevel, String groupName,
                    AccountJid accountJid, boolean firstInAccount, GroupClickListener listener) {
 
-        this.id = UUID.randomUUID().toString();
+        this.id = "group/" + accountJid + "/" + groupName;
         this.accountColorIndicator = accountColorIndicator;
         this.accountColorIndicatorBack = accountColorIndicatorBack;
         this.showOfflineShadow = showOfflineShadow;
@@ -84,6 +83,11 @@ public class GroupVO extends AbstractFlexibleItem<GroupVO.ViewHolder>
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
     @Override
     public int getLayoutRes() {
         return R.layout.item_group_in_contact_list;
@@ -160,6 +164,7 @@ public class GroupVO extends AbstractFlexibleItem<GroupVO.ViewHolder>
     public void addSubItem(ContactVO subItem) {
         if (mSubItems == null)
             mSubItems = new ArrayList<ContactVO>();
+        subItem.setParentId(id);
         mSubItems.add(subItem);
     }
 
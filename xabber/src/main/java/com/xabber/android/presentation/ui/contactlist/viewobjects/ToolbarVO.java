@@ -19,7 +19,6 @@ import com.xabber.android.ui.color.AccountPainter;
 import com.xabber.android.ui.color.ColorManager;
 
 import java.util.List;
-import java.util.UUID;
 
 import eu.davidea.flexibleadapter.FlexibleAdapter;
 import eu.davidea.flexibleadapter.items.AbstractHeaderItem;
@@ -46,7 +45,7 @@ public class ToolbarVO extends AbstractHeaderItem<ToolbarVO.ViewHolder> implemen
 
     public ToolbarVO(Context context, OnClickListener listener,
                      ContactListPresenter.ChatListState currentChatsState) {
-        this.id = UUID.randomUUID().toString();
+        this.id = ToolbarVO.class.getSimpleName();
         this.context = context;
         this.listener = listener;
         this.currentChatsState = currentChatsState;
@@ -61,6 +60,11 @@ public class ToolbarVO extends AbstractHeaderItem<ToolbarVO.ViewHolder> implemen
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
     @Override
     public int getLayoutRes() {
         return R.layout.item_main_title_in_contact_list;
@@ -38,6 +38,7 @@ import com.xabber.android.ui.adapter.AccountListAdapter;
 import com.xabber.android.ui.adapter.AccountListReorderAdapter;
 import com.xabber.android.ui.color.BarPainter;
 import com.xabber.android.ui.dialog.AccountDeleteDialog;
+import com.xabber.android.ui.dialog.ChatExportDialogFragment;
 import com.xabber.android.ui.widget.SimpleItemTouchHelperCallback;
 
 import java.util.ArrayList;
@@ -146,6 +147,8 @@ public class AccountListActivity extends ManagedActivity implements OnAccountCha
 
             case R.id.action_account_edit:
                 return true;
+            case R.id.action_account_export:
+                return true;
             case R.id.action_account_delete:
                 return true;
         }
@@ -173,6 +176,12 @@ public class AccountListActivity extends ManagedActivity implements OnAccountCha
         startActivity(AccountActivity.createIntent(this, accountItem.getAccount()));
     }
 
+    @Override
+    public void onExportAccount(AccountItem accountItem) {
+        ChatExportDialogFragment.newInstance(accountItem.getAccount()).show(getFragmentManager(),
+                "CHAT_EXPORT");
+    }
+
     @Override
     public void onDeleteAccount(AccountItem accountItem) {
         AccountDeleteDialog.newInstance(accountItem.getAccount()).show(getSupportFragmentManager(),
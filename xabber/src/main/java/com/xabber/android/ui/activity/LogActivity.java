@@ -8,11 +8,13 @@ import android.os.Bundle;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
+import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
 import com.xabber.android.R;
+import com.xabber.android.data.Application;
 import com.xabber.android.data.log.LogManager;
 import com.xabber.android.ui.adapter.LogFilesAdapter;
 import com.xabber.android.ui.color.BarPainter;
@@ -82,6 +84,14 @@ public class LogActivity extends ManagedActivity implements Toolbar.OnMenuItemCl
                         .show();
                 return true;
 
+            case R.id.action_startup_trace:
+                new AlertDialog.Builder(this)
+                        .setTitle(R.string.startup_trace)
+                        .setMessage(TextUtils.join("\n", Application.getInstance().getStartupTrace()))
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
+                return true;
+
             default:
                 return super.onOptionsItemSelected(item);
         }
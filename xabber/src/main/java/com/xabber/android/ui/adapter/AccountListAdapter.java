@@ -61,6 +61,7 @@ public class AccountListAdapter extends RecyclerView.Adapter implements ItemTouc
         void onEditAccountStatus(AccountItem accountItem);
         void onEditAccount(AccountItem accountItem);
         void onDeleteAccount(AccountItem accountItem);
+        void onExportAccount(AccountItem accountItem);
         void onStartDrag(RecyclerView.ViewHolder viewHolder);
     }
 
@@ -198,6 +199,7 @@ public class AccountListAdapter extends RecyclerView.Adapter implements ItemTouc
 
             menu.findItem(R.id.action_account_edit_status).setOnMenuItemClickListener(this);
             menu.findItem(R.id.action_account_edit).setOnMenuItemClickListener(this);
+            menu.findItem(R.id.action_account_export).setOnMenuItemClickListener(this);
             menu.findItem(R.id.action_account_delete).setOnMenuItemClickListener(this);
 
 
@@ -221,6 +223,9 @@ public class AccountListAdapter extends RecyclerView.Adapter implements ItemTouc
                 case R.id.action_account_edit:
                     listener.onEditAccount(accountItem);
                     return true;
+                case R.id.action_account_export:
+                    listener.onExportAccount(accountItem);
+                    return true;
                 case R.id.action_account_delete:
                     listener.onDeleteAccount(accountItem);
                     return true;
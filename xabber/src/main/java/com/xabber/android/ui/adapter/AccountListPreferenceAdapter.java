@@ -153,6 +153,7 @@ public class AccountListPreferenceAdapter extends RecyclerView.Adapter {
 
             menu.setHeaderTitle(AccountManager.getInstance().getVerboseName(accountItem.getAccount()));
             menu.findItem(R.id.action_account_edit_status).setVisible(accountItem.isEnabled());
+            menu.findItem(R.id.action_account_export).setVisible(false);
 
             menu.findItem(R.id.action_account_edit_status).setOnMenuItemClickListener(this);
             menu.findItem(R.id.action_account_edit).setOnMenuItemClickListener(this);
@@ -46,6 +46,7 @@ import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
 import com.xabber.android.data.extension.avatar.AvatarManager;
 import com.xabber.android.data.extension.file.FileManager;
+import com.xabber.android.data.extension.httpfileupload.HttpFileUploadManager;
 import com.xabber.android.data.extension.muc.MUCManager;
 import com.xabber.android.data.extension.muc.RoomContact;
 import com.xabber.android.data.extension.otr.OTRManager;
@@ -64,6 +65,8 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import io.realm.OrderedCollectionChangeSet;
+import io.realm.OrderedRealmCollectionChangeListener;
 import io.realm.Realm;
 import io.realm.RealmRecyclerViewAdapter;
 import io.realm.RealmResults;
@@ -77,6 +80,11 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
     private static final int VIEW_TYPE_ACTION_MESSAGE = 4;
     private static final String LOG_TAG = ChatMessageAdapter.class.getSimpleName();
 
+    /**
+     * Number of messages to be added to the window at once.
+     */
+    public static final int PAGE_SIZE = AbstractChat.PRELOADED_MESSAGES;
+
     private final Context context;
     private final Message.MessageClickListener messageClickListener;
     /**
@@ -98,8 +106,30 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
     private List<String> itemsNeedOriginalText;
     private int unreadCount = 0;
 
+    /**
+     * Number of older messages not shown in the window.
+     * Adapter shows messages from this position of {@link #realmResults} to the newest one.
+     */
+    private int windowStart;
+
+    private final OrderedRealmCollectionChangeListener<RealmResults<MessageItem>> changeListener
+            = new OrderedRealmCollectionChangeListener<RealmResults<MessageItem>>() {
+        @Override
+        public void onChange(RealmResults<MessageItem> messageItems, OrderedCollectionChangeSet changeSet) {
+            applyChangeSet(changeSet);
+            ChatMessageAdapter.this.onChange();
+        }
+    };
+
     public ChatMessageAdapter(Context context, RealmResults<MessageItem> messageItems, AbstractChat chat, ChatFragment chatFragment) {
-        super(context, messageItems, true);
+        super(context, messageItems, false);
+
+        if (messageItems != null && messageItems.isValid()) {
+            if (messageItems.isLoaded()) {
+                windowStart = Math.max(0, messageItems.size() - PAGE_SIZE);
+            }
+            messageItems.addChangeListener(changeListener);
+        }
 
         this.context = context;
         this.messageClickListener = chatFragment;
@@ -155,6 +185,10 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
             outgoingMessage.progressBar.setVisibility(View.GONE);
         }
 
+        Integer uploadProgress = messageItem.isInProgress()
+                ? HttpFileUploadManager.getInstance().getUploadProgress(messageItem.getUniqueId()) : null;
+        outgoingMessage.messageFileInfo.setText(uploadProgress == null ? "" : uploadProgress + "%");
+
         setUpImage(messageItem, outgoingMessage);
 
         setUpMessageBalloonBackground(holder.messageBalloon,
@@ -351,10 +385,18 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
 
     }
 
+    @Override
+    public void release() {
+        super.release();
+        if (realmResults != null && realmResults.isValid()) {
+            realmResults.removeChangeListener(changeListener);
+        }
+    }
+
     @Override
     public int getItemCount() {
-        if (realmResults.isValid() && realmResults.isLoaded()) {
-            return realmResults.size();
+        if (realmResults != null && realmResults.isValid() && realmResults.isLoaded()) {
+            return realmResults.size() - windowStart;
         } else {
             return 0;
         }
@@ -366,13 +408,107 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
             return null;
         }
 
-        if (position < realmResults.size()) {
-            return realmResults.get(position);
+        if (position < getItemCount()) {
+            return realmResults.get(windowStart + position);
         } else {
             return null;
         }
     }
 
+    /**
+     * Notifies about changed items only.
+     * Deletions use indexes before change, insertions and changes - after change.
+     */
+    private void applyChangeSet(@Nullable OrderedCollectionChangeSet changeSet) {
+        if (changeSet == null) {
+            windowStart = Math.min(windowStart, Math.max(0, realmResults.size() - PAGE_SIZE));
+            notifyDataSetChanged();
+            return;
+        }
+
+        int[] deletions = changeSet.getDeletions();
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            if (deletions[i] < windowStart) {
+                windowStart--;
+            } else {
+                notifyItemRemoved(deletions[i] - windowStart);
+            }
+        }
+
+        for (int insertion : changeSet.getInsertions()) {
+            // older messages are shown only when the whole history is in the window
+            if (insertion < windowStart) {
+                windowStart++;
+            } else {
+                notifyItemInserted(insertion - windowStart);
+            }
+        }
+
+        for (int change : changeSet.getChanges()) {
+            if (change >= windowStart) {
+                notifyItemChanged(change - windowStart);
+            }
+        }
+    }
+
+    /**
+     * Adds page of older messages to the window.
+     *
+     * @return whether messages were added.
+     */
+    public boolean showPreviousPage() {
+        if (windowStart == 0) {
+            return false;
+        }
+        int count = Math.min(PAGE_SIZE, windowStart);
+        windowStart -= count;
+        notifyItemRangeInserted(0, count);
+        return true;
+    }
+
+    /**
+     * @return whether the oldest local message is in the window.
+     */
+    public boolean isWholeHistoryShown() {
+        return windowStart == 0;
+    }
+
+    /**
+     * Extends window to show specified number of the newest messages.
+     */
+    public void showLastMessages(int count) {
+        if (realmResults == null || !realmResults.isValid() || !realmResults.isLoaded()) {
+            return;
+        }
+        showFromPosition(realmResults.size() - count);
+    }
+
+    /**
+     * @return position of item in the whole chat history.
+     */
+    public int getHistoryPosition(int position) {
+        return windowStart + position;
+    }
+
+    /**
+     * Extends window to show message at specified position in the whole chat history.
+     *
+     * @return adapter position of this message.
+     */
+    public int showHistoryPosition(int historyPosition) {
+        showFromPosition(historyPosition);
+        return historyPosition - windowStart;
+    }
+
+    private void showFromPosition(int historyPosition) {
+        int newWindowStart = Math.max(0, historyPosition);
+        if (newWindowStart < windowStart) {
+            int count = windowStart - newWindowStart;
+            windowStart = newWindowStart;
+            notifyItemRangeInserted(0, count);
+        }
+    }
+
     @Override
     public BasicMessage onCreateViewHolder(ViewGroup parent, int viewType) {
         switch (viewType) {
@@ -446,7 +582,7 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
 
     @Override
     public int getItemViewType(int position) {
-        if (position >= realmResults.size()) {
+        if (position >= getItemCount()) {
             return VIEW_TYPE_HINT;
         }
 
@@ -469,9 +605,11 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         }
     }
 
+    /**
+     * Item notifications are sent by realm change listener, just update listener.
+     */
     @Override
     public void onChange() {
-        notifyDataSetChanged();
         listener.onMessagesUpdated();
         int itemCount = getItemCount();
         if (prevItemCount != itemCount) {
@@ -590,9 +728,23 @@ public class ChatMessageAdapter extends RealmRecyclerViewAdapter<MessageItem, Ch
         }
     }
 
+    /**
+     * Rebinds file message to show its upload progress.
+     */
+    public void onUploadProgress(String uniqueId) {
+        int position = findMessagePosition(uniqueId);
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * @return adapter position of message or {@link RecyclerView#NO_POSITION}
+     * if message is not in the window.
+     */
     public int findMessagePosition(String uniqueId) {
-        for (int i = 0; i < realmResults.size(); i++) {
-            if (realmResults.get(i).getUniqueId().equals(uniqueId)) {
+        for (int i = getItemCount() - 1; i >= 0; i--) {
+            if (realmResults.get(windowStart + i).getUniqueId().equals(uniqueId)) {
                 return i;
             }
         }
@@ -18,6 +18,7 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.DialogFragment;
+import android.app.ProgressDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
@@ -25,6 +26,7 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.Toast;
 
 import com.xabber.android.R;
@@ -33,7 +35,8 @@ import com.xabber.android.data.NetworkException;
 import com.xabber.android.data.account.AccountManager;
 import com.xabber.android.data.entity.AccountJid;
 import com.xabber.android.data.entity.UserJid;
-import com.xabber.android.data.message.MessageManager;
+import com.xabber.android.data.message.export.ChatExportManager;
+import com.xabber.android.data.message.export.ExportFormat;
 import com.xabber.android.data.roster.RosterManager;
 
 import java.io.File;
@@ -47,8 +50,18 @@ public class ChatExportDialogFragment extends DialogFragment implements DialogIn
     UserJid user;
 
     private EditText nameView;
+    private Spinner formatView;
     CheckBox sendView;
 
+    private static final String ZIP_EXTENSION = ".zip";
+
+    /**
+     * Exports history of all chats of the account into zip archive.
+     */
+    public static ChatExportDialogFragment newInstance(AccountJid account) {
+        return newInstance(account, null);
+    }
+
     public static ChatExportDialogFragment newInstance(AccountJid account, UserJid user) {
         ChatExportDialogFragment fragment = new ChatExportDialogFragment();
 
@@ -67,10 +80,16 @@ public class ChatExportDialogFragment extends DialogFragment implements DialogIn
 
         View layout = getActivity().getLayoutInflater().inflate(R.layout.export_chat, null);
         nameView = (EditText) layout.findViewById(R.id.name);
+        formatView = (Spinner) layout.findViewById(R.id.format);
         sendView = (CheckBox) layout.findViewById(R.id.send);
-        nameView.setText(getString(R.string.export_chat_mask,
-                AccountManager.getInstance().getVerboseName(account),
-                RosterManager.getInstance().getName(account, user)));
+        if (user == null) {
+            nameView.setText(getString(R.string.export_account_mask,
+                    AccountManager.getInstance().getVerboseName(account)));
+        } else {
+            nameView.setText(getString(R.string.export_chat_mask,
+                    AccountManager.getInstance().getVerboseName(account),
+                    RosterManager.getInstance().getName(account, user)));
+        }
 
         return new AlertDialog.Builder(getActivity())
                 .setTitle(R.string.export_chat_title)
@@ -91,36 +110,93 @@ public class ChatExportDialogFragment extends DialogFragment implements DialogIn
         }
 
         final boolean send = sendView.isChecked();
+        final ExportFormat format = ExportFormat.values()[formatView.getSelectedItemPosition()];
+        final Activity activity = getActivity();
+
+        final ProgressDialog progressDialog = new ProgressDialog(activity);
+        progressDialog.setMessage(activity.getString(R.string.export_chat_progress));
+        progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        progressDialog.setIndeterminate(true);
+        progressDialog.setCancelable(false);
+
+        ChatExportManager.Listener listener = new ChatExportManager.Listener() {
+            @Override
+            public void onExportProgress(int exported, int total) {
+                progressDialog.setIndeterminate(false);
+                progressDialog.setMax(total);
+                progressDialog.setProgress(exported);
+            }
 
-        Application.getInstance().runInBackgroundUserRequest(new Runnable() {
             @Override
-            public void run() {
-                try {
-                    final File file = MessageManager.getInstance().exportChat(account, user, name);
-
-                    Application.getInstance().runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            // TODO: Use notification bar to notify about success.
-                            if (send) {
-                                Activity activity = getActivity();
-                                if (activity != null) {
-                                    Intent intent = new Intent(android.content.Intent.ACTION_SEND);
-                                    intent.setType("text/plain");
-                                    Uri uri = Uri.fromFile(file);
-                                    intent.putExtra(android.content.Intent.EXTRA_STREAM, uri);
-                                    activity.startActivity(Intent.createChooser(intent, activity.getString(R.string.export_chat)));
-                                }
-                            } else {
-                                Toast.makeText(Application.getInstance(), R.string.export_chat_done, Toast.LENGTH_LONG).show();
-                            }
-                        }
-                    });
-                } catch (NetworkException e) {
-                    Application.getInstance().onError(e);
+            public void onExported(File file) {
+                dismiss(progressDialog);
+                // TODO: Use notification bar to notify about success.
+                if (send && !activity.isFinishing()) {
+                    Intent intent = new Intent(android.content.Intent.ACTION_SEND);
+                    intent.setType(user == null ? "application/zip" : "text/plain");
+                    Uri uri = Uri.fromFile(file);
+                    intent.putExtra(android.content.Intent.EXTRA_STREAM, uri);
+                    activity.startActivity(Intent.createChooser(intent, activity.getString(R.string.export_chat)));
+                } else {
+                    Toast.makeText(Application.getInstance(), R.string.export_chat_done, Toast.LENGTH_LONG).show();
                 }
             }
-        });
 
+            @Override
+            public void onExportFailed(NetworkException e) {
+                dismiss(progressDialog);
+                Application.getInstance().onError(e);
+            }
+
+            @Override
+            public void onExportCancelled() {
+                dismiss(progressDialog);
+                Toast.makeText(Application.getInstance(), R.string.export_chat_cancelled, Toast.LENGTH_SHORT).show();
+            }
+        };
+
+        final ChatExportManager.ExportTask task;
+        if (user == null) {
+            task = ChatExportManager.getInstance().exportAccount(account, removeExtension(name),
+                    format, listener);
+        } else {
+            task = ChatExportManager.getInstance().exportChat(account, user, removeExtension(name),
+                    format, listener);
+        }
+
+        progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE,
+                activity.getString(android.R.string.cancel), new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        task.cancel();
+                    }
+                });
+        progressDialog.show();
+    }
+
+    private static void dismiss(ProgressDialog progressDialog) {
+        if (progressDialog.isShowing()) {
+            try {
+                progressDialog.dismiss();
+            } catch (IllegalArgumentException e) {
+                // activity was destroyed
+            }
+        }
+    }
+
+    /**
+     * @return file name without extension of any export format.
+     */
+    private static String removeExtension(String name) {
+        if (name.endsWith(ZIP_EXTENSION)) {
+            return name.substring(0, name.length() - ZIP_EXTENSION.length());
+        }
+        for (ExportFormat format : ExportFormat.values()) {
+            String extension = "." + format.getExtension();
+            if (name.endsWith(extension)) {
+                return name.substring(0, name.length() - extension.length());
+            }
+        }
+        return name;
     }
 }
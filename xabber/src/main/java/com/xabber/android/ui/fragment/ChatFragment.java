@@ -57,6 +57,7 @@ import com.xabber.android.data.extension.cs.ChatStateManager;
 import com.xabber.android.data.extension.file.FileUtils;
 import com.xabber.android.data.extension.httpfileupload.HttpFileUploadManager;
 import com.xabber.android.data.extension.httpfileupload.HttpUploadListener;
+import com.xabber.android.data.extension.httpfileupload.UploadProgressEvent;
 import com.xabber.android.data.extension.mam.LastHistoryLoadFinishedEvent;
 import com.xabber.android.data.extension.mam.LastHistoryLoadStartedEvent;
 import com.xabber.android.data.extension.mam.LoadHistorySettings;
@@ -284,6 +285,7 @@ public class ChatFragment extends Fragment implements PopupMenu.OnMenuItemClickL
                 super.onScrolled(recyclerView, dx, dy);
 
                 if (dy < 0) {
+                    showPreviousPageIfNeeded();
                     loadHistoryIfNeeded();
                 }
 
@@ -607,6 +609,11 @@ public class ChatFragment extends Fragment implements PopupMenu.OnMenuItemClickL
             return;
         }
 
+        // older local messages will be shown first
+        if (!chatMessageAdapter.isWholeHistoryShown()) {
+            return;
+        }
+
         int visibleItemCount = layoutManager.getChildCount();
 
         if (visibleItemCount == 0) {
@@ -631,6 +638,26 @@ public class ChatFragment extends Fragment implements PopupMenu.OnMenuItemClickL
         }
     }
 
+    /**
+     * Adds older local messages to the adapter when user scrolls close to the top.
+     */
+    private void showPreviousPageIfNeeded() {
+        int visibleItemCount = layoutManager.getChildCount();
+        if (visibleItemCount == 0 || chatMessageAdapter.isWholeHistoryShown()) {
+            return;
+        }
+
+        if (layoutManager.findFirstVisibleItemPosition() / visibleItemCount <= 2) {
+            // adapter can't be changed during scroll callback
+            realmRecyclerView.post(new Runnable() {
+                @Override
+                public void run() {
+                    chatMessageAdapter.showPreviousPage();
+                }
+            });
+        }
+    }
+
     private void requestRemoteHistoryLoad() {
         if (!isRemoteHistoryRequested) {
             AbstractChat chat = getChat();
@@ -683,11 +710,21 @@ public class ChatFragment extends Fragment implements PopupMenu.OnMenuItemClickL
         }
     }
 
+    /**
+     * Changed messages are updated by adapter's realm listener.
+     */
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEvent(MessageUpdateEvent event) {
         chatMessageAdapter.onChange();
     }
 
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onEvent(UploadProgressEvent event) {
+        if (event.getAccount().equals(account) && event.getUser().equals(user)) {
+            chatMessageAdapter.onUploadProgress(event.getUniqueId());
+        }
+    }
+
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEvent(NewIncomingMessageEvent event) {
         if (event.getAccount().equals(account) && event.getUser().equals(user)) {
@@ -898,6 +935,7 @@ public class ChatFragment extends Fragment implements PopupMenu.OnMenuItemClickL
     }
 
     private void scrollToFirstUnread(int unreadCount) {
+        chatMessageAdapter.showLastMessages(unreadCount);
         layoutManager.scrollToPositionWithOffset(
                 chatMessageAdapter.getItemCount() - unreadCount, 200);
         showUnreadMessage(unreadCount);
@@ -1309,6 +1347,7 @@ public class ChatFragment extends Fragment implements PopupMenu.OnMenuItemClickL
 
         if (position == -1) return;
         if (position == chatMessageAdapter.getItemCount() - 1) position = 0;
+        else position = chatMessageAdapter.getHistoryPosition(position);
         if (chat != null) chat.saveLastPosition(position);
     }
 
@@ -1322,7 +1361,7 @@ public class ChatFragment extends Fragment implements PopupMenu.OnMenuItemClickL
             if (position == 0 && unread > 0)
                 scrollToFirstUnread(unread);
             else if (position > 0) {
-                layoutManager.scrollToPosition(position);
+                layoutManager.scrollToPosition(chatMessageAdapter.showHistoryPosition(position));
                 showUnreadMessage(unread);
                 updateNewReceivedMessageCounter(unread);
             }
@@ -4,16 +4,21 @@ import android.app.ProgressDialog;
 import android.os.Bundle;
 import android.preference.Preference;
 import android.preference.PreferenceScreen;
+import android.widget.Toast;
 
 import com.xabber.android.BuildConfig;
 import com.xabber.android.R;
 import com.xabber.android.data.Application;
 import com.xabber.android.data.SettingsManager;
 import com.xabber.android.data.extension.mam.MamManager;
+import com.xabber.android.data.log.LogManager;
+import com.xabber.android.data.log.TrafficInspector;
 import com.xabber.android.data.message.AbstractChat;
 import com.xabber.android.data.message.MessageManager;
 import com.xabber.android.ui.activity.PreferenceSummaryHelperActivity;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 
 public class DebugSettingsFragment extends android.preference.PreferenceFragment {
@@ -45,6 +50,15 @@ public class DebugSettingsFragment extends android.preference.PreferenceFragment
             preferenceScreen.removePreference(prefDownloadArchive);
         }
 
+        preferenceScreen.findPreference(getString(R.string.debug_traffic_dump_key))
+                .setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                dumpTraffic();
+                return true;
+            }
+        });
+
         if (!SettingsManager.isCrashReportsSupported()) {
             preferenceScreen.removePreference(preferenceScreen.findPreference(getString(R.string.debug_crash_reports_key)));
         }
@@ -52,6 +66,30 @@ public class DebugSettingsFragment extends android.preference.PreferenceFragment
         PreferenceSummaryHelperActivity.updateSummary(preferenceScreen);
     }
 
+    private void dumpTraffic() {
+        Application.getInstance().runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    File file = TrafficInspector.getInstance().dump();
+                    message = Application.getInstance().getString(R.string.debug_traffic_dump_saved,
+                            file.getName());
+                } catch (IOException e) {
+                    LogManager.exception(this, e);
+                    message = Application.getInstance().getString(R.string.debug_traffic_dump_failed);
+                }
+                final String text = message;
+                Application.getInstance().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(Application.getInstance(), text, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+
     private void showDownloadArchiveDialog() {
         if (getActivity() != null) {
             progressDialog = new ProgressDialog(getActivity());